@@ -0,0 +1,318 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A blocked Bloom filter over 64-bit hashes (see Hashing): each key sets its
+ * bits within a single block of 512 bits, the size of a cache line, so that
+ * adding or testing a key touches one cache line. For the same rate of false
+ * positives, this needs somewhat more space than a standard Bloom filter,
+ * which is accounted for when sizing.
+ *
+ * Thread-safe; keys may be added concurrently. Filters of the same
+ * dimensions may be merged, and filters may be saved to and loaded from
+ * files.
+ */
+public class BloomFilter {
+    /** magic header of filter files */
+    public static final byte[] MAGIC = new byte[] { (byte) 'B', (byte) 'L',
+            (byte) 'M', (byte) 'F' };
+
+    /** number of bits per block */
+    public static final int BLOCK_BITS = 512;
+
+    /** number of words per block */
+    protected static final int BLOCK_WORDS = BLOCK_BITS / 64;
+
+    /** number of bit positions taken from each 64-bit hash, 9 bits each */
+    protected static final int BITS_PER_HASH = 7;
+
+    /** maximum number of bits per key */
+    protected static final int MAX_HASHES = 16;
+
+    /** the bits, BLOCK_WORDS words per block */
+    protected final AtomicLongArray words;
+
+    /** number of blocks */
+    protected final int blocks;
+
+    /** number of bits per key */
+    protected final int hashes;
+
+    /** number of adds that set at least one bit, about the distinct keys */
+    protected final AtomicLong insertions = new AtomicLong();
+
+    /**
+     * Constructs a new, empty instance sized for the given number of distinct
+     * keys at the given false-positive rate.
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions < 1) {
+            throw new IllegalArgumentException(
+                    "expectedInsertions must be positive: got "
+                            + expectedInsertions);
+        }
+        if (!(fpp > 0.0 && fpp < 1.0)) {
+            throw new IllegalArgumentException(
+                    "fpp must be between 0 and 1: got " + fpp);
+        }
+
+        // start from the size of a standard filter, and grow until the
+        // blocked filter, with its best number of bits per key, is good enough
+        double ln2 = Math.log(2);
+        double bits = -expectedInsertions * Math.log(fpp) / (ln2 * ln2);
+        long theBlocks = Math.max(1, (long) Math.ceil(bits / BLOCK_BITS));
+        int theHashes;
+
+        while (true) {
+            if (theBlocks > Integer.MAX_VALUE / BLOCK_WORDS) {
+                throw new IllegalArgumentException("Filter too large for "
+                        + expectedInsertions + " insertions at " + fpp);
+            }
+
+            theHashes = 1;
+            for (int k = 2; k <= MAX_HASHES; k++) {
+                if (getFpp(expectedInsertions, theBlocks, k) < getFpp(
+                        expectedInsertions, theBlocks, theHashes)) {
+                    theHashes = k;
+                }
+            }
+
+            if (getFpp(expectedInsertions, theBlocks, theHashes) <= fpp) {
+                break;
+            }
+
+            theBlocks += Math.max(1, theBlocks / 32);
+        }
+
+        this.blocks = (int) theBlocks;
+        this.hashes = theHashes;
+        this.words = new AtomicLongArray(blocks * BLOCK_WORDS);
+    }
+
+    /** Constructs an empty instance of the given dimensions. */
+    protected BloomFilter(int blocks, int hashes) {
+        this.blocks = blocks;
+        this.hashes = hashes;
+        this.words = new AtomicLongArray(blocks * BLOCK_WORDS);
+    }
+
+    /** Reads a filter from the given file. */
+    public static BloomFilter read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < magic.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("Not a filter file: " + file);
+                }
+            }
+
+            int blocks = in.readInt();
+            int hashes = in.readInt();
+            if (blocks < 1 || blocks > Integer.MAX_VALUE / BLOCK_WORDS
+                    || hashes < 1 || hashes > MAX_HASHES) {
+                throw new IOException("Invalid filter file: " + file);
+            }
+
+            BloomFilter filter = new BloomFilter(blocks, hashes);
+            filter.insertions.set(in.readLong());
+            for (int i = 0; i < filter.words.length(); i++) {
+                filter.words.set(i, in.readLong());
+            }
+
+            return filter;
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Writes this filter to the given file. */
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            out.write(MAGIC);
+            out.writeInt(blocks);
+            out.writeInt(hashes);
+            out.writeLong(insertions.get());
+            for (int i = 0; i < words.length(); i++) {
+                out.writeLong(words.get(i));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Adds the key with the given hash; returns true if any bit changed. */
+    public boolean add(long hash) {
+        int base = block(hash) * BLOCK_WORDS;
+        long h = hash;
+        boolean changed = false;
+
+        for (int i = 0; i < hashes; i++) {
+            if (i % BITS_PER_HASH == 0) {
+                h = Hashing.mix64(h + i);
+            }
+
+            int shift = 9 * (i % BITS_PER_HASH);
+            int bit = (int) (h >>> shift) & (BLOCK_BITS - 1);
+            int index = base + (bit >>> 6);
+            long mask = 1L << bit;
+
+            long word = words.get(index);
+            while ((word & mask) == 0) {
+                if (words.compareAndSet(index, word, word | mask)) {
+                    changed = true;
+                    break;
+                }
+                word = words.get(index);
+            }
+        }
+
+        if (changed) {
+            insertions.incrementAndGet();
+        }
+
+        return changed;
+    }
+
+    /**
+     * Returns true if the key with the given hash may have been added, false
+     * if it certainly was not.
+     */
+    public boolean mightContain(long hash) {
+        int base = block(hash) * BLOCK_WORDS;
+        long h = hash;
+
+        for (int i = 0; i < hashes; i++) {
+            if (i % BITS_PER_HASH == 0) {
+                h = Hashing.mix64(h + i);
+            }
+
+            int shift = 9 * (i % BITS_PER_HASH);
+            int bit = (int) (h >>> shift) & (BLOCK_BITS - 1);
+            if ((words.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** Adds the keys of the given filter, which must have equal dimensions. */
+    public void merge(BloomFilter other) {
+        if (other.blocks != blocks || other.hashes != hashes) {
+            throw new IllegalArgumentException(
+                    "Cannot merge filters of different dimensions");
+        }
+
+        for (int i = 0; i < words.length(); i++) {
+            long bits = other.words.get(i);
+            long word = words.get(i);
+            while ((word | bits) != word
+                    && !words.compareAndSet(i, word, word | bits)) {
+                word = words.get(i);
+            }
+        }
+
+        insertions.addAndGet(other.insertions.get());
+    }
+
+    /** returns the size of this filter in bytes */
+    public long getSizeInBytes() {
+        return (long) words.length() * 8;
+    }
+
+    /** returns the number of bits set per key */
+    public int getHashCount() {
+        return hashes;
+    }
+
+    /**
+     * returns the approximate number of distinct keys added (merged filters
+     * may count keys present in both twice)
+     */
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    /**
+     * Returns the expected false-positive rate given the keys added so far,
+     * estimated from the fraction of bits set in each block.
+     */
+    public double getExpectedFpp() {
+        double total = 0.0;
+
+        for (int block = 0; block < blocks; block++) {
+            int set = 0;
+            for (int i = 0; i < BLOCK_WORDS; i++) {
+                set += Long.bitCount(words.get(block * BLOCK_WORDS + i));
+            }
+
+            total += Math.pow((double) set / BLOCK_BITS, hashes);
+        }
+
+        return total / blocks;
+    }
+
+    /**
+     * Returns the false-positive rate of a filter of the given dimensions
+     * holding the given number of keys. The number of keys per block follows
+     * a Poisson distribution; a block holding i keys has a false-positive
+     * rate of about (1 - e^(-k i / BLOCK_BITS))^k.
+     */
+    protected static double getFpp(long keys, long blocks, int hashes) {
+        double lambda = (double) keys / blocks;
+        long limit = (long) (lambda + 10 * Math.sqrt(lambda) + 10);
+        double logFactorial = 0.0;
+        double fpp = 0.0;
+
+        for (long i = 0; i <= limit; i++) {
+            if (i > 0) {
+                logFactorial += Math.log(i);
+            }
+
+            double logP = -lambda + i * Math.log(lambda) - logFactorial;
+            double blockFpp = Math.pow(1 - Math.exp(-(double) hashes * i
+                    / BLOCK_BITS), hashes);
+
+            fpp += Math.exp(logP) * blockFpp;
+        }
+
+        return fpp;
+    }
+
+    /** returns the block of the key with the given hash */
+    protected int block(long hash) {
+        return (int) (((hash >>> 32) * blocks) >>> 32);
+    }
+}
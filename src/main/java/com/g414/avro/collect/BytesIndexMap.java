@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.util.Arrays;
+
+/**
+ * A map from byte sequences to dense int ids (0, 1, 2, ... in insertion
+ * order), for keying parallel arrays of per-key state. As in Utf8CountMap,
+ * the bytes of the keys are stored end to end in a single array, and the
+ * hash of each key is kept so that probing rarely compares bytes; looking up
+ * a key that is present allocates nothing. Callers pass the hash of the key
+ * (see hash()), so that it is computed only once per lookup and insertion.
+ * Not thread-safe.
+ */
+public class BytesIndexMap {
+    /** the bytes of all keys */
+    protected byte[] bytes;
+
+    /** number of bytes used */
+    protected int used;
+
+    /** offsets of the keys, by id */
+    protected int[] offsets;
+
+    /** lengths of the keys, by id */
+    protected int[] lengths;
+
+    /** hashes of the keys, by id */
+    protected int[] hashes;
+
+    /** the ids of the keys plus one, by slot; zero if empty */
+    protected int[] slots;
+
+    /** number of keys */
+    protected int size;
+
+    /** Constructs a new, empty instance. */
+    public BytesIndexMap() {
+        this(16);
+    }
+
+    /** Constructs a new, empty instance sized for the given number of keys. */
+    public BytesIndexMap(int expectedSize) {
+        this.bytes = new byte[Math.max(64, expectedSize * 8)];
+        this.offsets = new int[Math.max(16, expectedSize)];
+        this.lengths = new int[offsets.length];
+        this.hashes = new int[offsets.length];
+        this.slots = new int[CountMaps.slotsFor(expectedSize)];
+    }
+
+    /**
+     * Returns the id of the key key[off, off + len), which has the given
+     * hash, or -1 if absent.
+     */
+    public int get(byte[] key, int off, int len, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        for (int entry = slots[slot]; entry != 0; entry = slots[slot]) {
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(id, key, off, len)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the id of the key key[off, off + len), which has the given
+     * hash, adding the key with the next id if absent.
+     */
+    public int add(byte[] key, int off, int len, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        for (int entry = slots[slot]; entry != 0; entry = slots[slot]) {
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(id, key, off, len)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (used + len > bytes.length) {
+            long capacity = Math.max((long) used + len, 2L * bytes.length);
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Too many key bytes");
+            }
+            bytes = Arrays.copyOf(bytes, (int) capacity);
+        }
+        System.arraycopy(key, off, bytes, used, len);
+
+        int id = size;
+        if (id == offsets.length) {
+            offsets = Arrays.copyOf(offsets, id * 2);
+            lengths = Arrays.copyOf(lengths, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+
+        offsets[id] = used;
+        lengths[id] = len;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        used += len;
+
+        if (++size > CountMaps.threshold(slots.length)) {
+            CountMaps.checkGrowth(slots.length);
+            rehash(slots.length * 2);
+        }
+
+        return id;
+    }
+
+    /** returns the number of keys */
+    public int size() {
+        return size;
+    }
+
+    /** returns the array holding the bytes of all keys */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /** returns the offset of the key with the given id in getBytes() */
+    public int getOffset(int id) {
+        return offsets[id];
+    }
+
+    /** returns the length of the key with the given id */
+    public int getLength(int id) {
+        return lengths[id];
+    }
+
+    /** returns the hash of the key with the given id */
+    public int getHash(int id) {
+        return hashes[id];
+    }
+
+    /** returns the number of bytes of memory used, approximately */
+    public long getSizeInBytes() {
+        return bytes.length + 12L * offsets.length + 4L * slots.length;
+    }
+
+    /** Removes all keys. */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+        used = 0;
+    }
+
+    /** returns true if the key with the given id is key[off, off + len) */
+    protected boolean matches(int id, byte[] key, int off, int len) {
+        if (lengths[id] != len) {
+            return false;
+        }
+
+        int offset = offsets[id];
+        for (int i = 0; i < len; i++) {
+            if (bytes[offset + i] != key[off + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** rebuilds the slots with the given number of slots */
+    protected void rehash(int slotCount) {
+        slots = new int[slotCount];
+        int mask = slotCount - 1;
+
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /** returns the hash of the key key[off, off + len) */
+    public static int hash(byte[] key, int off, int len) {
+        return (int) Hashing.murmur64(key, off, len, Hashing.SEED);
+    }
+}
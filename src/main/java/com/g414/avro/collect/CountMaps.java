@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+/**
+ * Sizing shared by the open-addressing count maps (LongCountMap,
+ * IntCountMap, Utf8CountMap, ObjectCountMap): tables have a power-of-two
+ * number of slots and are kept at most three quarters full.
+ */
+public class CountMaps {
+    /** smallest number of slots */
+    protected static final int MIN_SLOTS = 8;
+
+    /** largest number of slots */
+    protected static final int MAX_SLOTS = 1 << 30;
+
+    /** returns the number of slots for the given number of keys */
+    public static int slotsFor(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "expectedSize must not be negative: got " + expectedSize);
+        }
+
+        int slots = MIN_SLOTS;
+        while (threshold(slots) < expectedSize && slots < MAX_SLOTS) {
+            slots *= 2;
+        }
+
+        return slots;
+    }
+
+    /** returns the number of keys above which a table of slots grows */
+    public static int threshold(int slots) {
+        return slots - (slots >>> 2);
+    }
+
+    /** checks that an amount to add is positive */
+    public static void checkAmount(long amount) {
+        if (amount < 1) {
+            throw new IllegalArgumentException("amount must be positive: got "
+                    + amount);
+        }
+    }
+
+    /** checks that a table may grow beyond the given number of slots */
+    public static void checkGrowth(int slots) {
+        if (slots >= MAX_SLOTS) {
+            throw new IllegalStateException("Too many keys");
+        }
+    }
+}
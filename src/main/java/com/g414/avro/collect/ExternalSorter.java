@@ -0,0 +1,357 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A collection of values that are returned in sorted order, held in a list
+ * until their estimated size passes a memory budget, and then sorted and
+ * spilled to a temporary file as a run (see ValueCodec), after which
+ * collecting starts again in an empty list. Once values were spilled, a
+ * cursor merges the runs with the list, reading all of them. Not
+ * thread-safe; even cursor() modifies the instance, sorting the list.
+ *
+ * Run files are deleted by clear() or when the JVM exits.
+ */
+public class ExternalSorter<T> {
+    /** the order of the values */
+    protected final Comparator<? super T> comparator;
+
+    /** codec of the values */
+    protected final ValueCodec<T> codec;
+
+    /** the estimated size in bytes above which the values are spilled */
+    protected final long memoryBudget;
+
+    /** directory of the run files, or null for the temporary directory */
+    protected final File directory;
+
+    /** the values since the last spill */
+    protected final List<T> values = new ArrayList<T>();
+
+    /** the estimated size in bytes of values */
+    protected long valueBytes;
+
+    /** the number of values spilled */
+    protected long spilled;
+
+    /** the run files */
+    protected final List<File> runs = new ArrayList<File>();
+
+    /**
+     * Constructs a new, empty instance that spills to the given directory
+     * (or the default temporary directory, if null) once its estimated size
+     * passes the given number of bytes, encoding values with the given codec.
+     */
+    public ExternalSorter(Comparator<? super T> comparator,
+            ValueCodec<T> codec, long memoryBudget, File directory) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException(
+                    "memoryBudget must be positive: got " + memoryBudget);
+        }
+
+        this.comparator = comparator;
+        this.codec = codec;
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+    }
+
+    /** Adds a value. */
+    public void add(T value) throws IOException {
+        values.add(value);
+
+        valueBytes += 8 + SortedRuns.estimateSize(value);
+        if (valueBytes > memoryBudget) {
+            spill();
+        }
+    }
+
+    /** Adds the values of the given instance. */
+    public void addAll(ExternalSorter<T> other) throws IOException {
+        if (other.runs.isEmpty()) {
+            for (T value : other.values) {
+                add(value);
+            }
+
+            return;
+        }
+
+        Cursor cursor = other.cursor();
+        try {
+            while (cursor.next()) {
+                add(cursor.getValue());
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** returns the number of values */
+    public long size() {
+        return spilled + values.size();
+    }
+
+    /** returns the number of run files */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Returns a cursor over the values in sorted order: over the sorted list
+     * if nothing was spilled, and else over the runs merged with the sorted
+     * list, which is not spilled. Only valid until this instance is next
+     * modified.
+     */
+    public Cursor cursor() throws IOException {
+        Collections.sort(values, comparator);
+
+        if (runs.isEmpty()) {
+            return new Cursor();
+        }
+
+        return new Cursor(runs, values);
+    }
+
+    /**
+     * Writes the current values, sorted, to a new run file, if any, merging
+     * the runs into one if there are MERGE_FACTOR of them.
+     */
+    public void spill() throws IOException {
+        if (values.isEmpty()) {
+            return;
+        }
+
+        Collections.sort(values, comparator);
+
+        File file = SortedRuns.newRunFile(directory);
+        DataOutputStream out = SortedRuns.openOutput(file);
+        try {
+            out.writeLong(values.size());
+            for (T value : values) {
+                codec.write(value, out);
+            }
+        } finally {
+            out.close();
+        }
+
+        spilled += values.size();
+        values.clear();
+        valueBytes = 0;
+        runs.add(file);
+
+        if (runs.size() >= SortedRuns.MERGE_FACTOR) {
+            compact();
+        }
+    }
+
+    /** Removes all values, deleting the run files. */
+    public void clear() {
+        values.clear();
+        valueBytes = 0;
+        spilled = 0;
+        SortedRuns.delete(runs);
+    }
+
+    /** merges the runs into one */
+    protected void compact() throws IOException {
+        File file = SortedRuns.newRunFile(directory);
+        DataOutputStream out = SortedRuns.openOutput(file);
+        Cursor cursor = new Cursor(runs, Collections.<T> emptyList());
+        try {
+            out.writeLong(spilled);
+            while (cursor.next()) {
+                codec.write(cursor.getValue(), out);
+            }
+        } finally {
+            cursor.close();
+            out.close();
+        }
+
+        SortedRuns.delete(runs);
+        runs.add(file);
+    }
+
+    /** A cursor over the values, in sorted order. */
+    public class Cursor {
+        /** the sorted values, if not reading runs */
+        protected final List<T> list;
+
+        /** the index of the current value in list */
+        protected int index = -1;
+
+        /** the runs with values left, by their current value */
+        protected final PriorityQueue<Run> queue;
+
+        /** the current value */
+        protected T value;
+
+        protected Cursor() {
+            this.list = values;
+            this.queue = null;
+        }
+
+        protected Cursor(List<File> files, List<T> sorted) throws IOException {
+            this.list = null;
+            this.queue = new PriorityQueue<Run>(files.size() + 1,
+                    new Comparator<Run>() {
+                        @Override
+                        public int compare(Run a, Run b) {
+                            return comparator.compare(a.value, b.value);
+                        }
+                    });
+
+            try {
+                advance(new ListRun(sorted));
+                for (File file : files) {
+                    advance(new FileRun(SortedRuns.openInput(file)));
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /** Moves to the next value; returns false if there are none left. */
+        public boolean next() throws IOException {
+            if (list != null) {
+                if (index + 1 >= list.size()) {
+                    return false;
+                }
+                value = list.get(++index);
+
+                return true;
+            }
+
+            Run run = queue.poll();
+            if (run == null) {
+                return false;
+            }
+            value = run.value;
+            advance(run);
+
+            return true;
+        }
+
+        /** returns the current value */
+        public T getValue() {
+            return value;
+        }
+
+        /** Closes the run files. */
+        public void close() {
+            if (queue != null) {
+                for (Run run : queue) {
+                    run.close();
+                }
+                queue.clear();
+            }
+        }
+
+        /** moves a run to its next value, closing it if there is none */
+        protected void advance(Run run) throws IOException {
+            boolean more = false;
+            try {
+                more = run.next();
+            } finally {
+                if (more) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+        }
+    }
+
+    /** A run being read, positioned at a value. */
+    protected abstract class Run {
+        protected T value;
+
+        /** reads the next value; returns false at the end of the run */
+        public abstract boolean next() throws IOException;
+
+        /** Releases the run. */
+        public void close() {
+        }
+    }
+
+    /** A run file being read, positioned at a value. */
+    protected class FileRun extends Run {
+        protected final DataInputStream in;
+        protected long remaining = -1;
+
+        public FileRun(DataInputStream in) {
+            this.in = in;
+        }
+
+        /** @see Run#next() */
+        @Override
+        public boolean next() throws IOException {
+            if (remaining < 0) {
+                remaining = in.readLong();
+            }
+            if (remaining == 0) {
+                return false;
+            }
+
+            value = codec.read(in);
+            remaining--;
+
+            return true;
+        }
+
+        /** Closes the file. */
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing was written
+            }
+        }
+    }
+
+    /** A sorted list being read, positioned at a value. */
+    protected class ListRun extends Run {
+        protected final List<T> list;
+        protected int index;
+
+        public ListRun(List<T> list) {
+            this.list = list;
+        }
+
+        /** @see Run#next() */
+        @Override
+        public boolean next() {
+            if (index == list.size()) {
+                return false;
+            }
+            value = list.get(index++);
+
+            return true;
+        }
+    }
+}
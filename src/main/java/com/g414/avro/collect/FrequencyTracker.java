@@ -17,74 +17,83 @@
  */
 package com.g414.avro.collect;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * An Object tracker that creates a frequency ordering which may be used for
- * item-based compression. Not thread-safe.
+ * item-based compression. Counts every key exactly, in a TypedCountMap;
+ * HeavyHitters tracks only the most frequent keys, in bounded memory. With a
+ * memory budget, the counts are spilled to temporary files once their
+ * estimated size passes it, and merged when queried (see SpillingCountMap).
+ * Not thread-safe.
  */
 public class FrequencyTracker<T> {
-    /** collection mapping keys to integer counts */
-    private final Map<T, Integer> counts = new HashMap<T, Integer>();
+    /** collection mapping keys to counts */
+    private final SpillingCountMap<T> counts;
+
+    /** Constructs a new instance that keeps all counts in memory. */
+    public FrequencyTracker() {
+        this.counts = new SpillingCountMap<T>();
+    }
+
+    /**
+     * Constructs a new instance that spills its counts to temporary files,
+     * encoding keys with the given codec, once their estimated size passes
+     * the given number of bytes.
+     */
+    public FrequencyTracker(ValueCodec<T> codec, long memoryBudget) {
+        this.counts = new SpillingCountMap<T>(codec, memoryBudget, null);
+    }
 
     /**
      * Increment the count for a given key object.
      */
     public void increment(T key) {
-        Integer value = counts.get(key);
-
-        if (value == null) {
-            value = Integer.valueOf(0);
+        try {
+            counts.increment(key);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-
-        counts.put(key, Integer.valueOf(value.intValue() + 1));
     }
 
     /**
      * Return the list of keys in descending order of frequency.
      */
     public List<T> getKeys() {
-        return Collections.unmodifiableList(getKeysImpl());
+        return getTopNKeys(Integer.MAX_VALUE);
     }
 
     /**
      * Return the top N keys in descending order of frequency.
      */
     public List<T> getTopNKeys(int n) {
-        List<T> outKeys = getKeysImpl();
-
-        if (n < outKeys.size()) {
-            outKeys.subList(n, outKeys.size() - 1).clear();
+        try {
+            return counts.getTopKeys(n);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-
-        return Collections.unmodifiableList(outKeys);
     }
 
     /**
      * Returns a copy of the frequency map.
      */
     public Map<T, Integer> getFrequencies() {
-        return Collections.unmodifiableMap(counts);
-    }
-
-    /**
-     * Returns a modifiable list of keys in descending order of frequency.
-     */
-    private List<T> getKeysImpl() {
-        List<T> outKeys = new ArrayList<T>(counts.size());
-        outKeys.addAll(counts.keySet());
+        Map<T, Long> theCounts;
+        try {
+            theCounts = counts.getCounts();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
 
-        Collections.sort(outKeys, new Comparator<T>() {
-            public int compare(T o1, T o2) {
-                return -1 * counts.get(o1).compareTo(counts.get(o2));
-            };
-        });
+        Map<T, Integer> outMap = new HashMap<T, Integer>();
+        for (Map.Entry<T, Long> entry : theCounts.entrySet()) {
+            outMap.put(entry.getKey(), entry.getValue().intValue());
+        }
 
-        return outKeys;
+        return Collections.unmodifiableMap(outMap);
     }
 }
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.nio.ByteBuffer;
+
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.util.Utf8;
+
+/**
+ * 64-bit hashing of decoded values, stable across processes so that hashes
+ * may be persisted (for example in a BloomFilter file). Values that denote
+ * the same key hash alike whatever their representation: a Utf8 and the
+ * equal String, or an int and the equal long.
+ */
+public class Hashing {
+    /** seed used by hash64(Object) */
+    public static final long SEED = 0x5bd1e9955bd1e995L;
+
+    /** hash of null */
+    protected static final long NULL_HASH = 0x2545f4914f6cdd1dL;
+
+    /**
+     * Returns the hash of a value: strings and bytes are hashed by content
+     * (strings as UTF-8), numbers by value, and other values by the UTF-8
+     * encoding of their toString().
+     */
+    public static long hash64(Object value) {
+        if (value == null) {
+            return NULL_HASH;
+        }
+
+        if (value instanceof Utf8) {
+            Utf8 utf8 = (Utf8) value;
+
+            return murmur64(utf8.getBytes(), 0, utf8.getLength(), SEED);
+        }
+
+        if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            return mix64(((Number) value).longValue() ^ SEED);
+        }
+
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+
+            return mix64(Double.doubleToLongBits(d) ^ ~SEED);
+        }
+
+        if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = (ByteBuffer) value;
+            if (buffer.hasArray()) {
+                return murmur64(buffer.array(), buffer.arrayOffset()
+                        + buffer.position(), buffer.remaining(), SEED);
+            }
+
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+
+            return murmur64(bytes, 0, bytes.length, SEED);
+        }
+
+        if (value instanceof GenericData.Fixed) {
+            byte[] bytes = ((GenericData.Fixed) value).bytes();
+
+            return murmur64(bytes, 0, bytes.length, SEED);
+        }
+
+        return hash64(new Utf8(value.toString()));
+    }
+
+    /** Returns the MurmurHash64A hash of bytes[off, off + len). */
+    public static long murmur64(byte[] bytes, int off, int len, long seed) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+
+        long h = seed ^ (len * m);
+        int end = off + (len & ~7);
+
+        for (int i = off; i < end; i += 8) {
+            long k = (bytes[i] & 0xffL) | (bytes[i + 1] & 0xffL) << 8
+                    | (bytes[i + 2] & 0xffL) << 16
+                    | (bytes[i + 3] & 0xffL) << 24
+                    | (bytes[i + 4] & 0xffL) << 32
+                    | (bytes[i + 5] & 0xffL) << 40
+                    | (bytes[i + 6] & 0xffL) << 48
+                    | (bytes[i + 7] & 0xffL) << 56;
+
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+
+            h ^= k;
+            h *= m;
+        }
+
+        int remaining = len & 7;
+        if (remaining > 0) {
+            for (int i = remaining - 1; i >= 0; i--) {
+                h ^= (bytes[end + i] & 0xffL) << (8 * i);
+            }
+            h *= m;
+        }
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+
+        return h;
+    }
+
+    /** Returns a well-mixed function of the given value (fmix64). */
+    public static long mix64(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+
+        return value;
+    }
+}
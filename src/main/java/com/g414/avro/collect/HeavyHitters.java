@@ -0,0 +1,392 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded-memory alternative to FrequencyTracker that tracks the most
+ * frequent keys with the Space-Saving algorithm: at most capacity keys are
+ * counted, and a new key replaces the least frequent one, inheriting its
+ * count as an overestimate. Counts are therefore upper bounds, and the
+ * overestimate of each key (its error) is known; no error exceeds
+ * getTotal() / capacity, and every key more frequent than that is tracked.
+ * Tracking a few times as many keys as needed makes the top keys exact in
+ * practice. The keys are kept in a min-heap by count, so counting a key
+ * takes O(log capacity) time.
+ *
+ * Summaries of the same capacity may be merged (as in Agarwal et al.,
+ * "Mergeable Summaries", 2012), and saved and loaded with a ValueCodec.
+ * Keys must not be modified once counted (copy reused values such as Utf8
+ * before counting them). Not thread-safe.
+ */
+public class HeavyHitters<T> {
+    /** magic header of saved summaries */
+    public static final byte[] MAGIC = new byte[] { (byte) 'H', (byte) 'H',
+            (byte) 'S', (byte) 'S' };
+
+    /** maximum number of keys tracked */
+    protected final int capacity;
+
+    /** the tracked keys */
+    protected final Map<T, Node<T>> nodes;
+
+    /** min-heap of the tracked keys by count */
+    protected final Node<T>[] heap;
+
+    /** number of tracked keys */
+    protected int size;
+
+    /** total of all counts added */
+    protected long total;
+
+    /** Constructs a new, empty instance tracking up to capacity keys. */
+    @SuppressWarnings("unchecked")
+    public HeavyHitters(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "capacity must be positive: got " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.nodes = new HashMap<T, Node<T>>(capacity * 4 / 3 + 1);
+        this.heap = new Node[capacity];
+    }
+
+    /** Reads a summary written by write(), decoding keys with the codec. */
+    public static <T> HeavyHitters<T> read(DataInput in, ValueCodec<T> codec)
+            throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a summary");
+            }
+        }
+
+        int capacity = in.readInt();
+        long total = in.readLong();
+        int size = in.readInt();
+        if (capacity < 1 || size < 0 || size > capacity) {
+            throw new IOException("Invalid summary");
+        }
+
+        HeavyHitters<T> summary = new HeavyHitters<T>(capacity);
+        for (int i = 0; i < size; i++) {
+            T key = codec.read(in);
+            long count = in.readLong();
+            long error = in.readLong();
+            summary.insert(new Node<T>(key, count, error));
+        }
+        summary.total = total;
+
+        return summary;
+    }
+
+    /** Writes this summary, encoding keys with the given codec. */
+    public void write(DataOutput out, ValueCodec<T> codec) throws IOException {
+        out.write(MAGIC);
+        out.writeInt(capacity);
+        out.writeLong(total);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            codec.write(heap[i].key, out);
+            out.writeLong(heap[i].count);
+            out.writeLong(heap[i].error);
+        }
+    }
+
+    /**
+     * Increment the count for a given key object.
+     */
+    public void increment(T key) {
+        increment(key, 1);
+    }
+
+    /**
+     * Adds the given (positive) amount to the count of a given key object.
+     */
+    public void increment(T key, long amount) {
+        if (amount < 1) {
+            throw new IllegalArgumentException("amount must be positive: got "
+                    + amount);
+        }
+
+        total += amount;
+
+        Node<T> node = nodes.get(key);
+        if (node != null) {
+            node.count += amount;
+            siftDown(node.index);
+            return;
+        }
+
+        if (size < capacity) {
+            insert(new Node<T>(key, amount, 0));
+            return;
+        }
+
+        // replace the least frequent key
+        node = heap[0];
+        nodes.remove(node.key);
+        node.key = key;
+        node.error = node.count;
+        node.count += amount;
+        nodes.put(key, node);
+        siftDown(0);
+    }
+
+    /**
+     * Adds the counts of the given summary, which should have the same
+     * capacity. A key tracked by only one summary is taken to have occurred
+     * in the other as often as that summary's least frequent key (if full).
+     */
+    public void merge(HeavyHitters<T> other) {
+        long thisMin = getMinimum();
+        long otherMin = other.getMinimum();
+
+        List<Node<T>> merged = new ArrayList<Node<T>>(size + other.size);
+        for (int i = 0; i < size; i++) {
+            Node<T> node = heap[i];
+            Node<T> otherNode = other.nodes.get(node.key);
+
+            if (otherNode == null) {
+                merged.add(new Node<T>(node.key, node.count + otherMin,
+                        node.error + otherMin));
+            } else {
+                merged.add(new Node<T>(node.key, node.count + otherNode.count,
+                        node.error + otherNode.error));
+            }
+        }
+        for (int i = 0; i < other.size; i++) {
+            Node<T> otherNode = other.heap[i];
+
+            if (!nodes.containsKey(otherNode.key)) {
+                merged.add(new Node<T>(otherNode.key, otherNode.count
+                        + thisMin, otherNode.error + thisMin));
+            }
+        }
+
+        Collections.sort(merged, DESCENDING);
+
+        nodes.clear();
+        Arrays.fill(heap, null);
+        size = 0;
+        total += other.total;
+
+        for (int i = 0; i < merged.size() && i < capacity; i++) {
+            insert(merged.get(i));
+        }
+    }
+
+    /**
+     * Return the list of tracked keys in descending order of (estimated)
+     * frequency.
+     */
+    public List<T> getKeys() {
+        return getTopNKeys(size);
+    }
+
+    /**
+     * Return the top N keys in descending order of (estimated) frequency.
+     */
+    public List<T> getTopNKeys(int n) {
+        List<Node<T>> sorted = getSortedNodes();
+        List<T> outKeys = new ArrayList<T>(Math.min(n, sorted.size()));
+
+        for (int i = 0; i < n && i < sorted.size(); i++) {
+            outKeys.add(sorted.get(i).key);
+        }
+
+        return Collections.unmodifiableList(outKeys);
+    }
+
+    /**
+     * Returns the top N keys whose place in the top N is certain: those whose
+     * lower bound (count - error) is at least the count of every key outside
+     * the top N.
+     */
+    public List<T> getGuaranteedTopNKeys(int n) {
+        List<Node<T>> sorted = getSortedNodes();
+        long outside = (n < sorted.size()) ? sorted.get(n).count
+                : getMinimum();
+        List<T> outKeys = new ArrayList<T>();
+
+        for (int i = 0; i < n && i < sorted.size(); i++) {
+            Node<T> node = sorted.get(i);
+            if (node.count - node.error >= outside) {
+                outKeys.add(node.key);
+            }
+        }
+
+        return Collections.unmodifiableList(outKeys);
+    }
+
+    /**
+     * Returns a map of the tracked keys, in descending order of frequency, to
+     * their estimated counts.
+     */
+    public Map<T, Long> getFrequencies() {
+        Map<T, Long> frequencies = new LinkedHashMap<T, Long>();
+        for (Node<T> node : getSortedNodes()) {
+            frequencies.put(node.key, node.count);
+        }
+
+        return Collections.unmodifiableMap(frequencies);
+    }
+
+    /**
+     * Returns the estimated count of the given key, an upper bound: if it is
+     * not tracked, the count of the least frequent key (if full) or 0.
+     */
+    public long getCount(T key) {
+        Node<T> node = nodes.get(key);
+
+        return (node == null) ? getMinimum() : node.count;
+    }
+
+    /**
+     * Returns the maximum overestimate of the count of the given key; its
+     * true count is at least getCount(key) - getError(key).
+     */
+    public long getError(T key) {
+        Node<T> node = nodes.get(key);
+
+        return (node == null) ? getMinimum() : node.error;
+    }
+
+    /** returns the total of all counts added */
+    public long getTotal() {
+        return total;
+    }
+
+    /** returns the maximum number of keys tracked */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** returns the number of keys tracked */
+    public int size() {
+        return size;
+    }
+
+    /** returns the count of the least frequent key if full, or else 0 */
+    protected long getMinimum() {
+        return (size < capacity) ? 0 : heap[0].count;
+    }
+
+    /** returns the tracked keys in descending order of count */
+    protected List<Node<T>> getSortedNodes() {
+        List<Node<T>> sorted = new ArrayList<Node<T>>(size);
+        for (int i = 0; i < size; i++) {
+            sorted.add(heap[i]);
+        }
+        Collections.sort(sorted, DESCENDING);
+
+        return sorted;
+    }
+
+    /** adds a node to the heap and map */
+    protected void insert(Node<T> node) {
+        node.index = size;
+        heap[size++] = node;
+        nodes.put(node.key, node);
+        siftUp(node.index);
+    }
+
+    /** moves the node at index up until its parent is not larger */
+    protected void siftUp(int index) {
+        Node<T> node = heap[index];
+
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= node.count) {
+                break;
+            }
+
+            heap[index] = heap[parent];
+            heap[index].index = index;
+            index = parent;
+        }
+
+        heap[index] = node;
+        node.index = index;
+    }
+
+    /** moves the node at index down until its children are not smaller */
+    protected void siftDown(int index) {
+        Node<T> node = heap[index];
+
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (node.count <= heap[child].count) {
+                break;
+            }
+
+            heap[index] = heap[child];
+            heap[index].index = index;
+            index = child;
+        }
+
+        heap[index] = node;
+        node.index = index;
+    }
+
+    /** orders nodes by descending count, then ascending error */
+    @SuppressWarnings("rawtypes")
+    protected static final Comparator<Node> DESCENDING = new Comparator<Node>() {
+        @Override
+        public int compare(Node a, Node b) {
+            if (a.count != b.count) {
+                return (a.count > b.count) ? -1 : 1;
+            }
+
+            return (a.error < b.error) ? -1 : (a.error > b.error) ? 1 : 0;
+        }
+    };
+
+    /** A tracked key, with its count, error and position in the heap. */
+    protected static class Node<T> {
+        protected T key;
+        protected long count;
+        protected long error;
+        protected int index;
+
+        public Node(T key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
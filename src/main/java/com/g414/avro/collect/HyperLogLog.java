@@ -0,0 +1,265 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A HyperLogLog sketch over 64-bit hashes (see Hashing), estimating the
+ * number of distinct keys added in 2^precision bytes with a relative
+ * standard error of about 1.04 / sqrt(2^precision): 0.8% at the default
+ * precision of 14, in 16KB. As in HyperLogLog++, the hashes are 64 bits
+ * wide, so that estimates stay unbiased far beyond 2^32 keys; in place of
+ * the empirical bias correction of HyperLogLog++, the estimate is computed
+ * with the improved estimator of Ertl ("New cardinality estimation
+ * algorithms for HyperLogLog sketches", 2017), which is accurate over the
+ * whole range, from a few keys on.
+ *
+ * Thread-safe and lock-free; keys may be added concurrently. Sketches of the
+ * same precision may be merged, and sketches may be saved to and loaded from
+ * files.
+ */
+public class HyperLogLog {
+    /** magic header of sketch files */
+    public static final byte[] MAGIC = new byte[] { (byte) 'H', (byte) 'L',
+            (byte) 'L', (byte) 'S' };
+
+    /** smallest precision */
+    public static final int MIN_PRECISION = 4;
+
+    /** largest precision */
+    public static final int MAX_PRECISION = 18;
+
+    /** default precision */
+    public static final int DEFAULT_PRECISION = 14;
+
+    /** number of index bits of the hashes */
+    protected final int precision;
+
+    /** the registers, one byte each, eight per word */
+    protected final AtomicLongArray words;
+
+    /** Constructs a new, empty instance of the default precision. */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /** Constructs a new, empty instance of the given precision. */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between "
+                    + MIN_PRECISION + " and " + MAX_PRECISION + ": got "
+                    + precision);
+        }
+
+        this.precision = precision;
+        this.words = new AtomicLongArray((1 << precision) / 8);
+    }
+
+    /** Reads a sketch from the given file. */
+    public static HyperLogLog read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Reads a sketch from the given input, as written by write(DataOutput). */
+    public static HyperLogLog read(DataInput in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a sketch");
+            }
+        }
+
+        int precision = in.readByte();
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IOException("Invalid sketch");
+        }
+
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (int i = 0; i < sketch.words.length(); i++) {
+            sketch.words.set(i, in.readLong());
+        }
+
+        return sketch;
+    }
+
+    /** Writes this sketch to the given file. */
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Writes this sketch to the given output. */
+    public void write(DataOutput out) throws IOException {
+        out.write(MAGIC);
+        out.writeByte(precision);
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    /** Adds the key with the given hash; returns true if a register rose. */
+    public boolean add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = hash << precision;
+        int rank = (rest == 0) ? 65 - precision
+                : Long.numberOfLeadingZeros(rest) + 1;
+
+        return raise(index, rank);
+    }
+
+    /** Adds the keys of the given sketch, which must be of equal precision. */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException(
+                    "Cannot merge sketches of different precision");
+        }
+
+        for (int i = 0; i < words.length(); i++) {
+            long bits = other.words.get(i);
+            for (int j = 0; j < 8 && bits != 0; j++) {
+                int rank = (int) (bits >>> (8 * j)) & 0xff;
+                if (rank > 0) {
+                    raise(i * 8 + j, rank);
+                }
+            }
+        }
+    }
+
+    /** returns the estimated number of distinct keys added */
+    public long cardinality() {
+        return Math.round(estimate());
+    }
+
+    /** returns the estimated number of distinct keys added, unrounded */
+    public double estimate() {
+        int m = 1 << precision;
+        int q = 64 - precision;
+
+        // histogram of register values
+        int[] counts = new int[q + 2];
+        for (int i = 0; i < words.length(); i++) {
+            long bits = words.get(i);
+            for (int j = 0; j < 8; j++) {
+                counts[(int) (bits >>> (8 * j)) & 0xff]++;
+            }
+        }
+
+        double z = m * tau(1.0 - (double) counts[q + 1] / m);
+        for (int k = q; k >= 1; k--) {
+            z = 0.5 * (z + counts[k]);
+        }
+        z += m * sigma((double) counts[0] / m);
+
+        return m / (2 * Math.log(2)) * m / z;
+    }
+
+    /** returns the relative standard error of estimates */
+    public double getRelativeError() {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    /** returns the precision */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /** returns the size of this sketch in bytes */
+    public int getSizeInBytes() {
+        return 1 << precision;
+    }
+
+    /** raises the given register to at least the given rank */
+    protected boolean raise(int index, int rank) {
+        int word = index >>> 3;
+        int shift = (index & 7) * 8;
+        long mask = 0xffL << shift;
+
+        while (true) {
+            long bits = words.get(word);
+            if (((bits & mask) >>> shift) >= rank) {
+                return false;
+            }
+
+            long raised = (bits & ~mask) | ((long) rank << shift);
+            if (words.compareAndSet(word, bits, raised)) {
+                return true;
+            }
+        }
+    }
+
+    /** Ertl's sigma function, for the registers that are zero. */
+    protected static double sigma(double x) {
+        if (x == 1.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double y = 1.0;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+
+        return z;
+    }
+
+    /** Ertl's tau function, for the registers that are saturated. */
+    protected static double tau(double x) {
+        if (x == 0.0 || x == 1.0) {
+            return 0.0;
+        }
+
+        double y = 1.0;
+        double z = 1.0 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1.0 - x) * (1.0 - x) * y;
+        } while (z != previous);
+
+        return z / 3;
+    }
+}
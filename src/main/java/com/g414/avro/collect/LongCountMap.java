@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.util.Arrays;
+
+/**
+ * A map from long keys to long counts, using open addressing with linear
+ * probing over primitive arrays: 16 bytes per slot, with no objects per
+ * entry and no boxing. Counts are positive; a slot with a count of zero is
+ * empty. Slots may be enumerated from 0 to getSlotCount(), skipping those
+ * for which countAt() is zero. Not thread-safe.
+ */
+public class LongCountMap {
+    /** the keys, by slot */
+    protected long[] keys;
+
+    /** the counts, by slot; zero if empty */
+    protected long[] counts;
+
+    /** number of keys */
+    protected int size;
+
+    /** Constructs a new, empty instance. */
+    public LongCountMap() {
+        this(16);
+    }
+
+    /** Constructs a new, empty instance sized for the given number of keys. */
+    public LongCountMap(int expectedSize) {
+        int slots = CountMaps.slotsFor(expectedSize);
+
+        this.keys = new long[slots];
+        this.counts = new long[slots];
+    }
+
+    /** Adds one to the count of the given key; returns the new count. */
+    public long increment(long key) {
+        return add(key, 1);
+    }
+
+    /** Adds a positive amount to the count of a key; returns the new count. */
+    public long add(long key, long amount) {
+        CountMaps.checkAmount(amount);
+
+        int mask = counts.length - 1;
+        int slot = hash(key) & mask;
+
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                return counts[slot] += amount;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        counts[slot] = amount;
+        if (++size > CountMaps.threshold(counts.length)) {
+            CountMaps.checkGrowth(counts.length);
+            rehash(counts.length * 2);
+        }
+
+        return amount;
+    }
+
+    /** returns the count of the given key, or zero if absent */
+    public long get(long key) {
+        int mask = counts.length - 1;
+        int slot = hash(key) & mask;
+
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return 0;
+    }
+
+    /** Adds the counts of the given map. */
+    public void addAll(LongCountMap other) {
+        for (int slot = 0; slot < other.counts.length; slot++) {
+            if (other.counts[slot] != 0) {
+                add(other.keys[slot], other.counts[slot]);
+            }
+        }
+    }
+
+    /** returns the number of keys */
+    public int size() {
+        return size;
+    }
+
+    /** returns the number of slots */
+    public int getSlotCount() {
+        return counts.length;
+    }
+
+    /** returns the key in the given slot */
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /** returns the count in the given slot, or zero if it is empty */
+    public long countAt(int slot) {
+        return counts[slot];
+    }
+
+    /** returns the (up to) n most frequent keys, most frequent first */
+    public long[] getTopKeys(int n) {
+        int[] slots = TopN.slots(counts, n);
+        long[] topKeys = new long[slots.length];
+
+        for (int i = 0; i < slots.length; i++) {
+            topKeys[i] = keys[slots[i]];
+        }
+
+        return topKeys;
+    }
+
+    /** Removes all keys. */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    /** moves the keys into arrays of the given number of slots */
+    protected void rehash(int slots) {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+
+        keys = new long[slots];
+        counts = new long[slots];
+        int mask = slots - 1;
+
+        for (int i = 0; i < oldCounts.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /** returns the hash of a key */
+    protected static int hash(long key) {
+        return (int) Hashing.mix64(key);
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A map from keys (which may be null) to long counts, using open addressing
+ * with linear probing: each slot holds the key, its hash and its count (in
+ * parallel arrays), so that there is no entry object or boxed count per key,
+ * and counting a key that is present takes a single probe sequence. Counts
+ * are positive; a slot with a count of zero is empty. Keys are stored as
+ * returned by copyKey(), which subclasses may override to copy reused
+ * values. Not thread-safe.
+ */
+public class ObjectCountMap<T> {
+    /** the keys, by slot */
+    protected Object[] keys;
+
+    /** hashes of the keys, by slot */
+    protected int[] hashes;
+
+    /** the counts, by slot; zero if empty */
+    protected long[] counts;
+
+    /** number of keys */
+    protected int size;
+
+    /** Constructs a new, empty instance. */
+    public ObjectCountMap() {
+        this(16);
+    }
+
+    /** Constructs a new, empty instance sized for the given number of keys. */
+    public ObjectCountMap(int expectedSize) {
+        int slots = CountMaps.slotsFor(expectedSize);
+
+        this.keys = new Object[slots];
+        this.hashes = new int[slots];
+        this.counts = new long[slots];
+    }
+
+    /** Adds one to the count of the given key; returns the new count. */
+    public long increment(T key) {
+        return add(key, 1);
+    }
+
+    /** Adds a positive amount to the count of a key; returns the new count. */
+    public long add(T key, long amount) {
+        CountMaps.checkAmount(amount);
+
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (slot >= 0) {
+            return counts[slot] += amount;
+        }
+
+        insert(copyKey(key), hash, amount);
+
+        return amount;
+    }
+
+    /** returns the count of the given key, or zero if absent */
+    public long get(T key) {
+        int slot = find(key, hash(key));
+
+        return (slot < 0) ? 0 : counts[slot];
+    }
+
+    /** Adds the counts of the given map. */
+    @SuppressWarnings("unchecked")
+    public void addAll(ObjectCountMap<T> other) {
+        for (int slot = 0; slot < other.counts.length; slot++) {
+            if (other.counts[slot] != 0) {
+                T key = (T) other.keys[slot];
+                int hash = other.hashes[slot];
+                int found = find(key, hash);
+
+                if (found >= 0) {
+                    counts[found] += other.counts[slot];
+                } else {
+                    insert(key, hash, other.counts[slot]);
+                }
+            }
+        }
+    }
+
+    /** returns the number of keys */
+    public int size() {
+        return size;
+    }
+
+    /** returns the number of slots */
+    public int getSlotCount() {
+        return counts.length;
+    }
+
+    /** returns the key in the given slot */
+    @SuppressWarnings("unchecked")
+    public T keyAt(int slot) {
+        return (T) keys[slot];
+    }
+
+    /** returns the count in the given slot, or zero if it is empty */
+    public long countAt(int slot) {
+        return counts[slot];
+    }
+
+    /** returns the (up to) n most frequent keys, most frequent first */
+    @SuppressWarnings("unchecked")
+    public List<T> getTopKeys(int n) {
+        int[] slots = TopN.slots(counts, n);
+        List<T> topKeys = new ArrayList<T>(slots.length);
+
+        for (int slot : slots) {
+            topKeys.add((T) keys[slot]);
+        }
+
+        return Collections.unmodifiableList(topKeys);
+    }
+
+    /** Removes all keys, releasing the table. */
+    public void clear() {
+        int slots = CountMaps.slotsFor(0);
+
+        keys = new Object[slots];
+        hashes = new int[slots];
+        counts = new long[slots];
+        size = 0;
+    }
+
+    /**
+     * returns the key to store for a key that is absent; by default, the key
+     * itself
+     */
+    protected T copyKey(T key) {
+        return key;
+    }
+
+    /** returns the slot of the key with the given hash, or -1 if absent */
+    protected int find(Object key, int hash) {
+        int mask = counts.length - 1;
+        int slot = hash & mask;
+
+        while (counts[slot] != 0) {
+            if (hashes[slot] == hash) {
+                Object other = keys[slot];
+                if (other == key || key != null && key.equals(other)) {
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /** adds a key that is absent, with the given hash and count */
+    protected void insert(Object key, int hash, long count) {
+        int mask = counts.length - 1;
+        int slot = hash & mask;
+
+        while (counts[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        hashes[slot] = hash;
+        counts[slot] = count;
+
+        if (++size > CountMaps.threshold(counts.length)) {
+            CountMaps.checkGrowth(counts.length);
+            rehash(counts.length * 2);
+        }
+    }
+
+    /** moves the keys into arrays of the given number of slots */
+    protected void rehash(int slots) {
+        Object[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+
+        keys = new Object[slots];
+        hashes = new int[slots];
+        counts = new long[slots];
+        int mask = slots - 1;
+
+        for (int i = 0; i < oldCounts.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = oldHashes[i] & mask;
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /** returns the hash of a key, its hashCode() well mixed */
+    public static int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+
+        return (int) Hashing.mix64(key.hashCode());
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+/**
+ * Multi-quickselect over primitive arrays: places the elements at a set of
+ * ranks where a sort would put them, recursing only into the partitions that
+ * contain a requested rank. Answering a few ranks takes about linear time,
+ * rather than the n log n of a sort. Partitioning is three-way, so that runs
+ * of equal values (common in real columns) do not degrade it.
+ */
+public class Selection {
+    /** partitions at or below this size are finished by insertion sort */
+    protected static final int INSERTION_THRESHOLD = 16;
+
+    /**
+     * Permutes values[0..size) so that, for each of the given ranks (sorted
+     * ascending, each in [0, size)), the element at that index is the one a
+     * sort would put there.
+     */
+    public static void select(long[] values, int size, int[] ranks) {
+        checkRanks(size, ranks);
+        select(values, 0, size - 1, ranks, 0, ranks.length - 1);
+    }
+
+    /** @see #select(long[], int, int[]) */
+    public static void select(double[] values, int size, int[] ranks) {
+        checkRanks(size, ranks);
+        select(values, 0, size - 1, ranks, 0, ranks.length - 1);
+    }
+
+    /** @see #select(long[], int, int[]) */
+    public static void select(int[] values, int size, int[] ranks) {
+        checkRanks(size, ranks);
+        select(values, 0, size - 1, ranks, 0, ranks.length - 1);
+    }
+
+    /** selects ranks[lo..hi] within values[from..to] */
+    protected static void select(long[] a, int from, int to, int[] ranks,
+            int lo, int hi) {
+        while (lo <= hi && from < to) {
+            if (to - from < INSERTION_THRESHOLD) {
+                for (int i = from + 1; i <= to; i++) {
+                    long x = a[i];
+                    int j = i - 1;
+                    for (; j >= from && a[j] > x; j--) {
+                        a[j + 1] = a[j];
+                    }
+                    a[j + 1] = x;
+                }
+                return;
+            }
+
+            long pivot = median(a[from], a[(from + to) >>> 1], a[to]);
+
+            // a[from..lt) < pivot, a[lt..i) == pivot, a(gt..to] > pivot
+            int lt = from;
+            int gt = to;
+            int i = from;
+            while (i <= gt) {
+                long x = a[i];
+                if (x < pivot) {
+                    a[i++] = a[lt];
+                    a[lt++] = x;
+                } else if (x > pivot) {
+                    a[i] = a[gt];
+                    a[gt--] = x;
+                } else {
+                    i++;
+                }
+            }
+
+            int below = firstAtLeast(ranks, lo, hi, lt);
+            int above = firstAtLeast(ranks, lo, hi, gt + 1);
+
+            // recurse into the smaller side, loop on the larger
+            if (below - lo < hi - above + 1) {
+                select(a, from, lt - 1, ranks, lo, below - 1);
+                from = gt + 1;
+                lo = above;
+            } else {
+                select(a, gt + 1, to, ranks, above, hi);
+                to = lt - 1;
+                hi = below - 1;
+            }
+        }
+    }
+
+    /** selects ranks[lo..hi] within values[from..to] */
+    protected static void select(double[] a, int from, int to, int[] ranks,
+            int lo, int hi) {
+        while (lo <= hi && from < to) {
+            if (to - from < INSERTION_THRESHOLD) {
+                for (int i = from + 1; i <= to; i++) {
+                    double x = a[i];
+                    int j = i - 1;
+                    for (; j >= from && a[j] > x; j--) {
+                        a[j + 1] = a[j];
+                    }
+                    a[j + 1] = x;
+                }
+                return;
+            }
+
+            double pivot = median(a[from], a[(from + to) >>> 1], a[to]);
+
+            int lt = from;
+            int gt = to;
+            int i = from;
+            while (i <= gt) {
+                double x = a[i];
+                if (x < pivot) {
+                    a[i++] = a[lt];
+                    a[lt++] = x;
+                } else if (x > pivot) {
+                    a[i] = a[gt];
+                    a[gt--] = x;
+                } else {
+                    i++;
+                }
+            }
+
+            int below = firstAtLeast(ranks, lo, hi, lt);
+            int above = firstAtLeast(ranks, lo, hi, gt + 1);
+
+            if (below - lo < hi - above + 1) {
+                select(a, from, lt - 1, ranks, lo, below - 1);
+                from = gt + 1;
+                lo = above;
+            } else {
+                select(a, gt + 1, to, ranks, above, hi);
+                to = lt - 1;
+                hi = below - 1;
+            }
+        }
+    }
+
+    /** selects ranks[lo..hi] within values[from..to] */
+    protected static void select(int[] a, int from, int to, int[] ranks,
+            int lo, int hi) {
+        while (lo <= hi && from < to) {
+            if (to - from < INSERTION_THRESHOLD) {
+                for (int i = from + 1; i <= to; i++) {
+                    int x = a[i];
+                    int j = i - 1;
+                    for (; j >= from && a[j] > x; j--) {
+                        a[j + 1] = a[j];
+                    }
+                    a[j + 1] = x;
+                }
+                return;
+            }
+
+            int pivot = median(a[from], a[(from + to) >>> 1], a[to]);
+
+            int lt = from;
+            int gt = to;
+            int i = from;
+            while (i <= gt) {
+                int x = a[i];
+                if (x < pivot) {
+                    a[i++] = a[lt];
+                    a[lt++] = x;
+                } else if (x > pivot) {
+                    a[i] = a[gt];
+                    a[gt--] = x;
+                } else {
+                    i++;
+                }
+            }
+
+            int below = firstAtLeast(ranks, lo, hi, lt);
+            int above = firstAtLeast(ranks, lo, hi, gt + 1);
+
+            if (below - lo < hi - above + 1) {
+                select(a, from, lt - 1, ranks, lo, below - 1);
+                from = gt + 1;
+                lo = above;
+            } else {
+                select(a, gt + 1, to, ranks, above, hi);
+                to = lt - 1;
+                hi = below - 1;
+            }
+        }
+    }
+
+    /** returns the index of the first of ranks[lo..hi] >= index, or hi + 1 */
+    protected static int firstAtLeast(int[] ranks, int lo, int hi, int index) {
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ranks[mid] < index) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        return lo;
+    }
+
+    /** checks that the ranks are sorted and within [0, size) */
+    protected static void checkRanks(int size, int[] ranks) {
+        for (int i = 0; i < ranks.length; i++) {
+            if (ranks[i] < 0 || ranks[i] >= size
+                    || i > 0 && ranks[i] < ranks[i - 1]) {
+                throw new IllegalArgumentException(
+                        "ranks must be sorted and in [0, " + size + "): got "
+                                + ranks[i]);
+            }
+        }
+    }
+
+    /** returns the median of three values */
+    protected static long median(long a, long b, long c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    /** returns the median of three values */
+    protected static double median(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    /** returns the median of three values */
+    protected static int median(int a, int b, int c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.avro.util.Utf8;
+
+/**
+ * Utility methods for the sorted runs written to temporary files by
+ * SpillingCountMap and ExternalSorter when their contents outgrow their
+ * memory budget, and for estimating the memory used by values.
+ */
+public class SortedRuns {
+    /** the most runs merged at once; more are first merged into one */
+    public static final int MERGE_FACTOR = 64;
+
+    /** size of the buffers of run files */
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Creates a new, empty run file in the given directory (or the default
+     * temporary directory, if null), to be deleted on exit at the latest.
+     */
+    public static File newRunFile(File directory) throws IOException {
+        File file = File.createTempFile("run", ".tmp", directory);
+        file.deleteOnExit();
+
+        return file;
+    }
+
+    /** Opens a run file for writing. */
+    public static DataOutputStream openOutput(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    /** Opens a run file for reading. */
+    public static DataInputStream openInput(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), BUFFER_SIZE));
+    }
+
+    /** Deletes the given run files and clears the list. */
+    public static void delete(List<File> files) {
+        for (File file : files) {
+            file.delete();
+        }
+        files.clear();
+    }
+
+    /**
+     * Compares a[aOff, aOff + aLen) and b[bOff, bOff + bLen) as unsigned
+     * bytes, lexicographically.
+     */
+    public static int compare(byte[] a, int aOff, int aLen, byte[] b,
+            int bOff, int bLen) {
+        int len = Math.min(aLen, bLen);
+        for (int i = 0; i < len; i++) {
+            int cmp = (a[aOff + i] & 0xff) - (b[bOff + i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        return aLen - bLen;
+    }
+
+    /**
+     * Sorts order[0, size), the indices of keys encoded end to end in bytes
+     * (key i being bytes[offsets[i], offsets[i + 1])), by their encoding, as
+     * compare() orders them; a merge sort, so that no index is boxed.
+     */
+    public static void sort(int[] order, int size, byte[] bytes,
+            int[] offsets) {
+        mergeSort(order, new int[size], 0, size, bytes, offsets);
+    }
+
+    /** sorts order[from, to), using scratch[from, to) */
+    protected static void mergeSort(int[] order, int[] scratch, int from,
+            int to, byte[] bytes, int[] offsets) {
+        if (to - from < 8) {
+            for (int i = from + 1; i < to; i++) {
+                int index = order[i];
+                int j = i;
+                while (j > from) {
+                    int previous = order[j - 1];
+                    if (compareKeys(bytes, offsets, previous, index) <= 0) {
+                        break;
+                    }
+                    order[j--] = previous;
+                }
+                order[j] = index;
+            }
+
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        mergeSort(order, scratch, from, mid, bytes, offsets);
+        mergeSort(order, scratch, mid, to, bytes, offsets);
+        if (compareKeys(bytes, offsets, order[mid - 1], order[mid]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(order, from, scratch, from, to - from);
+        int i = from;
+        int j = mid;
+        int k = from;
+        while (i < mid && j < to) {
+            if (compareKeys(bytes, offsets, scratch[i], scratch[j]) <= 0) {
+                order[k++] = scratch[i++];
+            } else {
+                order[k++] = scratch[j++];
+            }
+        }
+        System.arraycopy(scratch, i, order, k, mid - i);
+        System.arraycopy(scratch, j, order, k + mid - i, to - j);
+    }
+
+    /** compares the encoded keys with indices a and b */
+    protected static int compareKeys(byte[] bytes, int[] offsets, int a,
+            int b) {
+        return compare(bytes, offsets[a], offsets[a + 1] - offsets[a], bytes,
+                offsets[b], offsets[b + 1] - offsets[b]);
+    }
+
+    /**
+     * Returns the approximate number of bytes of heap used by a decoded value
+     * (excluding the reference to it): strings and bytes by length, numbers
+     * and booleans as boxed, and other values at a flat rate.
+     */
+    public static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        }
+
+        if (value instanceof Utf8) {
+            return 40 + ((Utf8) value).getLength();
+        }
+
+        if (value instanceof String) {
+            return 48 + 2L * ((String) value).length();
+        }
+
+        if (value instanceof ByteBuffer) {
+            return 64 + ((ByteBuffer) value).remaining();
+        }
+
+        if (value instanceof Number || value instanceof Boolean) {
+            return 24;
+        }
+
+        return 64;
+    }
+}
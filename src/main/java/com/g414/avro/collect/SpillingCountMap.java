@@ -0,0 +1,668 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A map from keys to long counts that is held in a TypedCountMap until its
+ * estimated size passes a memory budget, and is then spilled to temporary
+ * files as runs of (key, count) entries sorted by the encoding of the key
+ * (see ValueCodec), after which counting starts again in an empty map.
+ * Queries merge the runs, adding the counts of equal keys, so that results
+ * are exact; they read all runs, and those returning every key need memory
+ * for every key. The codec must encode equal keys alike. Keys are stored as
+ * returned by copyKey(), which subclasses may override to copy reused
+ * values. Not thread-safe.
+ *
+ * Run files are deleted by clear() or when the JVM exits.
+ */
+public class SpillingCountMap<T> {
+    /** the fewest bytes of encoded keys sorted at once when spilling */
+    protected static final int MIN_CHUNK_BYTES = 64 * 1024;
+
+    /** the most bytes of encoded keys sorted at once when spilling */
+    protected static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    /** codec of the keys, or null if never spilling */
+    protected final ValueCodec<T> codec;
+
+    /** the estimated size in bytes above which the map is spilled */
+    protected final long memoryBudget;
+
+    /** directory of the run files, or null for the temporary directory */
+    protected final File directory;
+
+    /** the counts since the last spill */
+    protected final TypedCountMap<T> counts = new TypedCountMap<T>() {
+        @Override
+        protected T copyKey(T key) {
+            return SpillingCountMap.this.copyKey(key);
+        }
+    };
+
+    /** the run files */
+    protected final List<File> runs = new ArrayList<File>();
+
+    /** Constructs a new, empty instance that never spills. */
+    public SpillingCountMap() {
+        this.codec = null;
+        this.memoryBudget = Long.MAX_VALUE;
+        this.directory = null;
+    }
+
+    /**
+     * Constructs a new, empty instance that spills to the given directory
+     * (or the default temporary directory, if null) once its estimated size
+     * passes the given number of bytes, encoding keys with the given codec.
+     */
+    public SpillingCountMap(ValueCodec<T> codec, long memoryBudget,
+            File directory) {
+        if (codec == null) {
+            throw new IllegalArgumentException("codec must not be null");
+        }
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException(
+                    "memoryBudget must be positive: got " + memoryBudget);
+        }
+
+        this.codec = codec;
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+    }
+
+    /** Adds one to the count of the given key. */
+    public void increment(T key) throws IOException {
+        add(key, 1);
+    }
+
+    /** Adds a positive amount to the count of the given key. */
+    public void add(T key, long amount) throws IOException {
+        int size = counts.size();
+        counts.add(key, amount);
+
+        if (counts.size() > size && getSizeInBytes() > memoryBudget) {
+            spill();
+        }
+    }
+
+    /** Adds the counts of the given map. */
+    public void addAll(SpillingCountMap<T> other) throws IOException {
+        if (other.runs.isEmpty()) {
+            for (int slot = 0; slot < other.counts.getSlotCount(); slot++) {
+                long count = other.counts.countAt(slot);
+                if (count != 0) {
+                    add(other.counts.keyAt(slot), count);
+                }
+            }
+
+            return;
+        }
+
+        Cursor cursor = other.cursor();
+        try {
+            while (cursor.next()) {
+                add(cursor.getKey(), cursor.getCount());
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** returns the estimated number of bytes of memory used */
+    public long getSizeInBytes() {
+        return counts.getSizeInBytes();
+    }
+
+    /** returns the number of run files */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /** returns the number of keys */
+    public int size() throws IOException {
+        if (runs.isEmpty()) {
+            return counts.size();
+        }
+
+        int size = 0;
+        Cursor cursor = cursor();
+        try {
+            while (cursor.next()) {
+                size++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return size;
+    }
+
+    /** returns a list of the keys */
+    public List<T> getKeys() throws IOException {
+        List<T> keys = new ArrayList<T>();
+
+        if (runs.isEmpty()) {
+            for (int slot = 0; slot < counts.getSlotCount(); slot++) {
+                if (counts.countAt(slot) != 0) {
+                    keys.add(counts.keyAt(slot));
+                }
+            }
+
+            return keys;
+        }
+
+        Cursor cursor = cursor();
+        try {
+            while (cursor.next()) {
+                keys.add(cursor.getKey());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return keys;
+    }
+
+    /** returns the (up to) n most frequent keys, most frequent first */
+    public List<T> getTopKeys(int n) throws IOException {
+        if (runs.isEmpty()) {
+            return counts.getTopKeys(n);
+        }
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: got "
+                    + n);
+        }
+
+        // a min-heap of the most frequent entries so far
+        PriorityQueue<Entry<T>> heap = new PriorityQueue<Entry<T>>(16,
+                new Comparator<Entry<T>>() {
+                    @Override
+                    public int compare(Entry<T> a, Entry<T> b) {
+                        return (a.count < b.count) ? -1
+                                : (a.count == b.count ? 0 : 1);
+                    }
+                });
+
+        Cursor cursor = cursor();
+        try {
+            while (cursor.next()) {
+                long count = cursor.getCount();
+                if (heap.size() < n) {
+                    heap.add(new Entry<T>(cursor.getKey(), count));
+                } else if (n > 0 && count > heap.peek().count) {
+                    heap.poll();
+                    heap.add(new Entry<T>(cursor.getKey(), count));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        List<T> topKeys = new ArrayList<T>(heap.size());
+        while (!heap.isEmpty()) {
+            topKeys.add(heap.poll().key);
+        }
+        Collections.reverse(topKeys);
+
+        return Collections.unmodifiableList(topKeys);
+    }
+
+    /** returns a map of the keys to their counts */
+    public Map<T, Long> getCounts() throws IOException {
+        Map<T, Long> result = new HashMap<T, Long>();
+
+        if (runs.isEmpty()) {
+            for (int slot = 0; slot < counts.getSlotCount(); slot++) {
+                long count = counts.countAt(slot);
+                if (count != 0) {
+                    result.put(counts.keyAt(slot), count);
+                }
+            }
+
+            return result;
+        }
+
+        Cursor cursor = cursor();
+        try {
+            while (cursor.next()) {
+                result.put(cursor.getKey(), cursor.getCount());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a cursor over the keys and their counts, in order of the
+     * encoded keys, merging the runs with the current counts, which are
+     * encoded and sorted in memory rather than spilled. Only valid until
+     * this instance is next modified.
+     */
+    public Cursor cursor() throws IOException {
+        if (codec == null) {
+            throw new IllegalStateException("Not spilling");
+        }
+
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        int slot = 0;
+        while (slot < counts.getSlotCount()) {
+            Chunk chunk = new Chunk();
+            slot = fill(chunk, slot);
+            if (chunk.size > 0) {
+                chunks.add(chunk);
+            }
+        }
+
+        return new Cursor(runs, chunks);
+    }
+
+    /**
+     * Writes the current counts to new run files, if any, merging the runs
+     * into one if there are MERGE_FACTOR of them. The keys are encoded and
+     * sorted a chunk of at most a quarter of the memory budget at a time,
+     * each chunk becoming a run, so that spilling needs little memory
+     * beyond the budget.
+     */
+    public void spill() throws IOException {
+        if (counts.size() == 0) {
+            return;
+        }
+
+        Chunk chunk = new Chunk();
+        int slot = 0;
+
+        while (slot < counts.getSlotCount()) {
+            slot = fill(chunk, slot);
+
+            if (chunk.size > 0) {
+                runs.add(chunk.write());
+                chunk.clear();
+
+                if (runs.size() >= SortedRuns.MERGE_FACTOR) {
+                    compact();
+                }
+            }
+        }
+
+        counts.clear();
+    }
+
+    /** Removes all keys, deleting the run files. */
+    public void clear() {
+        counts.clear();
+        SortedRuns.delete(runs);
+    }
+
+    /** merges the runs into one */
+    protected void compact() throws IOException {
+        File file = SortedRuns.newRunFile(directory);
+        DataOutputStream out = SortedRuns.openOutput(file);
+        Cursor cursor = new Cursor(runs, Collections.<Chunk> emptyList());
+        try {
+            while (cursor.next()) {
+                writeEntry(out, cursor.key, 0, cursor.keyLength, cursor.count);
+            }
+            out.writeInt(-1);
+        } finally {
+            cursor.close();
+            out.close();
+        }
+
+        SortedRuns.delete(runs);
+        runs.add(file);
+    }
+
+    /**
+     * adds the entries of counts from the given slot to a chunk, until it
+     * is full; returns the slot after the last one added
+     */
+    protected int fill(Chunk chunk, int slot) throws IOException {
+        int slotCount = counts.getSlotCount();
+        int limit = getChunkLimit();
+
+        while (slot < slotCount && chunk.bytes.size() < limit) {
+            long count = counts.countAt(slot);
+            if (count != 0) {
+                chunk.add(counts.keyAt(slot), count);
+            }
+            slot++;
+        }
+
+        return slot;
+    }
+
+    /** returns the number of bytes of encoded keys sorted at once */
+    protected int getChunkLimit() {
+        return (int) Math.max(MIN_CHUNK_BYTES, Math.min(memoryBudget / 4,
+                MAX_CHUNK_BYTES));
+    }
+
+    /**
+     * returns the key to store for a key that is absent; by default, the key
+     * itself
+     */
+    protected T copyKey(T key) {
+        return key;
+    }
+
+    /** writes an entry of a run: the length and bytes of the key, and count */
+    protected static void writeEntry(DataOutputStream out, byte[] key,
+            int off, int len, long count) throws IOException {
+        out.writeInt(len);
+        out.write(key, off, len);
+        out.writeLong(count);
+    }
+
+    /**
+     * Entries of the map, with their keys encoded end to end in a buffer,
+     * to be sorted by their encoding with primitive index arrays.
+     */
+    protected class Chunk {
+        /** the encoded keys */
+        protected final EncodedKeys bytes = new EncodedKeys();
+
+        /** the encoder writing to bytes */
+        protected final DataOutputStream encoder = new DataOutputStream(
+                bytes);
+
+        /** the offsets of the keys in bytes, and the end of the last one */
+        protected int[] offsets = new int[17];
+
+        /** the counts of the keys */
+        protected long[] counts = new long[16];
+
+        /** number of entries */
+        protected int size;
+
+        /** Adds an entry, encoding its key. */
+        public void add(T key, long count) throws IOException {
+            if (size == counts.length) {
+                offsets = Arrays.copyOf(offsets, 2 * size + 1);
+                counts = Arrays.copyOf(counts, 2 * size);
+            }
+
+            offsets[size] = bytes.size();
+            codec.write(key, encoder);
+            counts[size] = count;
+            size++;
+            offsets[size] = bytes.size();
+        }
+
+        /** returns the indices of the entries, sorted by encoded key */
+        public int[] sort() {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            SortedRuns.sort(order, size, bytes.getBuffer(), offsets);
+
+            return order;
+        }
+
+        /** Writes the entries, sorted, to a new run file; returns it. */
+        public File write() throws IOException {
+            byte[] buffer = bytes.getBuffer();
+
+            File file = SortedRuns.newRunFile(directory);
+            DataOutputStream out = SortedRuns.openOutput(file);
+            try {
+                for (int index : sort()) {
+                    writeEntry(out, buffer, offsets[index], offsets[index + 1]
+                            - offsets[index], counts[index]);
+                }
+                out.writeInt(-1);
+            } finally {
+                out.close();
+            }
+
+            return file;
+        }
+
+        /** Removes the entries, keeping the buffers. */
+        public void clear() {
+            bytes.reset();
+            size = 0;
+        }
+    }
+
+    /** A byte array output stream whose buffer may be read in place. */
+    protected static class EncodedKeys extends ByteArrayOutputStream {
+        /** returns the buffer, holding size() bytes */
+        public byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * A cursor over the merged entries of a number of runs, in files or in
+     * memory, in order of the encoded keys, adding the counts of equal keys.
+     */
+    public class Cursor {
+        /** the runs with entries left, by their current key */
+        protected final PriorityQueue<Run> queue;
+
+        /** the encoded current key */
+        protected byte[] key = new byte[64];
+
+        /** the length of the current key */
+        protected int keyLength;
+
+        /** the count of the current key */
+        protected long count;
+
+        protected Cursor(List<File> files, List<Chunk> chunks)
+                throws IOException {
+            this.queue = new PriorityQueue<Run>(Math.max(1, files.size()
+                    + chunks.size()), new Comparator<Run>() {
+                @Override
+                public int compare(Run a, Run b) {
+                    return SortedRuns.compare(a.key, a.offset, a.length,
+                            b.key, b.offset, b.length);
+                }
+            });
+
+            try {
+                for (Chunk chunk : chunks) {
+                    advance(new ChunkRun(chunk));
+                }
+                for (File file : files) {
+                    advance(new FileRun(SortedRuns.openInput(file)));
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /** Moves to the next key; returns false if there are none left. */
+        public boolean next() throws IOException {
+            Run run = queue.poll();
+            if (run == null) {
+                return false;
+            }
+
+            if (key.length < run.length) {
+                key = new byte[Math.max(run.length, 2 * key.length)];
+            }
+            System.arraycopy(run.key, run.offset, key, 0, run.length);
+            keyLength = run.length;
+            count = run.count;
+            advance(run);
+
+            while (!queue.isEmpty()) {
+                Run other = queue.peek();
+                if (SortedRuns.compare(other.key, other.offset,
+                        other.length, key, 0, keyLength) != 0) {
+                    break;
+                }
+                count += other.count;
+                advance(queue.poll());
+            }
+
+            return true;
+        }
+
+        /** returns the current key, decoded */
+        public T getKey() throws IOException {
+            return codec.read(new DataInputStream(new ByteArrayInputStream(
+                    key, 0, keyLength)));
+        }
+
+        /** returns the count of the current key */
+        public long getCount() {
+            return count;
+        }
+
+        /** Closes the run files. */
+        public void close() {
+            for (Run run : queue) {
+                run.close();
+            }
+            queue.clear();
+        }
+
+        /** moves a run to its next entry, closing it if there is none */
+        protected void advance(Run run) throws IOException {
+            boolean more = false;
+            try {
+                more = run.next();
+            } finally {
+                if (more) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+        }
+    }
+
+    /** A run being read, positioned at an entry. */
+    protected abstract static class Run {
+        /** the array holding the encoded key */
+        protected byte[] key;
+
+        /** the offset of the encoded key in key */
+        protected int offset;
+
+        /** the length of the encoded key */
+        protected int length;
+
+        /** the count of the key */
+        protected long count;
+
+        /** reads the next entry; returns false at the end of the run */
+        public abstract boolean next() throws IOException;
+
+        /** Releases the run. */
+        public void close() {
+        }
+    }
+
+    /** A run file being read, positioned at an entry. */
+    protected static class FileRun extends Run {
+        protected final DataInputStream in;
+
+        public FileRun(DataInputStream in) {
+            this.in = in;
+            this.key = new byte[64];
+        }
+
+        /** @see Run#next() */
+        @Override
+        public boolean next() throws IOException {
+            int len = in.readInt();
+            if (len < 0) {
+                return false;
+            }
+
+            if (key.length < len) {
+                key = new byte[Math.max(len, 2 * key.length)];
+            }
+            in.readFully(key, 0, len);
+            length = len;
+            count = in.readLong();
+
+            return true;
+        }
+
+        /** Closes the file. */
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing was written
+            }
+        }
+    }
+
+    /** A chunk being read in sorted order, positioned at an entry. */
+    protected class ChunkRun extends Run {
+        protected final Chunk chunk;
+        protected final int[] order;
+        protected int index;
+
+        public ChunkRun(Chunk chunk) {
+            this.chunk = chunk;
+            this.order = chunk.sort();
+            this.key = chunk.bytes.getBuffer();
+        }
+
+        /** @see Run#next() */
+        @Override
+        public boolean next() {
+            if (index == order.length) {
+                return false;
+            }
+
+            int entry = order[index++];
+            offset = chunk.offsets[entry];
+            length = chunk.offsets[entry + 1] - offset;
+            count = chunk.counts[entry];
+
+            return true;
+        }
+    }
+
+    /** A key and its count. */
+    protected static class Entry<T> {
+        protected final T key;
+        protected final long count;
+
+        public Entry(T key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+}
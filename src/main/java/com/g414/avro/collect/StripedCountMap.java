@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A thread-safe map from keys to long counts, striped over TypedCountMaps
+ * that are each guarded by their own lock, so that threads counting
+ * different keys rarely contend. Unlike a ConcurrentHashMap of atomic
+ * counters, there is no entry or counter object per key, counting a key
+ * that is present allocates nothing, and Utf8, Long and Integer keys are
+ * kept in the count maps specialized for them. Keys stored as objects are
+ * stored as returned by copyKey(), which subclasses may override to copy
+ * reused values.
+ */
+public class StripedCountMap<T> {
+    /** the stripes, each guarded by its own lock */
+    protected final TypedCountMap<T>[] stripes;
+
+    /** number of bits of the hash selecting a stripe */
+    protected final int stripeBits;
+
+    /**
+     * Constructs a new, empty instance with four stripes per available
+     * processor.
+     */
+    public StripedCountMap() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new, empty instance with (at least) the given number of
+     * stripes.
+     */
+    @SuppressWarnings("unchecked")
+    public StripedCountMap(int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException(
+                    "stripeCount must be positive: got " + stripeCount);
+        }
+
+        int bits = 0;
+        while ((1 << bits) < stripeCount && bits < 16) {
+            bits++;
+        }
+
+        this.stripeBits = bits;
+        this.stripes = new TypedCountMap[1 << bits];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new TypedCountMap<T>() {
+                @Override
+                protected T copyKey(T key) {
+                    return StripedCountMap.this.copyKey(key);
+                }
+            };
+        }
+    }
+
+    /** Adds one to the count of the given key. */
+    public void increment(T key) {
+        add(key, 1, true);
+    }
+
+    /** Adds a positive amount to the count of the given key. */
+    public void add(T key, long amount) {
+        add(key, amount, true);
+    }
+
+    /** adds to the count of a key, copying it if absent and copy is set */
+    protected void add(T key, long amount, boolean copy) {
+        TypedCountMap<T> stripe = stripe(ObjectCountMap.hash(key));
+
+        synchronized (stripe) {
+            stripe.add(key, amount, copy);
+        }
+    }
+
+    /** returns the count of the given key, or zero if absent */
+    public long get(T key) {
+        TypedCountMap<T> stripe = stripe(ObjectCountMap.hash(key));
+
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    /** Adds the counts of the given map. */
+    public void addAll(StripedCountMap<T> other) {
+        for (TypedCountMap<T> otherStripe : other.stripes) {
+            // copy, so as not to hold a lock of each map at once
+            TypedCountMap<T> copy = new TypedCountMap<T>();
+            synchronized (otherStripe) {
+                copy.addAll(otherStripe);
+            }
+
+            addAll(copy);
+        }
+    }
+
+    /** Adds the counts of the given map, whose keys are stored as they are. */
+    public void addAll(TypedCountMap<T> other) {
+        for (int slot = 0; slot < other.getSlotCount(); slot++) {
+            long count = other.countAt(slot);
+            if (count != 0) {
+                add(other.keyAt(slot), count, false);
+            }
+        }
+    }
+
+    /** returns the number of keys */
+    public int size() {
+        int size = 0;
+        for (TypedCountMap<T> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+
+        return size;
+    }
+
+    /** returns a list of the keys */
+    public List<T> getKeys() {
+        List<T> keys = new ArrayList<T>();
+        for (TypedCountMap<T> stripe : stripes) {
+            synchronized (stripe) {
+                for (int slot = 0; slot < stripe.getSlotCount(); slot++) {
+                    if (stripe.countAt(slot) != 0) {
+                        keys.add(stripe.keyAt(slot));
+                    }
+                }
+            }
+        }
+
+        return keys;
+    }
+
+    /** returns a map of the keys to their counts */
+    public Map<T, Long> getCounts() {
+        Map<T, Long> counts = new HashMap<T, Long>();
+        for (TypedCountMap<T> stripe : stripes) {
+            synchronized (stripe) {
+                for (int slot = 0; slot < stripe.getSlotCount(); slot++) {
+                    long count = stripe.countAt(slot);
+                    if (count != 0) {
+                        counts.put(stripe.keyAt(slot), count);
+                    }
+                }
+            }
+        }
+
+        return counts;
+    }
+
+    /** returns the (up to) n most frequent keys, most frequent first */
+    public List<T> getTopKeys(int n) {
+        // the top n overall are among the top n of each stripe
+        TopN.Entries<T> candidates = new TopN.Entries<T>();
+        for (TypedCountMap<T> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.addTopEntries(n, candidates);
+            }
+        }
+
+        return candidates.top(n);
+    }
+
+    /**
+     * returns the key to store for a key that is absent; by default, the key
+     * itself
+     */
+    protected T copyKey(T key) {
+        return key;
+    }
+
+    /** returns the stripe of the key with the given hash */
+    protected TypedCountMap<T> stripe(int hash) {
+        // the stripe uses the high bits, leaving the low bits for its slots
+        return stripes[(stripeBits == 0) ? 0 : hash >>> (32 - stripeBits)];
+    }
+}
@@ -0,0 +1,534 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A t-digest: a sketch of the distribution of a stream of numbers that
+ * estimates quantiles in bounded memory, with an error that is smallest near
+ * the extremes (where SLA percentiles such as p99 and p999 lie). Values are
+ * summarized as centroids (a mean and a weight), which are small near the
+ * tails and larger near the median; the number of centroids is proportional
+ * to the compression parameter, and larger values give smaller errors.
+ * Values are buffered and merged into the centroids in sorted order (the
+ * "merging" variant of the t-digest). A centroid spans at most one unit of
+ * two scale functions: the arcsine one, compression / (2 pi) * asin(2q - 1),
+ * which bounds the size of centroids near the median, and the logistic one,
+ * compression / Z * ln(q / (1 - q)) with Z growing with the logarithm of the
+ * count, which keeps them small (and singletons at the extremes) in the
+ * tails.
+ *
+ * Thread-safe; for concurrent updates without contention, use one digest per
+ * thread and merge them. Digests may be saved to and loaded from files.
+ */
+public class TDigest {
+    /** magic header of digest files */
+    public static final byte[] MAGIC = new byte[] { (byte) 'T', (byte) 'D',
+            (byte) 'I', (byte) 'G' };
+
+    /** default compression: about 100 centroids, errors well under 1% */
+    public static final double DEFAULT_COMPRESSION = 100.0;
+
+    /** the smallest compression allowed */
+    public static final double MIN_COMPRESSION = 10.0;
+
+    /** the largest compression allowed */
+    public static final double MAX_COMPRESSION = 10000.0;
+
+    /** number of buffered values per unit of compression */
+    protected static final int BUFFER_FACTOR = 5;
+
+    /** the compression parameter */
+    protected final double compression;
+
+    /** means of the centroids, in ascending order */
+    protected double[] means;
+
+    /** weights of the centroids */
+    protected double[] weights;
+
+    /** number of centroids */
+    protected int count;
+
+    /** total weight of the centroids */
+    protected double totalWeight;
+
+    /** means of the buffered values */
+    protected double[] bufferMeans;
+
+    /** weights of the buffered values */
+    protected double[] bufferWeights;
+
+    /** number of buffered values */
+    protected int bufferCount;
+
+    /** total weight of the buffered values */
+    protected double bufferWeight;
+
+    /** scratch space for merging the buffer into the centroids */
+    protected double[] mergeMeans;
+
+    /** scratch space for merging the buffer into the centroids */
+    protected double[] mergeWeights;
+
+    /** smallest value seen */
+    protected double min = Double.POSITIVE_INFINITY;
+
+    /** largest value seen */
+    protected double max = Double.NEGATIVE_INFINITY;
+
+    /** Constructs a new, empty instance with the default compression. */
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /** Constructs a new, empty instance with the given compression. */
+    public TDigest(double compression) {
+        if (!(compression >= MIN_COMPRESSION
+                && compression <= MAX_COMPRESSION)) {
+            throw new IllegalArgumentException("compression must be between "
+                    + MIN_COMPRESSION + " and " + MAX_COMPRESSION + ": got "
+                    + compression);
+        }
+
+        // adjacent centroids span more than one unit of a scale function,
+        // and the scale functions span under 1.3 compression units together
+        int capacity = 3 * (int) Math.ceil(compression) + 8;
+        int bufferSize = BUFFER_FACTOR * (int) Math.ceil(compression);
+
+        this.compression = compression;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.bufferMeans = new double[bufferSize];
+        this.bufferWeights = new double[bufferSize];
+        this.mergeMeans = new double[capacity + bufferSize];
+        this.mergeWeights = new double[capacity + bufferSize];
+    }
+
+    /** Reads a digest from the given file. */
+    public static TDigest read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Reads a digest from the given input, as written by write(DataOutput). */
+    public static TDigest read(DataInput in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a digest");
+            }
+        }
+
+        double compression = in.readDouble();
+        int count = in.readInt();
+        if (!(compression >= MIN_COMPRESSION && compression <= MAX_COMPRESSION)
+                || count < 0
+                || count > 3 * (int) Math.ceil(compression) + 8) {
+            throw new IOException("Invalid digest");
+        }
+
+        TDigest digest = new TDigest(compression);
+        digest.min = in.readDouble();
+        digest.max = in.readDouble();
+        for (int i = 0; i < count; i++) {
+            digest.means[i] = in.readDouble();
+            digest.weights[i] = in.readDouble();
+            digest.totalWeight += digest.weights[i];
+        }
+        digest.count = count;
+
+        return digest;
+    }
+
+    /** Writes this digest to the given file. */
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Writes this digest to the given output. */
+    public synchronized void write(DataOutput out) throws IOException {
+        flush();
+
+        out.write(MAGIC);
+        out.writeDouble(compression);
+        out.writeInt(count);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        for (int i = 0; i < count; i++) {
+            out.writeDouble(means[i]);
+            out.writeDouble(weights[i]);
+        }
+    }
+
+    /** Adds a value; NaN is ignored. */
+    public void add(double value) {
+        add(value, 1.0);
+    }
+
+    /** Adds a value with the given (positive) weight; NaN is ignored. */
+    public synchronized void add(double value, double weight) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (!(weight > 0.0)) {
+            throw new IllegalArgumentException("weight must be positive: got "
+                    + weight);
+        }
+
+        if (bufferCount == bufferMeans.length) {
+            flush();
+        }
+
+        bufferMeans[bufferCount] = value;
+        bufferWeights[bufferCount] = weight;
+        bufferCount++;
+        bufferWeight += weight;
+
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /** Adds the values summarized by the given digest. */
+    public void merge(TDigest other) {
+        double[] otherMeans;
+        double[] otherWeights;
+        double otherMin;
+        double otherMax;
+
+        synchronized (other) {
+            other.flush();
+            otherMeans = new double[other.count];
+            otherWeights = new double[other.count];
+            System.arraycopy(other.means, 0, otherMeans, 0, other.count);
+            System.arraycopy(other.weights, 0, otherWeights, 0, other.count);
+            otherMin = other.min;
+            otherMax = other.max;
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < otherMeans.length; i++) {
+                add(otherMeans[i], otherWeights[i]);
+            }
+
+            // centroid means lie within, but need not reach, the extremes
+            min = Math.min(min, otherMin);
+            max = Math.max(max, otherMax);
+        }
+    }
+
+    /** returns the total weight (the number of values) added */
+    public synchronized double size() {
+        return totalWeight + bufferWeight;
+    }
+
+    /** returns the smallest value added, or NaN if none */
+    public synchronized double getMin() {
+        return (size() == 0.0) ? Double.NaN : min;
+    }
+
+    /** returns the largest value added, or NaN if none */
+    public synchronized double getMax() {
+        return (size() == 0.0) ? Double.NaN : max;
+    }
+
+    /** returns the number of centroids, after merging buffered values */
+    public synchronized int getCentroidCount() {
+        flush();
+
+        return count;
+    }
+
+    /** returns the compression parameter */
+    public double getCompression() {
+        return compression;
+    }
+
+    /**
+     * Returns an estimate of the value at the given quantile (between 0 and
+     * 1, inclusive), or NaN if no values were added. Quantiles 0 and 1 are
+     * the exact minimum and maximum; in between, values are interpolated
+     * between the centroids, each of which is taken to be centered on its
+     * mean.
+     */
+    public synchronized double quantile(double q) {
+        if (!(q >= 0.0 && q <= 1.0)) {
+            throw new IllegalArgumentException(
+                    "q must be between 0 and 1, inclusive: got " + q);
+        }
+
+        flush();
+
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (q == 0.0 || count == 1 && totalWeight == 1.0) {
+            return (q == 1.0) ? max : min;
+        }
+        if (q == 1.0) {
+            return max;
+        }
+
+        double index = q * totalWeight;
+
+        // left tail: between the minimum and the center of the first centroid
+        double firstHalf = weights[0] / 2;
+        if (index < firstHalf) {
+            if (weights[0] == 1.0) {
+                return min;
+            }
+
+            return min + (means[0] - min) * index / firstHalf;
+        }
+
+        double cumulative = firstHalf;
+        for (int i = 0; i < count - 1; i++) {
+            double gap = (weights[i] + weights[i + 1]) / 2;
+
+            if (index < cumulative + gap) {
+                // singletons represent an exact value
+                double left = (weights[i] == 1.0) ? 0.5 : 0.0;
+                double right = (weights[i + 1] == 1.0) ? 0.5 : 0.0;
+                double offset = index - cumulative;
+
+                if (offset < left) {
+                    return means[i];
+                }
+                if (offset >= gap - right) {
+                    return means[i + 1];
+                }
+
+                double fraction = (offset - left) / (gap - left - right);
+
+                return means[i] + fraction * (means[i + 1] - means[i]);
+            }
+
+            cumulative += gap;
+        }
+
+        // right tail: between the center of the last centroid and the maximum
+        double lastHalf = weights[count - 1] / 2;
+        if (weights[count - 1] == 1.0) {
+            return max;
+        }
+
+        double offset = index - cumulative;
+
+        return means[count - 1] + (max - means[count - 1]) * offset / lastHalf;
+    }
+
+    /**
+     * Returns an estimate of the fraction of values less than or equal to the
+     * given value, or NaN if no values were added.
+     */
+    public synchronized double cdf(double value) {
+        flush();
+
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (value < min) {
+            return 0.0;
+        }
+        if (value >= max) {
+            return 1.0;
+        }
+
+        if (value < means[0]) {
+            double span = means[0] - min;
+            double below = (span > 0) ? (value - min) / span : 1.0;
+
+            return below * weights[0] / 2 / totalWeight;
+        }
+
+        double cumulative = weights[0] / 2;
+        for (int i = 0; i < count - 1; i++) {
+            double gap = (weights[i] + weights[i + 1]) / 2;
+
+            if (value < means[i + 1]) {
+                double span = means[i + 1] - means[i];
+                double fraction = (span > 0) ? (value - means[i]) / span
+                        : 0.0;
+
+                return (cumulative + fraction * gap) / totalWeight;
+            }
+
+            cumulative += gap;
+        }
+
+        double span = max - means[count - 1];
+        double fraction = (span > 0) ? (value - means[count - 1]) / span : 1.0;
+
+        return (cumulative + fraction * weights[count - 1] / 2) / totalWeight;
+    }
+
+    /** Merges the buffered values into the centroids. */
+    protected void flush() {
+        if (bufferCount == 0) {
+            return;
+        }
+
+        sort(bufferMeans, bufferWeights, 0, bufferCount - 1);
+
+        // merge the sorted buffer and centroids
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < count || j < bufferCount) {
+            if (j == bufferCount || i < count && means[i] <= bufferMeans[j]) {
+                mergeMeans[n] = means[i];
+                mergeWeights[n++] = weights[i++];
+            } else {
+                mergeMeans[n] = bufferMeans[j];
+                mergeWeights[n++] = bufferWeights[j++];
+            }
+        }
+
+        double total = totalWeight + bufferWeight;
+        double arcsine = compression / (2 * Math.PI);
+        double logistic = compression
+                / (4 * Math.log(Math.max(1.0, total / compression)) + 24);
+
+        // combine neighbors while the combination spans at most one unit of
+        // both scale functions, that is, up to a limit on cumulative weight
+        int out = 0;
+        double before = 0.0;
+        double limit = total * limit(0.0, arcsine, logistic);
+        double mean = mergeMeans[0];
+        double weight = mergeWeights[0];
+
+        for (int k = 1; k < n; k++) {
+            double proposed = weight + mergeWeights[k];
+
+            if (before + proposed <= limit || out == means.length - 1) {
+                mean += (mergeMeans[k] - mean) * mergeWeights[k] / proposed;
+                weight = proposed;
+            } else {
+                means[out] = mean;
+                weights[out++] = weight;
+                before += weight;
+                limit = total * limit(before / total, arcsine, logistic);
+                mean = mergeMeans[k];
+                weight = mergeWeights[k];
+            }
+        }
+
+        means[out] = mean;
+        weights[out++] = weight;
+
+        count = out;
+        totalWeight = total;
+        bufferCount = 0;
+        bufferWeight = 0.0;
+    }
+
+    /**
+     * Returns the largest quantile that a centroid starting at quantile q may
+     * reach, one unit of each scale function (with the given normalizers)
+     * away.
+     */
+    protected static double limit(double q, double arcsine, double logistic) {
+        double k = Math.asin(2 * q - 1) + 1 / arcsine;
+        double byArcsine = (k >= Math.PI / 2) ? 1.0 : (Math.sin(k) + 1) / 2;
+
+        double logit = Math.log(q / (1 - q)) + 1 / logistic;
+        double byLogistic = 1 / (1 + Math.exp(-logit));
+
+        return Math.min(byArcsine, byLogistic);
+    }
+
+    /** Sorts keys[from..to] ascending, permuting values alike. */
+    protected static void sort(double[] keys, double[] values, int from,
+            int to) {
+        while (to - from > 16) {
+            double pivot = median(keys[from], keys[(from + to) >>> 1],
+                    keys[to]);
+            int i = from;
+            int j = to;
+
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+
+            // recurse into the smaller part
+            if (j - from < to - i) {
+                sort(keys, values, from, j);
+                from = i;
+            } else {
+                sort(keys, values, i, to);
+                to = j;
+            }
+        }
+
+        for (int i = from + 1; i <= to; i++) {
+            for (int j = i; j > from && keys[j - 1] > keys[j]; j--) {
+                swap(keys, values, j - 1, j);
+            }
+        }
+    }
+
+    /** returns the median of three values */
+    protected static double median(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    /** swaps elements i and j of both arrays */
+    protected static void swap(double[] keys, double[] values, int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
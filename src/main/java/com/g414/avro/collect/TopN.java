@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Partial selection of the largest counts with a bounded min-heap: choosing
+ * the n largest of m counts takes O(m log n) time and O(n) space, rather
+ * than sorting all m. Used by the open-addressing count maps, in which a
+ * count of zero marks an empty slot.
+ */
+public class TopN {
+    /**
+     * Returns the indices of the (up to) n largest non-zero counts, in
+     * descending order of count.
+     */
+    public static int[] slots(long[] counts, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative: got "
+                    + n);
+        }
+
+        int[] heap = new int[Math.min(n, counts.length)];
+        int size = 0;
+
+        for (int slot = 0; slot < counts.length; slot++) {
+            long count = counts[slot];
+            if (count == 0) {
+                continue;
+            }
+
+            if (size < heap.length) {
+                heap[size++] = slot;
+                siftUp(heap, counts, size - 1);
+            } else if (size > 0 && count > counts[heap[0]]) {
+                heap[0] = slot;
+                siftDown(heap, counts, 0, size);
+            }
+        }
+
+        // pop the minimum into the end, leaving descending order
+        for (int end = size - 1; end > 0; end--) {
+            int min = heap[0];
+            heap[0] = heap[end];
+            heap[end] = min;
+            siftDown(heap, counts, 0, end);
+        }
+
+        if (size == heap.length) {
+            return heap;
+        }
+
+        int[] result = new int[size];
+        System.arraycopy(heap, 0, result, 0, size);
+
+        return result;
+    }
+
+    /** moves heap[index] up while smaller than its parent */
+    protected static void siftUp(int[] heap, long[] counts, int index) {
+        int slot = heap[index];
+
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[slot]) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+
+        heap[index] = slot;
+    }
+
+    /** moves heap[index] down while larger than a child */
+    protected static void siftDown(int[] heap, long[] counts, int index,
+            int size) {
+        int slot = heap[index];
+
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size
+                    && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[slot] <= counts[heap[child]]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+
+        heap[index] = slot;
+    }
+
+    /**
+     * Keys with their (positive) counts, in parallel arrays, from which the
+     * most frequent keys are selected; for combining the candidates of a
+     * number of maps without boxing their counts.
+     */
+    public static class Entries<T> {
+        /** the keys */
+        protected Object[] keys = new Object[16];
+
+        /** the counts of the keys; zero past the end */
+        protected long[] counts = new long[16];
+
+        /** number of entries */
+        protected int size;
+
+        /** Adds a key with its count. */
+        public void add(T key, long count) {
+            if (size == counts.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+
+            keys[size] = key;
+            counts[size] = count;
+            size++;
+        }
+
+        /** returns the number of entries */
+        public int size() {
+            return size;
+        }
+
+        /** returns the (up to) n most frequent keys, most frequent first */
+        @SuppressWarnings("unchecked")
+        public List<T> top(int n) {
+            int[] indices = slots(counts, n);
+            List<T> topKeys = new ArrayList<T>(indices.length);
+
+            for (int index : indices) {
+                topKeys.add((T) keys[index]);
+            }
+
+            return Collections.unmodifiableList(topKeys);
+        }
+    }
+}
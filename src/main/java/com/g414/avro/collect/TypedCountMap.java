@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.util.List;
+
+import org.apache.avro.util.Utf8;
+
+/**
+ * A map from keys (which may be null) to long counts that keeps each key in
+ * the count map specialized for its runtime type: Utf8 keys in a
+ * Utf8CountMap (so that their bytes are copied into a single array, rather
+ * than kept as a Utf8 object per key), Long keys in a LongCountMap and
+ * Integer keys in an IntCountMap (so that they are neither boxed nor hashed
+ * through hashCode()), and all other keys in an ObjectCountMap. Avro decodes
+ * string, long and int fields to these types, so a map counting the values
+ * of a field uses a single specialized part.
+ *
+ * The slots of the parts are numbered consecutively, for iteration with
+ * getSlotCount(), countAt() and keyAt(); keyAt() returns a new Utf8 for a
+ * Utf8 key and a boxed value for a Long or Integer key. Keys in the
+ * ObjectCountMap are stored as returned by copyKey(), which subclasses may
+ * override to copy reused values. Not thread-safe.
+ */
+public class TypedCountMap<T> {
+    /** the counts of Utf8 keys */
+    protected Utf8CountMap strings = new Utf8CountMap();
+
+    /** the counts of Long keys */
+    protected LongCountMap longs = new LongCountMap();
+
+    /** the counts of Integer keys */
+    protected IntCountMap ints = new IntCountMap();
+
+    /** the counts of all other keys */
+    protected final ObjectCountMap<T> objects = new ObjectCountMap<T>();
+
+    /** the estimated size in bytes of the keys in objects */
+    protected long objectBytes;
+
+    /** Adds one to the count of the given key; returns the new count. */
+    public long increment(T key) {
+        return add(key, 1, true);
+    }
+
+    /** Adds a positive amount to the count of a key; returns the new count. */
+    public long add(T key, long amount) {
+        return add(key, amount, true);
+    }
+
+    /**
+     * adds to the count of a key, copying it (if stored as an object) if
+     * absent and copy is set; returns the new count
+     */
+    protected long add(T key, long amount, boolean copy) {
+        if (key instanceof Utf8) {
+            return strings.add((Utf8) key, amount);
+        }
+        if (key instanceof Long) {
+            return longs.add(((Long) key).longValue(), amount);
+        }
+        if (key instanceof Integer) {
+            return ints.add(((Integer) key).intValue(), amount);
+        }
+
+        CountMaps.checkAmount(amount);
+
+        int hash = ObjectCountMap.hash(key);
+        int slot = objects.find(key, hash);
+        if (slot >= 0) {
+            return objects.counts[slot] += amount;
+        }
+
+        objects.insert(copy ? copyKey(key) : key, hash, amount);
+        objectBytes += SortedRuns.estimateSize(key);
+
+        return amount;
+    }
+
+    /** returns the count of the given key, or zero if absent */
+    public long get(T key) {
+        if (key instanceof Utf8) {
+            return strings.get((Utf8) key);
+        }
+        if (key instanceof Long) {
+            return longs.get(((Long) key).longValue());
+        }
+        if (key instanceof Integer) {
+            return ints.get(((Integer) key).intValue());
+        }
+
+        return objects.get(key);
+    }
+
+    /** Adds the counts of the given map, whose keys are stored as they are. */
+    @SuppressWarnings("unchecked")
+    public void addAll(TypedCountMap<T> other) {
+        strings.addAll(other.strings);
+        longs.addAll(other.longs);
+        ints.addAll(other.ints);
+
+        for (int slot = 0; slot < other.objects.counts.length; slot++) {
+            long count = other.objects.counts[slot];
+            if (count != 0) {
+                add((T) other.objects.keys[slot], count, false);
+            }
+        }
+    }
+
+    /** returns the number of keys */
+    public int size() {
+        return strings.size() + longs.size() + ints.size() + objects.size();
+    }
+
+    /** returns the number of slots */
+    public int getSlotCount() {
+        return strings.getSlotCount() + longs.getSlotCount()
+                + ints.getSlotCount() + objects.getSlotCount();
+    }
+
+    /** returns the key in the given slot */
+    @SuppressWarnings("unchecked")
+    public T keyAt(int slot) {
+        if (slot < strings.getSlotCount()) {
+            return (T) strings.keyAt(slot);
+        }
+        slot -= strings.getSlotCount();
+
+        if (slot < longs.getSlotCount()) {
+            return (T) Long.valueOf(longs.keyAt(slot));
+        }
+        slot -= longs.getSlotCount();
+
+        if (slot < ints.getSlotCount()) {
+            return (T) Integer.valueOf(ints.keyAt(slot));
+        }
+
+        return objects.keyAt(slot - ints.getSlotCount());
+    }
+
+    /** returns the count in the given slot, or zero if it is empty */
+    public long countAt(int slot) {
+        if (slot < strings.getSlotCount()) {
+            return strings.countAt(slot);
+        }
+        slot -= strings.getSlotCount();
+
+        if (slot < longs.getSlotCount()) {
+            return longs.countAt(slot);
+        }
+        slot -= longs.getSlotCount();
+
+        if (slot < ints.getSlotCount()) {
+            return ints.countAt(slot);
+        }
+
+        return objects.countAt(slot - ints.getSlotCount());
+    }
+
+    /** returns the (up to) n most frequent keys, most frequent first */
+    public List<T> getTopKeys(int n) {
+        TopN.Entries<T> entries = new TopN.Entries<T>();
+        addTopEntries(n, entries);
+
+        return entries.top(n);
+    }
+
+    /**
+     * Adds the (up to) n most frequent keys of each part, with their counts,
+     * to the given entries; the n most frequent keys overall are among them.
+     */
+    @SuppressWarnings("unchecked")
+    public void addTopEntries(int n, TopN.Entries<T> entries) {
+        for (int slot : TopN.slots(strings.counts, n)) {
+            entries.add((T) strings.keyAt(slot), strings.counts[slot]);
+        }
+        for (int slot : TopN.slots(longs.counts, n)) {
+            entries.add((T) Long.valueOf(longs.keys[slot]),
+                    longs.counts[slot]);
+        }
+        for (int slot : TopN.slots(ints.counts, n)) {
+            entries.add((T) Integer.valueOf(ints.keys[slot]),
+                    ints.counts[slot]);
+        }
+        for (int slot : TopN.slots(objects.counts, n)) {
+            entries.add((T) objects.keys[slot], objects.counts[slot]);
+        }
+    }
+
+    /** returns the estimated number of bytes of memory used */
+    public long getSizeInBytes() {
+        return strings.getSizeInBytes() + 16L * longs.getSlotCount() + 12L
+                * ints.getSlotCount() + 20L * objects.getSlotCount()
+                + objectBytes;
+    }
+
+    /** Removes all keys, releasing the tables. */
+    public void clear() {
+        strings = new Utf8CountMap();
+        longs = new LongCountMap();
+        ints = new IntCountMap();
+        objects.clear();
+        objectBytes = 0;
+    }
+
+    /**
+     * returns the key to store for a key that is absent and is kept in the
+     * ObjectCountMap; by default, the key itself
+     */
+    protected T copyKey(T key) {
+        return key;
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.util.Arrays;
+
+import org.apache.avro.util.Utf8;
+
+/**
+ * A map from byte sequences (such as the bytes of Utf8 strings) to long
+ * counts, using open addressing with linear probing. The bytes of the keys
+ * are stored end to end in a single array, and each slot holds the offset,
+ * length and hash of its key and its count (20 bytes), so that there are no
+ * objects per entry; counting a key that is present allocates nothing, and
+ * the key need not be copied. Counts are positive; a slot with a count of
+ * zero is empty. Not thread-safe.
+ */
+public class Utf8CountMap {
+    /** the bytes of all keys */
+    protected byte[] bytes;
+
+    /** number of bytes used */
+    protected int used;
+
+    /** offsets of the keys, by slot */
+    protected int[] offsets;
+
+    /** lengths of the keys, by slot */
+    protected int[] lengths;
+
+    /** hashes of the keys, by slot */
+    protected int[] hashes;
+
+    /** the counts, by slot; zero if empty */
+    protected long[] counts;
+
+    /** number of keys */
+    protected int size;
+
+    /** Constructs a new, empty instance. */
+    public Utf8CountMap() {
+        this(16);
+    }
+
+    /** Constructs a new, empty instance sized for the given number of keys. */
+    public Utf8CountMap(int expectedSize) {
+        int slots = CountMaps.slotsFor(expectedSize);
+
+        this.bytes = new byte[Math.max(64, expectedSize * 8)];
+        this.offsets = new int[slots];
+        this.lengths = new int[slots];
+        this.hashes = new int[slots];
+        this.counts = new long[slots];
+    }
+
+    /** Adds one to the count of the given key; returns the new count. */
+    public long increment(Utf8 key) {
+        return add(key.getBytes(), 0, key.getLength(), 1);
+    }
+
+    /** Adds a positive amount to the count of a key; returns the new count. */
+    public long add(Utf8 key, long amount) {
+        return add(key.getBytes(), 0, key.getLength(), amount);
+    }
+
+    /**
+     * Adds a positive amount to the count of the key key[off, off + len);
+     * returns the new count.
+     */
+    public long add(byte[] key, int off, int len, long amount) {
+        CountMaps.checkAmount(amount);
+
+        int hash = hash(key, off, len);
+        int mask = counts.length - 1;
+        int slot = hash & mask;
+
+        while (counts[slot] != 0) {
+            if (hashes[slot] == hash && matches(slot, key, off, len)) {
+                return counts[slot] += amount;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (used + len > bytes.length) {
+            long capacity = Math.max((long) used + len, 2L * bytes.length);
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Too many key bytes");
+            }
+            bytes = Arrays.copyOf(bytes, (int) capacity);
+        }
+        System.arraycopy(key, off, bytes, used, len);
+
+        offsets[slot] = used;
+        lengths[slot] = len;
+        hashes[slot] = hash;
+        counts[slot] = amount;
+        used += len;
+
+        if (++size > CountMaps.threshold(counts.length)) {
+            CountMaps.checkGrowth(counts.length);
+            rehash(counts.length * 2);
+        }
+
+        return amount;
+    }
+
+    /** returns the count of the given key, or zero if absent */
+    public long get(Utf8 key) {
+        return get(key.getBytes(), 0, key.getLength());
+    }
+
+    /** returns the count of the key key[off, off + len), or zero if absent */
+    public long get(byte[] key, int off, int len) {
+        int hash = hash(key, off, len);
+        int mask = counts.length - 1;
+        int slot = hash & mask;
+
+        while (counts[slot] != 0) {
+            if (hashes[slot] == hash && matches(slot, key, off, len)) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return 0;
+    }
+
+    /** Adds the counts of the given map. */
+    public void addAll(Utf8CountMap other) {
+        for (int slot = 0; slot < other.counts.length; slot++) {
+            if (other.counts[slot] != 0) {
+                add(other.bytes, other.offsets[slot], other.lengths[slot],
+                        other.counts[slot]);
+            }
+        }
+    }
+
+    /** returns the number of keys */
+    public int size() {
+        return size;
+    }
+
+    /** returns the number of slots */
+    public int getSlotCount() {
+        return counts.length;
+    }
+
+    /** returns a new Utf8 holding the key in the given slot */
+    public Utf8 keyAt(int slot) {
+        byte[] key = new byte[lengths[slot]];
+        System.arraycopy(bytes, offsets[slot], key, 0, key.length);
+
+        return new Utf8(key);
+    }
+
+    /** returns the count in the given slot, or zero if it is empty */
+    public long countAt(int slot) {
+        return counts[slot];
+    }
+
+    /** returns the (up to) n most frequent keys, most frequent first */
+    public Utf8[] getTopKeys(int n) {
+        int[] slots = TopN.slots(counts, n);
+        Utf8[] topKeys = new Utf8[slots.length];
+
+        for (int i = 0; i < slots.length; i++) {
+            topKeys[i] = keyAt(slots[i]);
+        }
+
+        return topKeys;
+    }
+
+    /** returns the number of bytes of memory used, approximately */
+    public long getSizeInBytes() {
+        return bytes.length + 20L * counts.length;
+    }
+
+    /** Removes all keys. */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        size = 0;
+        used = 0;
+    }
+
+    /** returns true if the key in the slot is key[off, off + len) */
+    protected boolean matches(int slot, byte[] key, int off, int len) {
+        if (lengths[slot] != len) {
+            return false;
+        }
+
+        int offset = offsets[slot];
+        for (int i = 0; i < len; i++) {
+            if (bytes[offset + i] != key[off + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** moves the keys into arrays of the given number of slots */
+    protected void rehash(int slots) {
+        int[] oldOffsets = offsets;
+        int[] oldLengths = lengths;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+
+        offsets = new int[slots];
+        lengths = new int[slots];
+        hashes = new int[slots];
+        counts = new long[slots];
+        int mask = slots - 1;
+
+        for (int i = 0; i < oldCounts.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = oldHashes[i] & mask;
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                offsets[slot] = oldOffsets[i];
+                lengths[slot] = oldLengths[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /** returns the hash of the key key[off, off + len) */
+    protected static int hash(byte[] key, int off, int len) {
+        return (int) Hashing.murmur64(key, off, len, Hashing.SEED);
+    }
+}
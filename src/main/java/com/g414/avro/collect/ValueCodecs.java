@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.collect;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.avro.util.Utf8;
+
+/**
+ * ValueCodecs for common types. GENERIC encodes any value decoded by Avro
+ * that is null, a Utf8, a String, a number, a Boolean or a ByteBuffer, with
+ * a tag byte giving its type, so that values are read back as the same type.
+ */
+public class ValueCodecs {
+    /** codec for Long values */
+    public static final ValueCodec<Long> LONG = new ValueCodec<Long>() {
+        @Override
+        public void write(Long value, DataOutput out) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public Long read(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    /** codec for Integer values */
+    public static final ValueCodec<Integer> INTEGER = new ValueCodec<Integer>() {
+        @Override
+        public void write(Integer value, DataOutput out) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    /** codec for Double values */
+    public static final ValueCodec<Double> DOUBLE = new ValueCodec<Double>() {
+        @Override
+        public void write(Double value, DataOutput out) throws IOException {
+            out.writeDouble(value);
+        }
+
+        @Override
+        public Double read(DataInput in) throws IOException {
+            return in.readDouble();
+        }
+    };
+
+    /** codec for Utf8 values, as their length and bytes */
+    public static final ValueCodec<Utf8> UTF8 = new ValueCodec<Utf8>() {
+        @Override
+        public void write(Utf8 value, DataOutput out) throws IOException {
+            writeBytes(value.getBytes(), value.getLength(), out);
+        }
+
+        @Override
+        public Utf8 read(DataInput in) throws IOException {
+            return new Utf8(readBytes(in));
+        }
+    };
+
+    /** codec for String values, as the length and bytes of their UTF-8 */
+    public static final ValueCodec<String> STRING = new ValueCodec<String>() {
+        @Override
+        public void write(String value, DataOutput out) throws IOException {
+            byte[] bytes = value.getBytes("UTF-8");
+            writeBytes(bytes, bytes.length, out);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return new String(readBytes(in), "UTF-8");
+        }
+    };
+
+    /** codec for the values of Avro generic data; see the class comment */
+    public static final ValueCodec<Object> GENERIC = new ValueCodec<Object>() {
+        @Override
+        public void write(Object value, DataOutput out) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof Utf8) {
+                out.writeByte(UTF8_TAG);
+                UTF8.write((Utf8) value, out);
+            } else if (value instanceof String) {
+                out.writeByte(STRING_TAG);
+                STRING.write((String) value, out);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG_TAG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(INTEGER_TAG);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE_TAG);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Float) {
+                out.writeByte(FLOAT_TAG);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN_TAG);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof ByteBuffer) {
+                ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+
+                out.writeByte(BYTES_TAG);
+                writeBytes(bytes, bytes.length, out);
+            } else {
+                throw new IOException("Cannot encode value of type "
+                        + value.getClass().getName());
+            }
+        }
+
+        @Override
+        public Object read(DataInput in) throws IOException {
+            byte tag = in.readByte();
+
+            switch (tag) {
+            case NULL:
+                return null;
+            case UTF8_TAG:
+                return UTF8.read(in);
+            case STRING_TAG:
+                return STRING.read(in);
+            case LONG_TAG:
+                return in.readLong();
+            case INTEGER_TAG:
+                return in.readInt();
+            case DOUBLE_TAG:
+                return in.readDouble();
+            case FLOAT_TAG:
+                return in.readFloat();
+            case BOOLEAN_TAG:
+                return in.readBoolean();
+            case BYTES_TAG:
+                return ByteBuffer.wrap(readBytes(in));
+            default:
+                throw new IOException("Invalid value tag: " + tag);
+            }
+        }
+    };
+
+    /** tags of GENERIC values */
+    protected static final byte NULL = 0;
+    protected static final byte UTF8_TAG = 1;
+    protected static final byte STRING_TAG = 2;
+    protected static final byte LONG_TAG = 3;
+    protected static final byte INTEGER_TAG = 4;
+    protected static final byte DOUBLE_TAG = 5;
+    protected static final byte FLOAT_TAG = 6;
+    protected static final byte BOOLEAN_TAG = 7;
+    protected static final byte BYTES_TAG = 8;
+
+    /** Writes the length and the first length bytes. */
+    protected static void writeBytes(byte[] bytes, int length, DataOutput out)
+            throws IOException {
+        out.writeInt(length);
+        out.write(bytes, 0, length);
+    }
+
+    /** Reads bytes written by writeBytes(). */
+    protected static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid length: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return bytes;
+    }
+}
@@ -30,7 +30,7 @@ import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
 
-import com.g414.avro.file.SequentialDataReader;
+import com.g414.avro.file.BlockDataReader;
 import com.g414.avro.process.RecordProcessor;
 import com.g414.avro.process.handler.JsonWriter;
 
@@ -59,7 +59,7 @@ public class JsonExport {
                 PrintWriter writer = new PrintWriter(file + ".out.json");
                 RecordProcessor<GenericRecord> processor = new RecordProcessor<GenericRecord>(
                         schema, null, new JsonWriter(writer));
-                processor.process(new SequentialDataReader<GenericRecord>(
+                processor.process(new BlockDataReader<GenericRecord>(
                         schema, input, new GenericDatumReader<GenericRecord>(
                                 schema)));
                 // close file...
@@ -28,7 +28,7 @@ import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
 
-import com.g414.avro.file.SequentialDataReader;
+import com.g414.avro.file.BlockDataReader;
 import com.g414.avro.process.RecordProcessor;
 import com.g414.avro.process.handler.DelimitedTextFileWriter;
 
@@ -52,7 +52,7 @@ public class TabDelimitedExport {
                 PrintWriter writer = new PrintWriter(file + ".out.tsv");
                 RecordProcessor<GenericRecord> processor = new RecordProcessor<GenericRecord>(
                         schema, null, new DelimitedTextFileWriter(writer, "\t"));
-                processor.process(new SequentialDataReader<GenericRecord>(
+                processor.process(new BlockDataReader<GenericRecord>(
                         schema, new FileInputStream(file),
                         new GenericDatumReader<GenericRecord>(schema)));
                 // close file...
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+
+import com.g414.avro.process.ProcessingException;
+
+/**
+ * Reads data files in a sequential manner like SequentialDataReader, but reads
+ * each block into memory with bulk reads and decodes its records from there.
+ * This avoids per-byte calls to the underlying stream and per-byte position
+ * bookkeeping; record positions are derived from the position of the block.
+ */
+public class BlockDataReader<D> implements DataReader<D>, InputPosition {
+    protected DatumReader<D> reader;
+    protected BlockScanner scanner;
+    protected BlockInputStream in;
+    protected Decoder vin;
+
+    protected long lastPos = 0;
+    protected long blockCount; // # entries remaining in block
+
+    /** Construct a reader for a file. */
+    public BlockDataReader(Schema schema, InputStream sin,
+            DatumReader<D> reader) throws ProcessingException {
+        this(schema, sin, reader, 0L);
+    }
+
+    /**
+     * Construct a reader for a range of a file that starts at the given
+     * position (see BlockScanner).
+     */
+    public BlockDataReader(Schema schema, InputStream sin,
+            DatumReader<D> reader, long position) throws ProcessingException {
+        this.scanner = new BlockScanner(sin, position);
+        this.in = new BlockInputStream();
+
+        this.reader = reader;
+        reader.setSchema(schema);
+
+        this.vin = new BinaryDecoder(in);
+    }
+
+    /** Return the next datum in the file. */
+    public synchronized D next(D reuse) throws ProcessingException {
+        try {
+            while (blockCount == 0) { // at start of block
+                DataBlock block = scanner.next();
+                if (block == null) {
+                    return null;
+                }
+
+                in.setBlock(block);
+                blockCount = block.getCount();
+            }
+            blockCount--;
+            lastPos = in.tell();
+            return reader.read(reuse, vin);
+        } catch (IOException e) {
+            throw new ProcessingException("Exception while reading input: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /** return the start position of the last record returned */
+    public synchronized long lastPos() {
+        return this.lastPos;
+    }
+
+    /** @see InputPosition#tell() */
+    public synchronized long tell() {
+        return scanner.tell();
+    }
+
+    /** Close this reader. */
+    public synchronized void close() throws IOException {
+        scanner.close();
+    }
+}
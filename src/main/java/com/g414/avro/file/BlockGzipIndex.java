@@ -0,0 +1,337 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Offset table of a block-gzip data file, as written by BlockGzipWriter: a
+ * data file compressed as a series of independent gzip members, each of which
+ * starts at a sync marker (except the first, which starts with the magic
+ * header). The table holds the compressed and uncompressed offset of the start
+ * of each member, and is stored in a sidecar file next to the data (see
+ * getIndexFile()).
+ *
+ * Since every member can be decompressed on its own, the file can be divided
+ * into splits of consecutive members that are read concurrently, using the
+ * ranged constructors of the data readers. Instances are immutable.
+ */
+public class BlockGzipIndex {
+    /** magic header of index files */
+    public static final byte[] MAGIC = new byte[] { (byte) 'B', (byte) 'G',
+            (byte) 'Z', (byte) 'I' };
+
+    /** suffix of index files, appended to the name of the data file */
+    public static final String SUFFIX = ".idx";
+
+    /** compressed offsets of each member, followed by the compressed length */
+    protected final long[] compressed;
+
+    /** uncompressed offsets of each member, followed by the total length */
+    protected final long[] uncompressed;
+
+    /**
+     * Constructs a new instance from member offsets; each array has one more
+     * element than there are members, the last being the total length.
+     */
+    public BlockGzipIndex(long[] compressed, long[] uncompressed) {
+        if (compressed.length != uncompressed.length || compressed.length < 1) {
+            throw new IllegalArgumentException("Invalid offset table");
+        }
+
+        this.compressed = compressed.clone();
+        this.uncompressed = uncompressed.clone();
+    }
+
+    /** returns the index file of the given data file */
+    public static File getIndexFile(File data) {
+        return new File(data.getPath() + SUFFIX);
+    }
+
+    /** returns the index of the given data file, or null if it has none */
+    public static BlockGzipIndex forFile(File data) throws IOException {
+        File file = getIndexFile(data);
+
+        return file.exists() ? read(file) : null;
+    }
+
+    /** Reads an index from the given file. */
+    public static BlockGzipIndex read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < magic.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("Not an index file: " + file);
+                }
+            }
+
+            int size = in.readInt();
+            if (size < 1) {
+                throw new IOException("Invalid index file: " + file);
+            }
+
+            long[] compressed = new long[size];
+            long[] uncompressed = new long[size];
+            for (int i = 0; i < size; i++) {
+                compressed[i] = in.readLong();
+                uncompressed[i] = in.readLong();
+            }
+
+            return new BlockGzipIndex(compressed, uncompressed);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Writes this index to the given file. */
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            out.write(MAGIC);
+            out.writeInt(compressed.length);
+            for (int i = 0; i < compressed.length; i++) {
+                out.writeLong(compressed[i]);
+                out.writeLong(uncompressed[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** returns the number of members */
+    public int getMemberCount() {
+        return compressed.length - 1;
+    }
+
+    /** returns the compressed length of the file */
+    public long getCompressedLength() {
+        return compressed[compressed.length - 1];
+    }
+
+    /** returns the uncompressed length of the file */
+    public long getUncompressedLength() {
+        return uncompressed[uncompressed.length - 1];
+    }
+
+    /**
+     * Divides the file into at most the given number of splits of consecutive
+     * members, of roughly equal uncompressed size.
+     */
+    public List<Split> getSplits(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be positive: got "
+                    + count);
+        }
+
+        List<Split> splits = new ArrayList<Split>();
+        int members = getMemberCount();
+        int first = 0;
+
+        for (int i = 1; i <= count && first < members; i++) {
+            long target = getUncompressedLength() * i / count;
+
+            int last = first + 1;
+            while (last < members && uncompressed[last] < target) {
+                last++;
+            }
+
+            splits.add(new Split(first, last));
+            first = last;
+        }
+
+        return splits;
+    }
+
+    /**
+     * Opens the given split of the given data file, returning a stream of its
+     * uncompressed contents.
+     */
+    public InputStream open(File data, Split split) throws IOException {
+        return new MemberInputStream(data, split);
+    }
+
+    /** A range of consecutive members of a block-gzip file. */
+    public class Split {
+        /** index of the first member */
+        protected final int first;
+
+        /** index just past the last member */
+        protected final int last;
+
+        protected Split(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        /** returns the compressed offset of the start of this split */
+        public long getCompressedStart() {
+            return compressed[first];
+        }
+
+        /** returns the compressed offset of the end of this split */
+        public long getCompressedEnd() {
+            return compressed[last];
+        }
+
+        /**
+         * returns the uncompressed offset of the start of this split, which is
+         * the position to give to the ranged constructors of the data readers
+         */
+        public long getPosition() {
+            return uncompressed[first];
+        }
+
+        /** returns the uncompressed offset of the end of this split */
+        public long getEnd() {
+            return uncompressed[last];
+        }
+
+        @Override
+        public String toString() {
+            return "Split[" + getPosition() + ", " + getEnd() + ")";
+        }
+    }
+
+    /** Decompresses the members of a split one after another. */
+    protected class MemberInputStream extends InputStream {
+        protected final InputStream file;
+        protected final Split split;
+        protected int member;
+        protected InputStream current;
+
+        /** buffer for read() of a single byte */
+        protected final byte[] single = new byte[1];
+
+        public MemberInputStream(File data, Split split) throws IOException {
+            this.split = split;
+            this.member = split.first;
+
+            FileInputStream fin = new FileInputStream(data);
+            try {
+                fin.getChannel().position(split.getCompressedStart());
+            } catch (IOException e) {
+                fin.close();
+                throw e;
+            }
+            this.file = new BufferedInputStream(fin, 64 * 1024);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int n = read(single, 0, 1);
+
+            return (n < 0) ? -1 : (single[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            while (true) {
+                if (current == null) {
+                    if (member == split.last) {
+                        return -1;
+                    }
+
+                    long length = compressed[member + 1] - compressed[member];
+                    current = new GZIPInputStream(new BoundedInputStream(file,
+                            length));
+                    member++;
+                }
+
+                int n = current.read(b, off, len);
+                if (n >= 0) {
+                    return n;
+                }
+
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    /** Reads at most a given number of bytes, leaving the source open. */
+    protected static class BoundedInputStream extends InputStream {
+        protected final InputStream in;
+        protected long remaining;
+
+        public BoundedInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int value = in.read();
+            if (value >= 0) {
+                remaining--;
+            }
+
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public void close() {
+            // the source is shared by all members
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses a data file as a block-gzip file: a series of independent gzip
+ * members, each (except the first) starting at a sync marker, together with
+ * an offset table (see BlockGzipIndex). The result is still an ordinary gzip
+ * file that decompresses to the original data, but can also be split for
+ * concurrent processing.
+ */
+public class BlockGzipWriter {
+    /** default minimum uncompressed size of a member */
+    public static final int DEFAULT_MEMBER_SIZE = 1024 * 1024;
+
+    /** number of bytes requested from the input per read */
+    protected static final int READ_SIZE = 64 * 1024;
+
+    /**
+     * Converts each given data file (which may be gzipped, if its name ends in
+     * ".gz") into a block-gzip file named after it with ".bgz.gz" appended,
+     * with its index alongside.
+     */
+    public static void main(String[] args) throws IOException {
+        for (String fname : args) {
+            String output = fname.replaceFirst("\\.gz$", "") + ".bgz.gz";
+            convert(new File(fname), new File(output), DEFAULT_MEMBER_SIZE);
+        }
+    }
+
+    /**
+     * Converts the given data file (which may be gzipped, if its name ends in
+     * ".gz") into a block-gzip file, writing its index alongside.
+     */
+    public static BlockGzipIndex convert(File input, File output,
+            int memberSize) throws IOException {
+        InputStream in = new FileInputStream(input);
+        try {
+            if (input.getName().endsWith(".gz")) {
+                in = new GZIPInputStream(in);
+            }
+
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(
+                    output));
+            BlockGzipIndex index;
+            try {
+                index = write(in, out, memberSize);
+            } finally {
+                out.close();
+            }
+
+            index.write(BlockGzipIndex.getIndexFile(output));
+
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Compresses the data file read from the given input into the given
+     * output as members of at least the given uncompressed size (except the
+     * last), returning the offset table.
+     */
+    public static BlockGzipIndex write(InputStream in, OutputStream out,
+            int memberSize) throws IOException {
+        if (memberSize < 1) {
+            throw new IllegalArgumentException(
+                    "memberSize must be positive: got " + memberSize);
+        }
+
+        int header = DataFileConstants.MAGIC.length
+                + DataFileConstants.SYNC_SIZE;
+        byte[] buf = new byte[Math.max(2 * READ_SIZE, memberSize + READ_SIZE)];
+        int limit = 0;
+        boolean eof = false;
+
+        while (limit < header && !eof) {
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n < 0) {
+                eof = true;
+            } else {
+                limit += n;
+            }
+        }
+
+        byte[] magic = Arrays.copyOf(buf, DataFileConstants.MAGIC.length);
+        if (limit < header || !Arrays.equals(DataFileConstants.MAGIC, magic)) {
+            throw new IOException("Not a data file.");
+        }
+
+        byte[] sync = Arrays.copyOfRange(buf, magic.length, header);
+
+        LongList compressed = new LongList();
+        LongList uncompressed = new LongList();
+        long compressedOffset = 0;
+        long uncompressedOffset = 0;
+
+        ByteArrayOutputStream member = new ByteArrayOutputStream();
+        int scanned = header; // buf[0, scanned) holds no usable cut
+
+        while (limit > 0) {
+            int cut = indexOf(buf, sync, Math.max(scanned, memberSize), limit);
+
+            if (cut < 0 && !eof) {
+                scanned = Math.max(scanned, limit - sync.length + 1);
+                if (buf.length - limit < READ_SIZE) {
+                    buf = Arrays.copyOf(buf, 2 * buf.length);
+                }
+
+                int n = in.read(buf, limit, buf.length - limit);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    limit += n;
+                }
+                continue;
+            }
+
+            if (cut < 0) {
+                cut = limit;
+            }
+
+            member.reset();
+            GZIPOutputStream gzip = new GZIPOutputStream(member);
+            gzip.write(buf, 0, cut);
+            gzip.close();
+
+            compressed.add(compressedOffset);
+            uncompressed.add(uncompressedOffset);
+            member.writeTo(out);
+            compressedOffset += member.size();
+            uncompressedOffset += cut;
+
+            System.arraycopy(buf, cut, buf, 0, limit - cut);
+            limit -= cut;
+            scanned = sync.length;
+        }
+
+        compressed.add(compressedOffset);
+        uncompressed.add(uncompressedOffset);
+        out.flush();
+
+        return new BlockGzipIndex(compressed.toArray(), uncompressed.toArray());
+    }
+
+    /**
+     * returns the index of the first occurrence of the pattern in
+     * buf[from, limit), or -1
+     */
+    protected static int indexOf(byte[] buf, byte[] pattern, int from,
+            int limit) {
+        int last = limit - pattern.length;
+
+        outer: for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buf[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    /** A growable list of longs. */
+    protected static class LongList {
+        protected long[] values = new long[64];
+        protected int size;
+
+        public void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = value;
+        }
+
+        public long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
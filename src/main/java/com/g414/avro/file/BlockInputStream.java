@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.InputStream;
+
+/**
+ * An InputStream over the records of a DataBlock, used for decoding records
+ * from memory. Keeps track of the stream position of the bytes read so that
+ * readers may implement Tell without per-byte bookkeeping in a filter. Not
+ * thread-safe.
+ */
+public class BlockInputStream extends InputStream {
+    /** array holding the block bytes */
+    protected byte[] data;
+
+    /** index of the next byte to read */
+    protected int pos;
+
+    /** index just past the last readable byte */
+    protected int end;
+
+    /** index saved by mark() */
+    protected int mark;
+
+    /** stream position of data[0] */
+    protected long base;
+
+    /** Creates a new instance with no block, call setBlock() before reading. */
+    public BlockInputStream() {
+        this.data = new byte[0];
+    }
+
+    /** Creates a new instance that reads the records of the given block. */
+    public BlockInputStream(DataBlock block) {
+        setBlock(block);
+    }
+
+    /** Positions this stream at the first record of the given block. */
+    public void setBlock(DataBlock block) {
+        this.data = block.data;
+        this.pos = block.start;
+        this.mark = block.start;
+        this.end = block.end;
+        this.base = block.position - block.start;
+    }
+
+    /** returns the stream position of the next byte to be read */
+    public long tell() {
+        return base + pos;
+    }
+
+    /** returns the number of unread bytes in the block */
+    public int remaining() {
+        return end - pos;
+    }
+
+    /** @see InputStream#read() */
+    @Override
+    public int read() {
+        return (pos < end) ? (data[pos++] & 0xff) : -1;
+    }
+
+    /** @see InputStream#read(byte[], int, int) */
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (pos >= end) {
+            return (len == 0) ? 0 : -1;
+        }
+
+        int n = Math.min(len, end - pos);
+        System.arraycopy(data, pos, b, off, n);
+        pos += n;
+
+        return n;
+    }
+
+    /** @see InputStream#skip(long) */
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, end - pos));
+        pos += skipped;
+
+        return skipped;
+    }
+
+    /** @see InputStream#available() */
+    @Override
+    public int available() {
+        return end - pos;
+    }
+
+    /** @see InputStream#markSupported() */
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    /** @see InputStream#mark(int) */
+    @Override
+    public void mark(int readlimit) {
+        mark = pos;
+    }
+
+    /** @see InputStream#reset() */
+    @Override
+    public void reset() {
+        pos = mark;
+    }
+}
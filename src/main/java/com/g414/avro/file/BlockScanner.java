@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import com.g414.avro.process.ProcessingException;
+
+/**
+ * Splits a data file into blocks by searching for the sync marker, without
+ * decoding any records. Input is read in large chunks into a reusable buffer,
+ * so the cost of the underlying stream is paid per chunk rather than per byte.
+ * Not thread-safe.
+ */
+public class BlockScanner {
+    /** number of bytes requested from the underlying stream per read */
+    protected static final int READ_SIZE = 64 * 1024;
+
+    /** underlying input */
+    protected final InputStream in;
+
+    /** sync marker of this file */
+    protected final byte[] sync = new byte[DataFileConstants.SYNC_SIZE];
+
+    /** block returned to callers, backed by the buffer */
+    protected final DataBlock block = new DataBlock();
+
+    /** input buffer */
+    protected byte[] buf = new byte[2 * READ_SIZE];
+
+    /** index of the first byte not yet returned */
+    protected int start;
+
+    /** index just past the last valid byte in the buffer */
+    protected int limit;
+
+    /** stream position of buf[0] */
+    protected long bufPosition;
+
+    /** whether the underlying stream is exhausted */
+    protected boolean eof;
+
+    /** whether the footer (or end of input) has been reached */
+    protected boolean done;
+
+    /** Construct a scanner for a data file, starting with the magic header. */
+    public BlockScanner(InputStream in) throws ProcessingException {
+        this(in, 0L);
+    }
+
+    /**
+     * Construct a scanner for a range of a data file that starts at the given
+     * position, which must be either 0 (the start of the file) or the position
+     * of a sync marker. Scanning ends at the footer or at end of input.
+     */
+    public BlockScanner(InputStream in, long position)
+            throws ProcessingException {
+        this.in = in;
+        this.bufPosition = position;
+
+        try {
+            int offset = (position == 0) ? DataFileConstants.MAGIC.length : 0;
+            int header = offset + sync.length;
+            while (limit < header && !eof) {
+                fill();
+            }
+            if (limit < header) {
+                throw new IOException("Not a data file.");
+            }
+
+            if (position == 0) {
+                byte[] magic = Arrays.copyOf(buf, offset);
+                if (!Arrays.equals(DataFileConstants.MAGIC, magic))
+                    throw new IOException("Not a data file.");
+            }
+
+            System.arraycopy(buf, offset, sync, 0, sync.length);
+            start = header;
+        } catch (IOException e) {
+            throw new ProcessingException("Exception while creating scanner: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * returns the stream position of the first byte not yet returned in a
+     * block or skipped as a sync marker
+     */
+    public long tell() {
+        return bufPosition + start;
+    }
+
+    /**
+     * Return the next non-empty block in the file, or null once the footer is
+     * reached. The returned block is only valid until the next call.
+     */
+    public DataBlock next() throws ProcessingException {
+        try {
+            while (!done) {
+                int end;
+                int scanned = 0;
+
+                while ((end = indexOfSync(start + scanned)) < 0 && !eof) {
+                    scanned = Math.max(0, limit - start - sync.length + 1);
+                    fill();
+                }
+
+                int next;
+                if (end < 0) {
+                    end = next = limit;
+                    done = true;
+                } else {
+                    next = end + sync.length;
+                }
+
+                if (end == start) {
+                    start = next;
+                    continue;
+                }
+
+                block.init(buf, start, end, bufPosition + start);
+                start = next;
+
+                if (block.count == DataFileConstants.FOOTER_BLOCK) {
+                    done = true;
+                } else if (block.count > 0) {
+                    return block;
+                }
+            }
+
+            return null;
+        } catch (IOException e) {
+            throw new ProcessingException("Exception while reading input: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /** returns a copy of the sync marker of this file */
+    public byte[] getSync() {
+        return sync.clone();
+    }
+
+    /** Close the underlying input. */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /** returns the index of the next sync marker at or after from, or -1 */
+    protected int indexOfSync(int from) {
+        byte first = sync[0];
+        int last = limit - sync.length;
+
+        outer: for (int i = from; i <= last; i++) {
+            if (buf[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < sync.length; j++) {
+                if (buf[i + j] != sync[j]) {
+                    continue outer;
+                }
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Discards consumed bytes from the buffer (growing it if necessary) and
+     * reads the next chunk of input.
+     */
+    protected void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, limit - start);
+            bufPosition += start;
+            limit -= start;
+            start = 0;
+        }
+
+        if (buf.length - limit < READ_SIZE) {
+            buf = Arrays.copyOf(buf, Math.max(2 * buf.length, limit
+                    + READ_SIZE));
+        }
+
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.IOException;
+
+/**
+ * A block of a data file as found between two sync markers: the block count
+ * followed by the serialized records of the block. Instances returned by a
+ * BlockScanner are backed by the scanner's buffer and are only valid until the
+ * next block is requested; use copy() to obtain an independent instance.
+ */
+public class DataBlock {
+    /** array holding the block bytes */
+    protected byte[] data;
+
+    /** index of the first record byte (just after the block count) */
+    protected int start;
+
+    /** index just past the last byte of the block */
+    protected int end;
+
+    /** number of records in the block */
+    protected long count;
+
+    /** position of data[start] in the input stream */
+    protected long position;
+
+    /**
+     * Sets this instance to the block contained in the given range of the
+     * specified array, which begins with the block count; position is the
+     * stream position of data[offset].
+     */
+    protected void init(byte[] data, int offset, int end, long position)
+            throws IOException {
+        int pos = offset;
+        long value = 0;
+        int shift = 0;
+        int b;
+
+        do {
+            if (pos >= end) {
+                throw new IOException("Truncated block count");
+            }
+            b = data[pos++] & 0xff;
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        this.data = data;
+        this.start = pos;
+        this.end = end;
+        this.count = (value >>> 1) ^ -(value & 1);
+        this.position = position + (pos - offset);
+    }
+
+    /** returns the array holding the block bytes */
+    public byte[] getData() {
+        return data;
+    }
+
+    /** returns the index of the first record byte */
+    public int getStart() {
+        return start;
+    }
+
+    /** returns the index just past the last byte of the block */
+    public int getEnd() {
+        return end;
+    }
+
+    /** returns the number of records in the block */
+    public long getCount() {
+        return count;
+    }
+
+    /** returns the stream position of the first record byte */
+    public long getPosition() {
+        return position;
+    }
+
+    /** returns a copy of this block that owns its bytes */
+    public DataBlock copy() {
+        int length = end - start;
+        byte[] bytes = new byte[length];
+        System.arraycopy(data, start, bytes, 0, length);
+
+        DataBlock block = new DataBlock();
+        block.data = bytes;
+        block.start = 0;
+        block.end = length;
+        block.count = count;
+        block.position = position;
+
+        return block;
+    }
+}
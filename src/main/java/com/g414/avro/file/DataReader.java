@@ -0,0 +1,36 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.IOException;
+
+import com.g414.avro.process.ProcessingException;
+
+/**
+ * Interface for readers that return the records of a data file in sequence.
+ * Implemented by SequentialDataReader as well as the alternative reading
+ * strategies in this package, so that they may be used interchangeably by the
+ * RecordProcessor.
+ */
+public interface DataReader<D> extends Tell {
+    /** Return the next datum in the file, or null at end of input. */
+    public D next(D reuse) throws ProcessingException;
+
+    /** Close this reader. */
+    public void close() throws IOException;
+}
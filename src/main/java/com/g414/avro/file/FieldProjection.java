@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.util.Utf8;
+
+/**
+ * Decodes a selected subset of the fields of a record, skipping over the
+ * binary encoding of the others without materializing them. Primitive values
+ * are decoded directly; complex values are decoded by a GenericDatumReader for
+ * the value's schema. Not thread-safe.
+ */
+public class FieldProjection {
+    /** record schema */
+    protected final Schema schema;
+
+    /** field schemas, by position */
+    protected final Schema[] fieldSchemas;
+
+    /** whether each field is decoded, by position */
+    protected final boolean[] selected;
+
+    /** readers for complex values, by schema */
+    protected final Map<Schema, GenericDatumReader<Object>> readers = new IdentityHashMap<Schema, GenericDatumReader<Object>>();
+
+    /**
+     * Creates a new instance that decodes the named fields of records of the
+     * given schema; if fields is null, all fields are decoded. Names that are
+     * not fields of the schema are ignored.
+     */
+    public FieldProjection(Schema schema, Set<String> fields) {
+        List<Field> schemaFields = schema.getFields();
+
+        this.schema = schema;
+        this.fieldSchemas = new Schema[schemaFields.size()];
+        this.selected = new boolean[schemaFields.size()];
+
+        for (Field field : schemaFields) {
+            fieldSchemas[field.pos()] = field.schema();
+            selected[field.pos()] = (fields == null)
+                    || fields.contains(field.name());
+        }
+    }
+
+    /** returns whether any field is decoded by this projection */
+    public boolean isEmpty() {
+        for (boolean isSelected : selected) {
+            if (isSelected) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads one record from the decoder, storing the selected fields into the
+     * given record and skipping the others.
+     */
+    public void read(GenericRecord record, Decoder in) throws IOException {
+        for (int i = 0; i < selected.length; i++) {
+            if (selected[i]) {
+                record.put(i, read(record.get(i), fieldSchemas[i], in));
+            } else {
+                skip(fieldSchemas[i], in);
+            }
+        }
+    }
+
+    /** decodes a single value, reusing the old value where possible */
+    protected Object read(Object old, Schema valueSchema, Decoder in)
+            throws IOException {
+        switch (valueSchema.getType()) {
+        case NULL:
+            in.readNull();
+            return null;
+        case BOOLEAN:
+            return in.readBoolean();
+        case INT:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case FLOAT:
+            return in.readFloat();
+        case DOUBLE:
+            return in.readDouble();
+        case STRING:
+            return in.readString((old instanceof Utf8) ? (Utf8) old : null);
+        case BYTES:
+            return in.readBytes((old instanceof ByteBuffer) ? (ByteBuffer) old
+                    : null);
+        case UNION:
+            return read(old, valueSchema.getTypes().get(in.readIndex()), in);
+        default:
+            return getReader(valueSchema).read(old, in);
+        }
+    }
+
+    /** returns the reader used for complex values of the given schema */
+    protected GenericDatumReader<Object> getReader(Schema valueSchema) {
+        GenericDatumReader<Object> reader = readers.get(valueSchema);
+        if (reader == null) {
+            reader = new GenericDatumReader<Object>(valueSchema);
+            readers.put(valueSchema, reader);
+        }
+
+        return reader;
+    }
+
+    /** Skips over a single value of the given schema. */
+    public static void skip(Schema valueSchema, Decoder in) throws IOException {
+        switch (valueSchema.getType()) {
+        case NULL:
+            in.readNull();
+            break;
+        case BOOLEAN:
+            in.readBoolean();
+            break;
+        case INT:
+            in.readInt();
+            break;
+        case LONG:
+            in.readLong();
+            break;
+        case FLOAT:
+            in.readFloat();
+            break;
+        case DOUBLE:
+            in.readDouble();
+            break;
+        case STRING:
+            in.skipString();
+            break;
+        case BYTES:
+            in.skipBytes();
+            break;
+        case FIXED:
+            in.skipFixed(valueSchema.getFixedSize());
+            break;
+        case ENUM:
+            in.readEnum();
+            break;
+        case UNION:
+            skip(valueSchema.getTypes().get(in.readIndex()), in);
+            break;
+        case RECORD:
+            for (Field field : valueSchema.getFields()) {
+                skip(field.schema(), in);
+            }
+            break;
+        case ARRAY:
+            for (long n = in.skipArray(); n != 0; n = in.skipArray()) {
+                for (long i = 0; i < n; i++) {
+                    skip(valueSchema.getElementType(), in);
+                }
+            }
+            break;
+        case MAP:
+            for (long n = in.skipMap(); n != 0; n = in.skipMap()) {
+                for (long i = 0; i < n; i++) {
+                    in.skipString();
+                    skip(valueSchema.getValueType(), in);
+                }
+            }
+            break;
+        default:
+            throw new IOException("Unknown type: " + valueSchema);
+        }
+    }
+}
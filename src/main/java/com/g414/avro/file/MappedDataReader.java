@@ -0,0 +1,323 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+
+import com.g414.avro.process.ProcessingException;
+
+/**
+ * Reads uncompressed local data files through a memory mapping, decoding
+ * records straight from the mapped region. Unlike SequentialDataReader, this
+ * reader supports random access: seek() positions the reader at a record
+ * offset such as those recorded by DataIndexer, and sync() positions the reader
+ * at the next block boundary after an arbitrary offset.
+ *
+ * Files larger than 2GB are mapped as several regions. Mapped regions are
+ * released when garbage-collected, not when the reader is closed.
+ */
+public class MappedDataReader<D> implements DataReader<D>, InputPosition {
+    protected DatumReader<D> reader;
+    protected FileChannel channel;
+    protected MappedInput in;
+    protected Decoder vin;
+
+    protected long lastPos = 0;
+    protected long blockCount; // # entries in block
+    protected boolean countKnown = true; // false after seek()
+    protected boolean done;
+    protected byte[] sync = new byte[DataFileConstants.SYNC_SIZE];
+    protected byte[] syncBuffer = new byte[DataFileConstants.SYNC_SIZE];
+
+    /** Construct a reader for a file. */
+    public MappedDataReader(Schema schema, File file, DatumReader<D> reader)
+            throws ProcessingException {
+        try {
+            this.channel = new RandomAccessFile(file, "r").getChannel();
+            this.in = new MappedInput(channel);
+
+            byte[] magic = new byte[4];
+            if (in.size() < magic.length + sync.length)
+                throw new IOException("Not a data file.");
+            in.read(magic);
+            if (!Arrays.equals(DataFileConstants.MAGIC, magic))
+                throw new IOException("Not a data file.");
+
+            in.get(in.tell(), sync);
+
+            this.reader = reader;
+            reader.setSchema(schema);
+
+            this.vin = new BinaryDecoder(in);
+        } catch (IOException e) {
+            closeChannel();
+            throw new ProcessingException("Exception while creating reader: "
+                    + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            closeChannel();
+            throw e;
+        }
+    }
+
+    /** closes the channel, if opened, after the constructor failed */
+    protected void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the exception that made the constructor fail is rethrown
+        }
+    }
+
+    /** Return the next datum in the file. */
+    public synchronized D next(D reuse) throws ProcessingException {
+        try {
+            if (done) {
+                return null;
+            }
+
+            if (!countKnown) {
+                if (in.remaining() == 0) {
+                    done = true;
+                    return null;
+                }
+                if (isSync(in.tell())) {
+                    countKnown = true;
+                    blockCount = 0;
+                }
+            }
+
+            while (countKnown && blockCount == 0) { // at start of block
+                skipSync(); // skip a sync
+                blockCount = vin.readLong(); // read blockCount
+                if (blockCount == DataFileConstants.FOOTER_BLOCK) {
+                    done = true;
+                    return null;
+                }
+            }
+
+            if (countKnown) {
+                blockCount--;
+            }
+            lastPos = in.tell();
+            return reader.read(reuse, vin);
+        } catch (IOException e) {
+            throw new ProcessingException("Exception while reading input: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /** Return the datum starting at the specified position. */
+    public synchronized D read(long position, D reuse)
+            throws ProcessingException {
+        seek(position);
+
+        return next(reuse);
+    }
+
+    /**
+     * Position the reader at the specified offset, which must be the start of
+     * a record (as returned by lastPos()) or of a sync marker.
+     */
+    public synchronized void seek(long position) throws ProcessingException {
+        if (position < 0 || position > in.size()) {
+            throw new ProcessingException("Invalid position: " + position);
+        }
+
+        in.seek(position);
+        countKnown = false;
+        done = false;
+    }
+
+    /**
+     * Position the reader at the first block boundary at or after the
+     * specified offset; returns the position of the boundary, or the file size
+     * if there is none.
+     */
+    public synchronized long sync(long position) throws ProcessingException {
+        long last = in.size() - sync.length;
+        for (long pos = Math.max(position, 0); pos <= last; pos++) {
+            if (isSync(pos)) {
+                in.seek(pos);
+                countKnown = true;
+                blockCount = 0;
+                done = false;
+
+                return pos;
+            }
+        }
+
+        in.seek(in.size());
+        done = true;
+
+        return in.size();
+    }
+
+    /** return the start position of the last record returned */
+    public synchronized long lastPos() {
+        return this.lastPos;
+    }
+
+    /** @see InputPosition#tell() */
+    public synchronized long tell() {
+        return in.tell();
+    }
+
+    /** Close this reader. */
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /** returns whether the sync marker starts at the given position */
+    protected boolean isSync(long position) {
+        if (position + sync.length > in.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < sync.length; i++) {
+            if (in.get(position + i) != sync[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** skips a synchronization block */
+    protected void skipSync() throws IOException {
+        vin.readFixed(syncBuffer);
+
+        if (!Arrays.equals(syncBuffer, sync)) {
+            throw new RuntimeException("Invalid Sync!");
+        }
+    }
+
+    /**
+     * InputStream over the mapped regions of a file channel; also implements
+     * absolute reads for sync detection.
+     */
+    protected static class MappedInput extends InputStream {
+        protected static final int REGION_SHIFT = 30;
+        protected static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+
+        private final MappedByteBuffer[] regions;
+        private final long size;
+        private long position;
+
+        public MappedInput(FileChannel channel) throws IOException {
+            this.size = channel.size();
+
+            int count = (int) ((size + REGION_MASK) >>> REGION_SHIFT);
+            this.regions = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << REGION_SHIFT;
+                long length = Math.min(size - start, REGION_MASK + 1);
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        length);
+            }
+        }
+
+        public int read() {
+            if (position >= size) {
+                return -1;
+            }
+
+            int value = get(position) & 0xff;
+            position += 1;
+
+            return value;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (position >= size) {
+                return (len == 0) ? 0 : -1;
+            }
+
+            int n = (int) Math.min(len, size - position);
+            get(position, b, off, n);
+            position += n;
+
+            return n;
+        }
+
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, size - position));
+            position += skipped;
+
+            return skipped;
+        }
+
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, size - position);
+        }
+
+        public byte get(long pos) {
+            return regions[(int) (pos >>> REGION_SHIFT)]
+                    .get((int) (pos & REGION_MASK));
+        }
+
+        public void get(long pos, byte[] b) {
+            get(pos, b, 0, b.length);
+        }
+
+        public void get(long pos, byte[] b, int off, int len) {
+            while (len > 0) {
+                MappedByteBuffer region = regions[(int) (pos >>> REGION_SHIFT)];
+                int start = (int) (pos & REGION_MASK);
+                int n = Math.min(len, region.limit() - start);
+
+                region.position(start);
+                region.get(b, off, n);
+
+                pos += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        public void seek(long position) {
+            this.position = position;
+        }
+
+        public long tell() {
+            return this.position;
+        }
+
+        public long remaining() {
+            return size - position;
+        }
+
+        public long size() {
+            return this.size;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+
+import com.g414.avro.process.ProcessingException;
+
+/**
+ * Reads data files using a pool of worker threads. The calling thread splits
+ * the input into blocks at the sync markers and hands each block to a worker,
+ * which decodes all of its records; records are then returned either in file
+ * order or in the order that blocks finish decoding.
+ *
+ * Since records are decoded ahead of time, the reuse parameter of next() is
+ * ignored and each record is a new instance.
+ */
+public class ParallelDataReader<D> implements DataReader<D> {
+    /** number of blocks kept in flight per worker thread */
+    protected static final int BLOCKS_PER_THREAD = 2;
+
+    /** input schema */
+    protected final Schema schema;
+
+    /** source of blocks */
+    protected final BlockScanner scanner;
+
+    /** worker pool */
+    protected final ExecutorService executor;
+
+    /** completion service, used when records are returned out of order */
+    protected final CompletionService<DecodedBlock<D>> completion;
+
+    /** blocks in flight, in file order (only used when ordered) */
+    protected final LinkedList<Future<DecodedBlock<D>>> pending = new LinkedList<Future<DecodedBlock<D>>>();
+
+    /** whether records are returned in file order */
+    protected final boolean ordered;
+
+    /** maximum number of blocks in flight */
+    protected final int maxPending;
+
+    /** number of blocks in flight */
+    protected int pendingCount;
+
+    /** whether the scanner is exhausted */
+    protected boolean eof;
+
+    /** block currently being returned */
+    protected DecodedBlock<D> current;
+
+    /** index of the next record in the current block */
+    protected int index;
+
+    protected long lastPos = 0;
+
+    /**
+     * Construct a reader for a file that decodes using one worker thread per
+     * available processor.
+     */
+    public ParallelDataReader(Schema schema, InputStream in, boolean ordered)
+            throws ProcessingException {
+        this(schema, in, Runtime.getRuntime().availableProcessors(), ordered);
+    }
+
+    /**
+     * Construct a reader for a file that decodes using the specified number of
+     * worker threads, returning records in file order if ordered is true.
+     */
+    public ParallelDataReader(Schema schema, InputStream in, int threads,
+            boolean ordered) throws ProcessingException {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                    "threads must be positive: got " + threads);
+        }
+
+        this.schema = schema;
+        this.scanner = new BlockScanner(in);
+        this.ordered = ordered;
+        this.maxPending = threads * BLOCKS_PER_THREAD;
+        this.executor = Executors.newFixedThreadPool(threads,
+                new DecoderThreadFactory());
+        this.completion = new ExecutorCompletionService<DecodedBlock<D>>(
+                executor);
+    }
+
+    /** Return the next datum in the file. */
+    public synchronized D next(D reuse) throws ProcessingException {
+        while (current == null || index == current.size) {
+            current = null;
+            submitBlocks();
+
+            if (pendingCount == 0) {
+                return null;
+            }
+
+            current = take();
+            index = 0;
+        }
+
+        lastPos = current.positions[index];
+        D datum = current.records[index];
+        current.records[index++] = null;
+
+        return datum;
+    }
+
+    /** return the start position of the last record returned */
+    public synchronized long lastPos() {
+        return this.lastPos;
+    }
+
+    /** Close this reader, stopping the worker threads. */
+    public synchronized void close() throws IOException {
+        executor.shutdownNow();
+        scanner.close();
+    }
+
+    /** reads blocks and submits them for decoding until enough are in flight */
+    protected void submitBlocks() throws ProcessingException {
+        while (!eof && pendingCount < maxPending) {
+            DataBlock block = scanner.next();
+            if (block == null) {
+                eof = true;
+                break;
+            }
+
+            Callable<DecodedBlock<D>> task = new DecodeTask(block.copy());
+            if (ordered) {
+                pending.add(executor.submit(task));
+            } else {
+                completion.submit(task);
+            }
+            pendingCount++;
+        }
+    }
+
+    /** waits for the next decoded block */
+    protected DecodedBlock<D> take() throws ProcessingException {
+        try {
+            Future<DecodedBlock<D>> future = ordered ? pending.removeFirst()
+                    : completion.take();
+            pendingCount--;
+
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while reading input",
+                    e);
+        } catch (ExecutionException e) {
+            throw new ProcessingException("Exception while reading input: "
+                    + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /** Records decoded from a single block along with their positions. */
+    protected static class DecodedBlock<D> {
+        protected final D[] records;
+        protected final long[] positions;
+        protected final int size;
+
+        @SuppressWarnings("unchecked")
+        public DecodedBlock(int size) {
+            this.records = (D[]) new Object[size];
+            this.positions = new long[size];
+            this.size = size;
+        }
+    }
+
+    /** Task that decodes all records in a block. */
+    protected class DecodeTask implements Callable<DecodedBlock<D>> {
+        protected final DataBlock block;
+
+        public DecodeTask(DataBlock block) {
+            this.block = block;
+        }
+
+        /** @see Callable#call() */
+        @Override
+        public DecodedBlock<D> call() throws IOException {
+            if (block.getCount() > Integer.MAX_VALUE) {
+                throw new IOException("Block too large: " + block.getCount());
+            }
+
+            DatumReader<D> reader = new GenericDatumReader<D>(schema);
+            BlockInputStream in = new BlockInputStream(block);
+            BinaryDecoder vin = new BinaryDecoder(in);
+
+            DecodedBlock<D> decoded = new DecodedBlock<D>((int) block
+                    .getCount());
+            for (int i = 0; i < decoded.size; i++) {
+                decoded.positions[i] = in.tell();
+                decoded.records[i] = reader.read(null, vin);
+            }
+
+            return decoded;
+        }
+    }
+
+    /** Creates named daemon threads for the worker pool. */
+    protected static class DecoderThreadFactory implements ThreadFactory {
+        protected static final AtomicInteger poolCount = new AtomicInteger();
+        protected final int pool = poolCount.incrementAndGet();
+        protected final AtomicInteger threadCount = new AtomicInteger();
+
+        /** @see ThreadFactory#newThread(Runnable) */
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ParallelDataReader-" + pool + "-"
+                    + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
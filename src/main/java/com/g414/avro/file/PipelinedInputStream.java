@@ -0,0 +1,295 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An InputStream that reads its source in a dedicated thread, ahead of the
+ * consumer, into a bounded ring of reusable buffers. Useful when reading the
+ * source is expensive, as with GZIPInputStream: decompression of the next
+ * buffers then overlaps with the decoding of the current one.
+ *
+ * The time each side spends waiting for the other is tracked, along with the
+ * number of filled buffers waiting to be consumed; a consumer that rarely
+ * stalls and a deep queue indicate that the source keeps up with decoding.
+ * Reading is not thread-safe; there should be a single consumer.
+ */
+public class PipelinedInputStream extends InputStream {
+    /** default number of buffers */
+    public static final int DEFAULT_BUFFERS = 4;
+
+    /** default size of each buffer */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    /** counter for naming reader threads */
+    protected static final AtomicInteger threadCount = new AtomicInteger();
+
+    /** marker placed in the filled queue at end of input */
+    protected static final Chunk EOF = new Chunk(0);
+
+    /** source stream, read by the reader thread */
+    protected final InputStream source;
+
+    /** buffers ready to be filled */
+    protected final BlockingQueue<Chunk> free;
+
+    /** buffers ready to be consumed */
+    protected final BlockingQueue<Chunk> filled;
+
+    /** thread reading the source */
+    protected final Thread thread;
+
+    /** nanoseconds the reader thread waited for a free buffer */
+    protected final AtomicLong producerStallNanos = new AtomicLong();
+
+    /** nanoseconds the consumer waited for a filled buffer */
+    protected long consumerStallNanos;
+
+    /** sum of queue depths seen by the consumer, for the average */
+    protected long depthTotal;
+
+    /** number of buffers taken by the consumer */
+    protected long chunks;
+
+    /** exception thrown while reading the source */
+    protected volatile IOException error;
+
+    /** whether close() has been called */
+    protected volatile boolean closed;
+
+    /** buffer currently being consumed */
+    protected Chunk current;
+
+    /** index of the next byte in the current buffer */
+    protected int pos;
+
+    /** whether the consumer has seen the end of input */
+    protected boolean eof;
+
+    /**
+     * Creates a new instance that reads the source using the default number
+     * and size of buffers.
+     */
+    public PipelinedInputStream(InputStream source) {
+        this(source, DEFAULT_BUFFERS, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new instance that reads the source ahead into the specified
+     * number of buffers of the specified size.
+     */
+    public PipelinedInputStream(InputStream source, int buffers, int bufferSize) {
+        if (buffers < 1 || bufferSize < 1) {
+            throw new IllegalArgumentException(
+                    "buffers and bufferSize must be positive: got " + buffers
+                            + ", " + bufferSize);
+        }
+
+        this.source = source;
+        this.free = new ArrayBlockingQueue<Chunk>(buffers);
+        this.filled = new ArrayBlockingQueue<Chunk>(buffers + 1);
+
+        for (int i = 0; i < buffers; i++) {
+            free.add(new Chunk(bufferSize));
+        }
+
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fillBuffers();
+            }
+        }, "PipelinedInputStream-" + threadCount.incrementAndGet());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** @see InputStream#read() */
+    @Override
+    public int read() throws IOException {
+        if (current == null || pos == current.length) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+
+        return current.data[pos++] & 0xff;
+    }
+
+    /** @see InputStream#read(byte[], int, int) */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (current == null || pos == current.length) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current.data, pos, b, off, n);
+        pos += n;
+
+        return n;
+    }
+
+    /** @see InputStream#available() */
+    @Override
+    public int available() {
+        return (current == null) ? 0 : current.length - pos;
+    }
+
+    /** Stops the reader thread and closes the source. */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        source.close();
+    }
+
+    /** returns the number of filled buffers waiting to be consumed */
+    public int getQueueDepth() {
+        return filled.size();
+    }
+
+    /** returns the average number of filled buffers seen by the consumer */
+    public double getAverageQueueDepth() {
+        return (chunks == 0) ? 0.0 : (double) depthTotal / chunks;
+    }
+
+    /** returns nanoseconds the reader thread waited for the consumer */
+    public long getProducerStallNanos() {
+        return producerStallNanos.get();
+    }
+
+    /** returns nanoseconds the consumer waited for the reader thread */
+    public long getConsumerStallNanos() {
+        return consumerStallNanos;
+    }
+
+    /**
+     * Returns the current buffer to the reader thread and takes the next one;
+     * returns false at end of input.
+     */
+    protected boolean nextChunk() throws IOException {
+        if (current != null) {
+            free.offer(current);
+            current = null;
+        }
+
+        if (eof) {
+            return false;
+        }
+
+        depthTotal += filled.size();
+        chunks += 1;
+
+        Chunk chunk = filled.poll();
+        if (chunk == null) {
+            long start = System.nanoTime();
+            try {
+                chunk = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading input");
+            } finally {
+                consumerStallNanos += System.nanoTime() - start;
+            }
+        }
+
+        if (chunk == EOF) {
+            eof = true;
+            if (error != null) {
+                throw error;
+            }
+
+            return false;
+        }
+
+        current = chunk;
+        pos = 0;
+
+        return true;
+    }
+
+    /** Body of the reader thread. */
+    protected void fillBuffers() {
+        try {
+            boolean done = false;
+
+            while (!done && !closed) {
+                Chunk chunk = free.poll();
+                if (chunk == null) {
+                    long start = System.nanoTime();
+                    chunk = free.take();
+                    producerStallNanos.addAndGet(System.nanoTime() - start);
+                }
+
+                chunk.length = 0;
+                while (chunk.length < chunk.data.length) {
+                    int n = source.read(chunk.data, chunk.length,
+                            chunk.data.length - chunk.length);
+                    if (n < 0) {
+                        done = true;
+                        break;
+                    }
+                    chunk.length += n;
+                }
+
+                if (chunk.length > 0) {
+                    filled.put(chunk);
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException("Error while reading input: "
+                    + e.getMessage());
+            error.initCause(e);
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        filled.offer(EOF);
+    }
+
+    /** A reusable buffer. */
+    protected static class Chunk {
+        protected final byte[] data;
+        protected int length;
+
+        public Chunk(int size) {
+            this.data = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericData.Record;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.Decoder;
+
+import com.g414.avro.process.ProcessingException;
+
+/**
+ * Reads data files block by block like BlockDataReader, decoding records in
+ * two phases. next() decodes only the fields needed to decide whether a record
+ * is of interest (for example, the fields read by a filter) and skips the
+ * rest; complete() then goes back and decodes the remaining fields that are
+ * needed (for example, by a handler). Fields needed by neither phase are never
+ * decoded and are left unchanged in the record.
+ */
+public class ProjectingDataReader implements DataReader<GenericRecord>,
+        InputPosition {
+    protected Schema schema;
+    protected BlockScanner scanner;
+    protected BlockInputStream in;
+    protected Decoder vin;
+
+    /** fields decoded by next() */
+    protected FieldProjection first;
+
+    /** fields decoded by complete() */
+    protected FieldProjection second;
+
+    protected long lastPos = 0;
+    protected long blockCount; // # entries remaining in block
+
+    /**
+     * Construct a reader for a file that decodes the fields in firstFields
+     * when a record is read and the fields in secondFields when it is
+     * completed. A null set of fields means all fields.
+     */
+    public ProjectingDataReader(Schema schema, InputStream sin,
+            Set<String> firstFields, Set<String> secondFields)
+            throws ProcessingException {
+        this(schema, sin, firstFields, secondFields, 0L);
+    }
+
+    /**
+     * Construct a reader for a range of a file that starts at the given
+     * position (see BlockScanner).
+     */
+    public ProjectingDataReader(Schema schema, InputStream sin,
+            Set<String> firstFields, Set<String> secondFields, long position)
+            throws ProcessingException {
+        this.schema = schema;
+        this.scanner = new BlockScanner(sin, position);
+        this.in = new BlockInputStream();
+        this.vin = new BinaryDecoder(in);
+
+        this.first = new FieldProjection(schema, firstFields);
+        this.second = new FieldProjection(schema, remaining(schema,
+                firstFields, secondFields));
+    }
+
+    /**
+     * Return the next record in the file, with only the fields of the first
+     * projection decoded.
+     */
+    public synchronized GenericRecord next(GenericRecord reuse)
+            throws ProcessingException {
+        try {
+            while (blockCount == 0) { // at start of block
+                DataBlock block = scanner.next();
+                if (block == null) {
+                    return null;
+                }
+
+                in.setBlock(block);
+                blockCount = block.getCount();
+            }
+            blockCount--;
+            lastPos = in.tell();
+            in.mark(0);
+
+            GenericRecord record = (reuse != null) ? reuse : new Record(schema);
+            first.read(record, vin);
+
+            return record;
+        } catch (IOException e) {
+            throw new ProcessingException("Exception while reading input: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decodes the fields of the second projection into the given record, which
+     * must be the last record returned by next().
+     */
+    public synchronized void complete(GenericRecord record)
+            throws ProcessingException {
+        if (second.isEmpty()) {
+            return;
+        }
+
+        try {
+            long end = in.tell();
+
+            in.reset(); // to the start of the record, marked by next()
+            second.read(record, vin);
+
+            if (in.tell() != end) {
+                throw new IOException("Record length mismatch");
+            }
+        } catch (IOException e) {
+            throw new ProcessingException("Exception while reading input: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /** returns true if complete() decodes any fields */
+    public boolean isTwoPhase() {
+        return !second.isEmpty();
+    }
+
+    /** return the start position of the last record returned */
+    public synchronized long lastPos() {
+        return this.lastPos;
+    }
+
+    /** @see InputPosition#tell() */
+    public synchronized long tell() {
+        return scanner.tell();
+    }
+
+    /** Close this reader. */
+    public synchronized void close() throws IOException {
+        scanner.close();
+    }
+
+    /** returns the fields of second that are not in first (null is all) */
+    protected static Set<String> remaining(Schema schema, Set<String> first,
+            Set<String> second) {
+        Set<String> fields = new HashSet<String>();
+
+        if (first == null) {
+            return fields;
+        }
+
+        if (second == null) {
+            for (Field field : schema.getFields()) {
+                fields.add(field.name());
+            }
+        } else {
+            fields.addAll(second);
+        }
+        fields.removeAll(first);
+
+        return fields;
+    }
+}
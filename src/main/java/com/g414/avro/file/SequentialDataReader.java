@@ -39,7 +39,8 @@ import com.g414.avro.process.ProcessingException;
  * 
  * @see org.apache.avro.file.DataFileReader
  */
-public class SequentialDataReader<D> implements Tell {
+public class SequentialDataReader<D> implements DataReader<D>,
+        InputPosition {
     protected DatumReader<D> reader;
     protected PositionFilter in;
     protected Decoder vin;
@@ -49,15 +50,40 @@ public class SequentialDataReader<D> implements Tell {
     protected byte[] sync;
     protected byte[] syncBuffer = new byte[DataFileConstants.SYNC_SIZE];
 
+    /** whether end of input at a block boundary ends the data */
+    protected boolean ranged;
+
     /** Construct a reader for a file. */
     public SequentialDataReader(Schema schema, InputStream sin,
             DatumReader<D> reader) throws ProcessingException {
+        this(schema, sin, reader, 0L, false);
+    }
+
+    /**
+     * Construct a reader for a range of a file that starts at the given
+     * position, which must be either 0 (the start of the file) or the position
+     * of a sync marker. The data ends at the footer or at end of input
+     * following a complete block, whichever comes first.
+     */
+    public SequentialDataReader(Schema schema, InputStream sin,
+            DatumReader<D> reader, long position) throws ProcessingException {
+        this(schema, sin, reader, position, true);
+    }
+
+    /** Construct a reader starting at the given position. */
+    protected SequentialDataReader(Schema schema, InputStream sin,
+            DatumReader<D> reader, long position, boolean ranged)
+            throws ProcessingException {
         try {
-            this.in = new PositionFilter(sin);
-            byte[] magic = new byte[4];
-            in.read(magic);
-            if (!Arrays.equals(DataFileConstants.MAGIC, magic))
-                throw new IOException("Not a data file.");
+            this.in = new PositionFilter(sin, position);
+            this.ranged = ranged;
+
+            if (position == 0) {
+                byte[] magic = new byte[4];
+                in.read(magic);
+                if (!Arrays.equals(DataFileConstants.MAGIC, magic))
+                    throw new IOException("Not a data file.");
+            }
 
             this.reader = reader;
             reader.setSchema(schema);
@@ -73,7 +99,9 @@ public class SequentialDataReader<D> implements Tell {
     public synchronized D next(D reuse) throws ProcessingException {
         try {
             while (blockCount == 0) { // at start of block
-                skipSync(); // skip a sync
+                if (!readSync()) { // skip a sync
+                    return null;
+                }
                 blockCount = vin.readLong(); // read blockCount
                 if (blockCount == DataFileConstants.FOOTER_BLOCK) {
                     return null;
@@ -93,14 +121,46 @@ public class SequentialDataReader<D> implements Tell {
         return this.lastPos;
     }
 
+    /** @see InputPosition#tell() */
+    public synchronized long tell() {
+        return in.tell();
+    }
+
     /** Close this reader. */
     public synchronized void close() throws IOException {
         in.close();
     }
 
-    /** skips a synchronization block */
+    /**
+     * Reads a sync marker, returning false if this reader is ranged and the
+     * input ends before it.
+     */
+    protected boolean readSync() throws IOException {
+        if (!ranged) {
+            skipSync();
+            return true;
+        }
+
+        int first = in.read();
+        if (first < 0) {
+            return false;
+        }
+
+        syncBuffer[0] = (byte) first;
+        vin.readFixed(syncBuffer, 1, syncBuffer.length - 1);
+        checkSync();
+
+        return true;
+    }
+
+    /** Reads and checks a sync marker. */
     protected void skipSync() throws IOException {
         vin.readFixed(syncBuffer);
+        checkSync();
+    }
+
+    /** checks the sync marker in the sync buffer */
+    protected void checkSync() throws IOException {
         if (sync == null) {
             sync = new byte[DataFileConstants.SYNC_SIZE];
             System.arraycopy(syncBuffer, 0, sync, 0, syncBuffer.length);
@@ -117,7 +177,13 @@ public class SequentialDataReader<D> implements Tell {
         private long position;
 
         public PositionFilter(InputStream in) throws IOException {
+            this(in, 0L);
+        }
+
+        public PositionFilter(InputStream in, long position)
+                throws IOException {
             this.in = in;
+            this.position = position;
         }
 
         public int read() throws IOException {
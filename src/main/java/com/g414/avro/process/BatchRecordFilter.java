@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Optional interface for filters that can match a batch of records at once.
+ * A batch is an array of records and a selection vector of indices into it;
+ * filtering narrows the selection. Implementations are not required for
+ * batched processing (see Batches), but avoid a call per record.
+ */
+public interface BatchRecordFilter extends RecordFilter {
+    /**
+     * Matches the records at the first count indices in selection, moving the
+     * indices of the matching records to the front of selection, in their
+     * original order, and returning how many there are.
+     */
+    public int matchBatch(GenericRecord[] records, int[] selection, int count);
+}
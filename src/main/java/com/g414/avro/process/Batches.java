@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+import java.util.Set;
+
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Utility methods for processing batches of records with filters and handlers
+ * that may or may not implement the batch interfaces.
+ */
+public class Batches {
+    /**
+     * Matches a batch of records with the given filter, calling it once per
+     * record unless it implements BatchRecordFilter.
+     * 
+     * @see BatchRecordFilter#matchBatch(GenericRecord[], int[], int)
+     */
+    public static int match(RecordFilter filter, GenericRecord[] records,
+            int[] selection, int count) {
+        if (filter instanceof BatchRecordFilter) {
+            return ((BatchRecordFilter) filter).matchBatch(records, selection,
+                    count);
+        }
+
+        int selected = 0;
+        for (int i = 0; i < count; i++) {
+            int index = selection[i];
+            if (filter.matches(records[index])) {
+                selection[selected++] = index;
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * Processes a batch of records with the given handler, calling it once per
+     * record unless it implements BatchRecordHandler.
+     * 
+     * @see BatchRecordHandler#handleBatch(GenericRecord[], int[], int)
+     */
+    public static void handle(RecordHandler handler, GenericRecord[] records,
+            int[] selection, int count) throws ProcessingException {
+        if (handler instanceof BatchRecordHandler) {
+            ((BatchRecordHandler) handler).handleBatch(records, selection,
+                    count);
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            handler.handle(records[selection[i]]);
+        }
+    }
+
+    /** Returns a BatchRecordFilter view of the given filter. */
+    public static BatchRecordFilter adapt(RecordFilter filter) {
+        if (filter instanceof BatchRecordFilter) {
+            return (BatchRecordFilter) filter;
+        }
+
+        return new FilterAdapter(filter);
+    }
+
+    /** Returns a BatchRecordHandler view of the given handler. */
+    public static BatchRecordHandler adapt(RecordHandler handler) {
+        if (handler instanceof BatchRecordHandler) {
+            return (BatchRecordHandler) handler;
+        }
+
+        return new HandlerAdapter(handler);
+    }
+
+    /** Adapts a per-record filter to the batch interface. */
+    protected static class FilterAdapter implements BatchRecordFilter,
+            FieldUsage {
+        protected final RecordFilter filter;
+
+        public FilterAdapter(RecordFilter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean matches(GenericRecord record) {
+            return filter.matches(record);
+        }
+
+        @Override
+        public int matchBatch(GenericRecord[] records, int[] selection,
+                int count) {
+            return Batches.match(filter, records, selection, count);
+        }
+
+        @Override
+        public Set<String> getFieldsRead() {
+            return FieldUsages.of(filter);
+        }
+    }
+
+    /** Adapts a per-record handler to the batch interface. */
+    protected static class HandlerAdapter implements BatchRecordHandler,
+            FieldUsage, RecordRetention {
+        protected final RecordHandler handler;
+
+        public HandlerAdapter(RecordHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void start() {
+            handler.start();
+        }
+
+        @Override
+        public void handle(GenericRecord record) throws ProcessingException {
+            handler.handle(record);
+        }
+
+        @Override
+        public void handleBatch(GenericRecord[] records, int[] selection,
+                int count) throws ProcessingException {
+            Batches.handle(handler, records, selection, count);
+        }
+
+        @Override
+        public void finish() {
+            handler.finish();
+        }
+
+        @Override
+        public Set<String> getFieldsRead() {
+            return FieldUsages.of(handler);
+        }
+
+        @Override
+        public boolean retainsRecords() {
+            return RecordRetentions.retains(handler);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+import java.util.Set;
+
+/**
+ * Optional interface for filters and handlers that only read some of the
+ * fields of the records they are given. When both the filter and the handler
+ * of a RecordProcessor declare their fields, the processor may avoid decoding
+ * the other fields entirely.
+ */
+public interface FieldUsage {
+    /**
+     * Returns the names of the fields read by this instance, or null if any
+     * field may be read.
+     */
+    public Set<String> getFieldsRead();
+}
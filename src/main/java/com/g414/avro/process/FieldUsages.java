@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Utility methods for working with FieldUsage declarations.
+ */
+public class FieldUsages {
+    /**
+     * Returns the fields read by the given filter or handler: the empty set if
+     * it is null, the declared fields if it implements FieldUsage, and null
+     * (meaning any field may be read) otherwise.
+     */
+    public static Set<String> of(Object instance) {
+        if (instance == null) {
+            return Collections.emptySet();
+        }
+
+        if (instance instanceof FieldUsage) {
+            return ((FieldUsage) instance).getFieldsRead();
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the union of the fields read by the given filters or handlers,
+     * or null if any of them may read any field.
+     */
+    public static Set<String> union(Collection<?> instances) {
+        Set<String> fields = new HashSet<String>();
+
+        for (Object instance : instances) {
+            Set<String> used = of(instance);
+            if (used == null) {
+                return null;
+            }
+            fields.addAll(used);
+        }
+
+        return Collections.unmodifiableSet(fields);
+    }
+
+    /**
+     * Returns the union of the given field sets, or null if either is null.
+     */
+    public static Set<String> union(Set<String> a, Set<String> b) {
+        if (a == null || b == null) {
+            return null;
+        }
+
+        Set<String> fields = new HashSet<String>(a);
+        fields.addAll(b);
+
+        return Collections.unmodifiableSet(fields);
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+/**
+ * Interface for RecordHandlers whose results can be combined with those of
+ * another instance of the same kind. Used to merge the partial results of
+ * handlers that processed disjoint sets of records in separate threads.
+ */
+public interface MergeableHandler extends RecordHandler {
+    /**
+     * Adds the results of the specified handler, which must be of the same
+     * kind as this instance, to the results of this instance.
+     */
+    public void merge(RecordHandler other);
+}
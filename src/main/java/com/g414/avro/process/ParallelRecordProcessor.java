@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+
+import com.g414.avro.file.BlockGzipIndex;
+
+/**
+ * A RecordProcessor that processes files concurrently using a pool of worker
+ * threads. Each worker processes whole files using its own handler instance
+ * obtained from a factory; once all files are processed, the partial results
+ * of the workers are merged into the handler given to the constructor. The
+ * filter is shared by all workers and must be thread-safe.
+ * 
+ * Block-gzip files (see BlockGzipIndex) are divided into splits that are
+ * processed concurrently, so that a single large file can use all workers.
+ */
+public class ParallelRecordProcessor<D extends GenericRecord> extends
+        RecordProcessor<D> {
+    /** factory for per-worker handlers */
+    protected final RecordHandlerFactory factory;
+
+    /** maximum number of worker threads */
+    protected final int threads;
+
+    /**
+     * Constructs a new instance that uses one worker thread per available
+     * processor.
+     */
+    public ParallelRecordProcessor(Schema schema, RecordFilter filter,
+            MergeableHandler handler, RecordHandlerFactory factory) {
+        this(schema, filter, handler, factory, Runtime.getRuntime()
+                .availableProcessors());
+    }
+
+    /**
+     * Constructs a new instance that uses the specified schema and filter,
+     * processing files in up to the specified number of threads using handlers
+     * from the given factory, and merging the results into the given handler.
+     */
+    public ParallelRecordProcessor(Schema schema, RecordFilter filter,
+            MergeableHandler handler, RecordHandlerFactory factory, int threads) {
+        super(schema, filter, handler);
+
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                    "threads must be positive: got " + threads);
+        }
+
+        this.factory = factory;
+        this.threads = threads;
+    }
+
+    /**
+     * Processes all records in the specified files (concurrently).
+     */
+    @Override
+    public void processFiles(List<String> files) throws ProcessingException {
+        startProgress(files);
+        try {
+            processUnits(files);
+        } finally {
+            finishProgress();
+        }
+    }
+
+    /** Implements processFiles(), processing units of work concurrently. */
+    protected void processUnits(List<String> files)
+            throws ProcessingException {
+        final Queue<WorkUnit> queue;
+        try {
+            queue = new ConcurrentLinkedQueue<WorkUnit>(split(files));
+        } catch (IOException e) {
+            throw new ProcessingException("Error while processing files: "
+                    + e.getMessage(), e);
+        }
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        int workers = Math.max(1, Math.min(threads, queue.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<RecordHandler>> futures = new ArrayList<Future<RecordHandler>>();
+
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(new Callable<RecordHandler>() {
+                @Override
+                public RecordHandler call() throws Exception {
+                    RecordHandler partial = factory.create();
+                    partial.start();
+
+                    boolean completed = false;
+                    try {
+                        WorkUnit unit;
+                        while (!failed.get() && (unit = queue.poll()) != null) {
+                            if (unit.split == null) {
+                                processFile(unit.fname, partial);
+                            } else {
+                                processSplit(unit.fname, unit.index,
+                                        unit.split, partial);
+                            }
+                        }
+                        completed = true;
+                    } finally {
+                        if (!completed) {
+                            // release the handler's resources on failure
+                            try {
+                                partial.finish();
+                            } catch (RuntimeException e) {
+                                // the exception that stopped processing is
+                                // rethrown
+                            }
+                        }
+                    }
+
+                    partial.finish();
+
+                    return partial;
+                }
+            }));
+        }
+        executor.shutdown();
+
+        List<RecordHandler> partials = new ArrayList<RecordHandler>();
+        try {
+            for (Future<RecordHandler> future : futures) {
+                partials.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            failed.set(true);
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while processing files",
+                    e);
+        } catch (ExecutionException e) {
+            failed.set(true);
+            executor.shutdownNow();
+
+            Throwable cause = e.getCause();
+            if (cause instanceof ProcessingException) {
+                throw (ProcessingException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw new ProcessingException("Error while processing files: "
+                        + cause.getMessage(), cause);
+            }
+            throw new ProcessingException(cause);
+        }
+
+        handler.start();
+        for (RecordHandler partial : partials) {
+            ((MergeableHandler) handler).merge(partial);
+        }
+        handler.finish();
+    }
+
+    /**
+     * Divides the given files into units of work: block-gzip files with an
+     * index are divided into one split per thread, other files are processed
+     * whole.
+     */
+    protected List<WorkUnit> split(List<String> files) throws IOException {
+        List<WorkUnit> units = new ArrayList<WorkUnit>();
+
+        for (String fname : files) {
+            BlockGzipIndex index = null;
+            if (fname.endsWith(".gz")) {
+                index = BlockGzipIndex.forFile(new File(fname));
+            }
+
+            if (index == null) {
+                units.add(new WorkUnit(fname, null, null));
+                continue;
+            }
+
+            for (BlockGzipIndex.Split split : index.getSplits(threads)) {
+                units.add(new WorkUnit(fname, index, split));
+            }
+        }
+
+        return units;
+    }
+
+    /** A whole file, or a split of a block-gzip file. */
+    protected static class WorkUnit {
+        protected final String fname;
+        protected final BlockGzipIndex index;
+        protected final BlockGzipIndex.Split split;
+
+        public WorkUnit(String fname, BlockGzipIndex index,
+                BlockGzipIndex.Split split) {
+            this.fname = fname;
+            this.index = index;
+            this.split = split;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericData.Record;
+
+import com.g414.avro.file.DataReader;
+import com.g414.avro.file.ProjectingDataReader;
+import com.g414.avro.process.metrics.ReaderMetrics;
+
+/**
+ * A RecordProcessor that decodes records in one thread and filters and
+ * handles them in others, so that slow reading and slow handling overlap
+ * rather than stall each other. The calling thread decodes records into a
+ * RecordRing of pre-allocated records, waiting while the ring is full;
+ * consumer threads take records from the ring and run them through the
+ * filter and handler. The filter and handler are shared by all consumers, so
+ * with more than one consumer they must be thread-safe, and records are not
+ * handled in order.
+ */
+public class PipelinedRecordProcessor<D extends GenericRecord> extends
+        RecordProcessor<D> {
+    /** default number of records in the ring */
+    public static final int DEFAULT_RING_SIZE = 1024;
+
+    /** number of consumer threads */
+    protected int consumers = 1;
+
+    /** number of records in the ring */
+    protected int ringSize = DEFAULT_RING_SIZE;
+
+    /** how threads wait for the ring */
+    protected WaitStrategy waitStrategy = WaitStrategy.YIELD;
+
+    /** number of times the reader found the ring full */
+    protected final AtomicLong producerWaits = new AtomicLong();
+
+    /** number of times a consumer found the ring empty */
+    protected final AtomicLong consumerWaits = new AtomicLong();
+
+    /**
+     * Constructs a new instance that uses the specified schema, filter, and
+     * handler to process records.
+     */
+    public PipelinedRecordProcessor(Schema schema, RecordFilter filter,
+            RecordHandler handler) {
+        super(schema, filter, handler);
+    }
+
+    /** Sets the number of consumer threads (1 by default). */
+    public void setConsumers(int consumers) {
+        if (consumers < 1) {
+            throw new IllegalArgumentException(
+                    "consumers must be positive: got " + consumers);
+        }
+
+        this.consumers = consumers;
+    }
+
+    /**
+     * Sets the number of records in the ring, which must be a power of two;
+     * the reader waits when this many records are in flight.
+     */
+    public void setRingSize(int ringSize) {
+        if (ringSize < 1 || (ringSize & (ringSize - 1)) != 0) {
+            throw new IllegalArgumentException(
+                    "ringSize must be a power of two: got " + ringSize);
+        }
+
+        this.ringSize = ringSize;
+    }
+
+    /** Sets how threads wait for the ring (YIELD by default). */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /** returns the number of times the reader found the ring full */
+    public long getProducerWaits() {
+        return producerWaits.get();
+    }
+
+    /** returns the number of times a consumer found the ring empty */
+    public long getConsumerWaits() {
+        return consumerWaits.get();
+    }
+
+    /** @see RecordProcessor#decodesSinglePhase() */
+    @Override
+    protected boolean decodesSinglePhase() {
+        return true;
+    }
+
+    /**
+     * Implements processing the records in a given reader using the given
+     * handler, decoding in the calling thread and handling in consumer
+     * threads.
+     */
+    @Override
+    protected void processImpl(DataReader<GenericRecord> reader,
+            RecordHandler handler) throws ProcessingException {
+        ProjectingDataReader projecting = null;
+        if (reader instanceof ProjectingDataReader
+                && ((ProjectingDataReader) reader).isTwoPhase()) {
+            projecting = (ProjectingDataReader) reader;
+        }
+
+        final RecordRing ring = new RecordRing(schema, ringSize);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final boolean reuse = reuseRecords
+                && !RecordRetentions.retains(handler);
+
+        ReaderMetrics readerMetrics = null;
+        final RecordFilter theFilter;
+        final RecordHandler theHandler;
+        if (metrics != null) {
+            readerMetrics = new ReaderMetrics(metrics, reader);
+            theFilter = metrics.timed("filter", filter);
+            theHandler = metrics.timed("handler", handler);
+        } else {
+            theFilter = filter;
+            theHandler = handler;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(consumers);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        for (int i = 0; i < consumers; i++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    try {
+                        consume(ring, theFilter, theHandler, reuse, done,
+                                failed);
+                    } catch (Exception e) {
+                        failed.set(true);
+                        throw e;
+                    }
+
+                    return null;
+                }
+            }));
+        }
+        executor.shutdown();
+
+        ProgressTracker.Counter counter = newCounter();
+        long waits = 0;
+        try {
+            long sequence = 0;
+
+            produce: while (true) {
+                int attempt = 0;
+                while (!ring.isWritable(sequence)) {
+                    if (failed.get()) {
+                        break produce;
+                    }
+                    waitStrategy.idle(attempt++);
+                }
+                if (attempt > 0) {
+                    waits++;
+                }
+
+                GenericRecord record = next(reader, ring.get(sequence),
+                        readerMetrics);
+                if (record == null) {
+                    break;
+                }
+                // the reader may return another record than the one given
+                ring.replace(sequence, record);
+                if (counter != null) {
+                    counter.increment();
+                }
+                if (projecting != null) {
+                    // consumers cannot go back to the input
+                    projecting.complete(record);
+                }
+
+                ring.publish(sequence++);
+            }
+        } catch (ProcessingException e) {
+            failed.set(true);
+            executor.shutdownNow();
+            throw e;
+        } finally {
+            done.set(true);
+            producerWaits.addAndGet(waits);
+
+            if (readerMetrics != null) {
+                readerMetrics.flush();
+            }
+            if (counter != null) {
+                counter.flush();
+            }
+        }
+
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            failed.set(true);
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new ProcessingException(
+                    "Interrupted while processing records", e);
+        } catch (ExecutionException e) {
+            failed.set(true);
+            executor.shutdownNow();
+
+            Throwable cause = e.getCause();
+            if (cause instanceof ProcessingException) {
+                throw (ProcessingException) cause;
+            }
+            throw new ProcessingException(cause);
+        }
+    }
+
+    /**
+     * Body of a consumer thread: filters and handles records from the ring
+     * until the reader is done and the ring is empty, or processing fails.
+     */
+    protected void consume(RecordRing ring, RecordFilter filter,
+            RecordHandler handler, boolean reuse, AtomicBoolean done,
+            AtomicBoolean failed) throws ProcessingException {
+        long waits = 0;
+        long matched = 0;
+        int attempt = 0;
+
+        try {
+            while (!failed.get()) {
+                long sequence = ring.tryClaim();
+                if (sequence < 0) {
+                    if (done.get()) {
+                        // the reader may have published before finishing
+                        sequence = ring.tryClaim();
+                        if (sequence < 0) {
+                            break;
+                        }
+                    } else {
+                        if (attempt == 0) {
+                            waits++;
+                        }
+                        waitStrategy.idle(attempt++);
+                        continue;
+                    }
+                }
+                attempt = 0;
+
+                GenericRecord record = ring.get(sequence);
+                if (handler != null
+                        && (filter == null || filter.matches(record))) {
+                    matched++;
+                    handler.handle(record);
+                    if (!reuse) {
+                        ring.replace(sequence, new Record(schema));
+                    }
+                }
+
+                ring.release(sequence);
+            }
+        } finally {
+            consumerWaits.addAndGet(waits);
+
+            if (metrics != null) {
+                metrics.addRecordsMatched(matched);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+/**
+ * A snapshot of the progress of processing a list of files, delivered to a
+ * ProgressListener. Byte counts are of the files as stored (compressed, for
+ * ".gz" files), so that they may be compared with file sizes. Immutable.
+ */
+public class ProgressEvent {
+    /** index of the file most recently started or finished */
+    protected final int fileIndex;
+
+    /** number of files being processed */
+    protected final int fileCount;
+
+    /** name of the file at fileIndex */
+    protected final String fileName;
+
+    /** bytes of the file at fileIndex consumed so far */
+    protected final long fileBytesConsumed;
+
+    /** size of the file at fileIndex */
+    protected final long fileSize;
+
+    /** whether the file at fileIndex has been processed completely */
+    protected final boolean fileFinished;
+
+    /** bytes of all files consumed so far */
+    protected final long bytesConsumed;
+
+    /** total size of all files */
+    protected final long totalBytes;
+
+    /** records read so far */
+    protected final long recordsRead;
+
+    /** nanoseconds since processing started */
+    protected final long elapsedNanos;
+
+    /** Constructs a new instance with the given values. */
+    public ProgressEvent(int fileIndex, int fileCount, String fileName,
+            long fileBytesConsumed, long fileSize, boolean fileFinished,
+            long bytesConsumed, long totalBytes, long recordsRead,
+            long elapsedNanos) {
+        this.fileIndex = fileIndex;
+        this.fileCount = fileCount;
+        this.fileName = fileName;
+        this.fileBytesConsumed = fileBytesConsumed;
+        this.fileSize = fileSize;
+        this.fileFinished = fileFinished;
+        this.bytesConsumed = bytesConsumed;
+        this.totalBytes = totalBytes;
+        this.recordsRead = recordsRead;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /** returns the index of the file most recently started or finished */
+    public int getFileIndex() {
+        return fileIndex;
+    }
+
+    /** returns the number of files being processed */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /** returns the name of the file at getFileIndex() */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /** returns the bytes of the file at getFileIndex() consumed so far */
+    public long getFileBytesConsumed() {
+        return fileBytesConsumed;
+    }
+
+    /** returns the size of the file at getFileIndex() */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /** returns true if the file at getFileIndex() has been processed */
+    public boolean isFileFinished() {
+        return fileFinished;
+    }
+
+    /** returns the bytes of all files consumed so far */
+    public long getBytesConsumed() {
+        return bytesConsumed;
+    }
+
+    /** returns the total size of all files */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /** returns the number of records read so far */
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    /** returns the nanoseconds since processing started */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /** returns the average number of records read per second */
+    public double getRecordsPerSecond() {
+        return (elapsedNanos == 0) ? 0.0 : recordsRead * 1e9 / elapsedNanos;
+    }
+
+    /** returns the average number of megabytes (2^20) consumed per second */
+    public double getMegabytesPerSecond() {
+        return (elapsedNanos == 0) ? 0.0 : bytesConsumed * 1e9
+                / elapsedNanos / (1024 * 1024);
+    }
+
+    /**
+     * returns the estimated number of seconds until all files are processed,
+     * at the average rate so far, or -1 if nothing has been consumed yet
+     */
+    public double getEstimatedSecondsRemaining() {
+        if (bytesConsumed == 0) {
+            return -1.0;
+        }
+
+        return (totalBytes - bytesConsumed) * (elapsedNanos / 1e9)
+                / bytesConsumed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("file %d/%d %s: %d/%d bytes%s; total %d/%d "
+                + "bytes, %d records, %.0f records/s, %.1f MB/s, %.0fs left",
+                fileIndex + 1, fileCount, fileName, fileBytesConsumed,
+                fileSize, fileFinished ? " (done)" : "", bytesConsumed,
+                totalBytes, recordsRead, getRecordsPerSecond(),
+                getMegabytesPerSecond(), getEstimatedSecondsRemaining());
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks the progress of processing a list of files for a ProgressListener:
+ * bytes are counted as the files are read (see track()), and records are
+ * counted by the processing loops in groups of RECORD_GRANULARITY, so that
+ * the cost per record is a local increment. A report is delivered when a
+ * group of records brings the time or the number of records since the last
+ * report past its interval, and whenever a file is finished. Thread-safe.
+ */
+public class ProgressTracker {
+    /** number of records counted locally before being added */
+    public static final int RECORD_GRANULARITY = 1024;
+
+    /** number of bytes counted locally before being added */
+    protected static final int BYTE_GRANULARITY = 64 * 1024;
+
+    /** the listener */
+    protected final ProgressListener listener;
+
+    /** names of the files */
+    protected final List<String> files;
+
+    /** sizes of the files */
+    protected final long[] sizes;
+
+    /** total size of the files */
+    protected final long totalBytes;
+
+    /** bytes consumed per file */
+    protected final AtomicLongArray consumed;
+
+    /** records read */
+    protected final AtomicLong records = new AtomicLong();
+
+    /** time processing started */
+    protected final long startNanos = System.nanoTime();
+
+    /** minimum nanoseconds between reports */
+    protected final long intervalNanos;
+
+    /** minimum records between reports */
+    protected final long intervalRecords;
+
+    /** time after which the next report is due */
+    protected volatile long nextReportNanos;
+
+    /** record count after which the next report is due */
+    protected volatile long nextReportRecords;
+
+    /** index of the file most recently started or finished */
+    protected volatile int currentFile;
+
+    /** held while reporting */
+    protected final ReentrantLock reportLock = new ReentrantLock();
+
+    /**
+     * Constructs a new instance for the given files, reporting to the given
+     * listener at most every intervalMillis milliseconds or intervalRecords
+     * records, whichever comes first (either may be Long.MAX_VALUE).
+     */
+    public ProgressTracker(ProgressListener listener, List<String> files,
+            long intervalMillis, long intervalRecords) {
+        this.listener = listener;
+        this.files = files;
+        this.sizes = new long[files.size()];
+        this.consumed = new AtomicLongArray(files.size());
+
+        long total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = new File(files.get(i)).length();
+            total += sizes[i];
+        }
+        this.totalBytes = total;
+
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.intervalRecords = intervalRecords;
+        this.nextReportNanos = add(startNanos, intervalNanos);
+        this.nextReportRecords = intervalRecords;
+    }
+
+    /**
+     * Returns a stream that counts the bytes read from the given input, the
+     * stored contents of the named file.
+     */
+    public InputStream track(String fname, InputStream input) {
+        int index = files.indexOf(fname);
+        if (index < 0) {
+            return input;
+        }
+
+        currentFile = index;
+
+        return new CountingInputStream(input, index);
+    }
+
+    /** Adds bytes consumed from the named file, counted by the caller. */
+    public void bytesConsumed(String fname, long count) {
+        int index = files.indexOf(fname);
+        if (index >= 0) {
+            consumed.addAndGet(index, count);
+        }
+    }
+
+    /** returns a new counter of records, for use by a single thread */
+    public Counter newCounter() {
+        return new Counter();
+    }
+
+    /** Adds records read, reporting if due. */
+    public void recordsRead(long count) {
+        long total = records.addAndGet(count);
+
+        if (total >= nextReportRecords
+                || System.nanoTime() >= nextReportNanos) {
+            report(false);
+        }
+    }
+
+    /**
+     * Marks the named file as finished, if all its bytes are accounted for
+     * or whole is set (the caller processed the whole file), and reports.
+     */
+    public void fileFinished(String fname, boolean whole) {
+        int index = files.indexOf(fname);
+        if (index < 0) {
+            return;
+        }
+
+        if (whole) {
+            consumed.set(index, sizes[index]);
+        }
+        currentFile = index;
+
+        report(true);
+    }
+
+    /** Reports the final progress. */
+    public void finish() {
+        report(true);
+    }
+
+    /**
+     * Delivers a report to the listener; unless forced, skips it if another
+     * thread is reporting.
+     */
+    protected void report(boolean force) {
+        if (force) {
+            reportLock.lock();
+        } else if (!reportLock.tryLock()) {
+            return;
+        }
+
+        try {
+            long now = System.nanoTime();
+            long total = records.get();
+            nextReportNanos = add(now, intervalNanos);
+            nextReportRecords = add(total, intervalRecords);
+
+            long bytes = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                bytes += consumed.get(i);
+            }
+
+            int index = currentFile;
+            String fname = (index < files.size()) ? files.get(index) : null;
+            long fileBytes = (index < sizes.length) ? consumed.get(index) : 0;
+            long fileSize = (index < sizes.length) ? sizes[index] : 0;
+
+            listener.progress(new ProgressEvent(index, files.size(), fname,
+                    fileBytes, fileSize, fileBytes >= fileSize, bytes,
+                    totalBytes, total, now - startNanos));
+        } finally {
+            reportLock.unlock();
+        }
+    }
+
+    /** returns a + b, or Long.MAX_VALUE on overflow */
+    protected static long add(long a, long b) {
+        long sum = a + b;
+
+        return (sum < a) ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * Counts records read by one thread, adding them to the tracker every
+     * RECORD_GRANULARITY records and on flush(). Not thread-safe.
+     */
+    public class Counter {
+        protected int count;
+
+        /** Counts a record. */
+        public void increment() {
+            if (++count == RECORD_GRANULARITY) {
+                flush();
+            }
+        }
+
+        /** Counts the given number of records. */
+        public void add(int records) {
+            count += records;
+            if (count >= RECORD_GRANULARITY) {
+                flush();
+            }
+        }
+
+        /** Adds the records counted so far to the tracker. */
+        public void flush() {
+            if (count > 0) {
+                recordsRead(count);
+                count = 0;
+            }
+        }
+    }
+
+    /** Counts the bytes read from a file. */
+    protected class CountingInputStream extends FilterInputStream {
+        protected final int index;
+        protected long pending;
+
+        public CountingInputStream(InputStream in, int index) {
+            super(in);
+            this.index = index;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = in.read();
+            if (value >= 0) {
+                count(1);
+            }
+
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count(skipped);
+
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            consumed.addAndGet(index, pending);
+            pending = 0;
+            in.close();
+        }
+
+        /** counts bytes, adding them every BYTE_GRANULARITY */
+        protected void count(long n) {
+            pending += n;
+            if (pending >= BYTE_GRANULARITY) {
+                consumed.addAndGet(index, pending);
+                pending = 0;
+            }
+        }
+    }
+}
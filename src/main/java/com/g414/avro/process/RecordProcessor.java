@@ -17,10 +17,14 @@
  */
 package com.g414.avro.process;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.avro.Schema;
@@ -28,7 +32,16 @@ import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.generic.GenericData.Record;
 
+import com.g414.avro.file.BlockDataReader;
+import com.g414.avro.file.BlockGzipIndex;
+import com.g414.avro.file.DataReader;
+import com.g414.avro.file.ParallelDataReader;
+import com.g414.avro.file.PipelinedInputStream;
+import com.g414.avro.file.ProjectingDataReader;
 import com.g414.avro.file.SequentialDataReader;
+import com.g414.avro.process.filter.FilterCompiler;
+import com.g414.avro.process.metrics.ProcessingMetrics;
+import com.g414.avro.process.metrics.ReaderMetrics;
 
 /**
  * A driver class that processes records through a set of handlers and filters.
@@ -45,65 +58,578 @@ public class RecordProcessor<D extends GenericRecord> {
     /** record filter instance */
     protected final RecordFilter filter;
 
+    /** whether processFiles() uses block-buffered decoding */
+    protected boolean blockBuffered = false;
+
+    /** whether processFiles() decodes only the fields that are used */
+    protected boolean projected = true;
+
+    /** whether records are reused when the handler does not retain them */
+    protected boolean reuseRecords = false;
+
+    /** number of records decoded per batch, or 1 to process one at a time */
+    protected int batchSize = 1;
+
+    /** number of threads decoding each file, or 0 to decode in this one */
+    protected int decodeThreads = 0;
+
+    /** number of buffers for pipelined decompression, or 0 to disable */
+    protected int inflateBuffers = PipelinedInputStream.DEFAULT_BUFFERS;
+
+    /** metrics to record, or null */
+    protected ProcessingMetrics metrics;
+
+    /** listener for progress reports, or null */
+    protected ProgressListener progressListener;
+
+    /** minimum milliseconds between progress reports */
+    protected long progressIntervalMillis;
+
+    /** minimum records between progress reports */
+    protected long progressIntervalRecords;
+
+    /** progress of the current processFiles() call, or null */
+    protected volatile ProgressTracker progress;
+
+    /** total nanoseconds decompression waited for decoding */
+    protected final AtomicLong inflateStallNanos = new AtomicLong();
+
+    /** total nanoseconds decoding waited for decompression */
+    protected final AtomicLong decodeStallNanos = new AtomicLong();
+
     /**
      * Constructs a new instance that uses the specified schema, filter, and
-     * handler to process records.
+     * handler to process records. The filter is compiled for the schema (see
+     * FilterCompiler).
      */
     public RecordProcessor(Schema schema, RecordFilter filter,
             RecordHandler handler) {
         this.schema = schema;
-        this.filter = filter;
+        this.filter = (filter != null && schema != null) ? FilterCompiler
+                .compile(filter, schema) : filter;
         this.handler = handler;
     }
 
+    /**
+     * Sets whether processFiles() reads each block into memory before decoding
+     * its records (see BlockDataReader) rather than decoding from the stream.
+     */
+    public void setBlockBuffered(boolean blockBuffered) {
+        this.blockBuffered = blockBuffered;
+    }
+
+    /**
+     * Sets whether processFiles() decodes only the fields declared by the
+     * filter and handler (see FieldUsage), decoding the fields used by the
+     * handler only for records that match the filter. Enabled by default; has
+     * no effect unless the filter or the handler declares its fields.
+     */
+    public void setProjected(boolean projected) {
+        this.projected = projected;
+    }
+
+    /**
+     * Sets whether every record is decoded into the same instance, including
+     * its nested strings and arrays, rather than allocating a new record for
+     * each record that is handled. Only takes effect when the handler declares
+     * that it does not retain records (see RecordRetention).
+     */
+    public void setReuseRecords(boolean reuseRecords) {
+        this.reuseRecords = reuseRecords;
+    }
+
+    /**
+     * Sets the number of records that are decoded before being filtered and
+     * handled together (see BatchRecordFilter and BatchRecordHandler). A batch
+     * size of 1 (the default) processes records one at a time. When batching,
+     * records are decoded in a single phase, with the fields of both the filter
+     * and the handler.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "batchSize must be positive: got " + batchSize);
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the number of worker threads with which processFiles() decodes
+     * the blocks of each whole file, returning records in file order (see
+     * ParallelDataReader); all fields are decoded, since projection is not
+     * supported. Zero (the default) decodes in the processing thread.
+     */
+    public void setDecodeThreads(int decodeThreads) {
+        if (decodeThreads < 0) {
+            throw new IllegalArgumentException(
+                    "decodeThreads must not be negative: got "
+                            + decodeThreads);
+        }
+
+        this.decodeThreads = decodeThreads;
+    }
+
+    /**
+     * Sets the number of buffers used to decompress ".gz" files in a separate
+     * thread, overlapping decompression with decoding (see
+     * PipelinedInputStream). Zero decompresses in the processing thread.
+     */
+    public void setInflateBuffers(int inflateBuffers) {
+        if (inflateBuffers < 0) {
+            throw new IllegalArgumentException(
+                    "inflateBuffers must not be negative: got "
+                            + inflateBuffers);
+        }
+
+        this.inflateBuffers = inflateBuffers;
+    }
+
+    /**
+     * Sets the metrics in which to record the records read and matched, the
+     * bytes read, and the time spent decoding, filtering and handling (see
+     * ProcessingMetrics), or null (the default) to record none.
+     */
+    public void setMetrics(ProcessingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** returns the metrics being recorded, or null */
+    public ProcessingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the listener to which processFiles() reports its progress every
+     * intervalMillis milliseconds or intervalRecords records, whichever comes
+     * first, and when each file is finished (see ProgressTracker), or null
+     * (the default) to report nothing.
+     */
+    public void setProgressListener(ProgressListener listener,
+            long intervalMillis, long intervalRecords) {
+        if (intervalMillis < 1 || intervalRecords < 1) {
+            throw new IllegalArgumentException(
+                    "intervalMillis and intervalRecords must be positive: got "
+                            + intervalMillis + ", " + intervalRecords);
+        }
+
+        this.progressListener = listener;
+        this.progressIntervalMillis = intervalMillis;
+        this.progressIntervalRecords = intervalRecords;
+    }
+
+    /**
+     * Returns the total time, in nanoseconds, that pipelined decompression has
+     * waited for decoding to free a buffer.
+     */
+    public long getInflateStallNanos() {
+        return inflateStallNanos.get();
+    }
+
+    /**
+     * Returns the total time, in nanoseconds, that decoding has waited for
+     * pipelined decompression to fill a buffer.
+     */
+    public long getDecodeStallNanos() {
+        return decodeStallNanos.get();
+    }
+
     /**
      * Processes all records in the specified files (sequentially).
      */
     public void processFiles(List<String> files) throws ProcessingException {
+        startProgress(files);
         try {
             handler.start();
 
             for (String fname : files) {
-                InputStream input = new FileInputStream(fname);
-                if (fname.endsWith(".gz")) {
-                    input = new GZIPInputStream(input);
-                }
-
-                SequentialDataReader<GenericRecord> reader = new SequentialDataReader<GenericRecord>(
-                        schema, input, new GenericDatumReader<GenericRecord>(
-                                schema));
-                processImpl(reader);
+                processFile(fname, handler);
             }
 
             handler.finish();
         } catch (IOException e) {
             throw new ProcessingException("Error while processing files: "
                     + e.getMessage(), e);
+        } finally {
+            finishProgress();
+        }
+    }
+
+    /** Starts tracking progress over the given files, if there's a listener. */
+    protected void startProgress(List<String> files) {
+        if (progressListener != null) {
+            progress = new ProgressTracker(progressListener, files,
+                    progressIntervalMillis, progressIntervalRecords);
+        }
+    }
+
+    /** Reports the final progress, if tracking. */
+    protected void finishProgress() {
+        ProgressTracker theProgress = progress;
+        progress = null;
+
+        if (theProgress != null) {
+            theProgress.finish();
         }
     }
 
     /**
      * Processes the records from the given reader.
      */
-    public void process(SequentialDataReader<GenericRecord> reader)
+    public void process(DataReader<GenericRecord> reader)
             throws ProcessingException {
         handler.start();
         processImpl(reader);
         handler.finish();
     }
 
+    /**
+     * Processes all records in the specified file using the given handler.
+     */
+    protected void processFile(String fname, RecordHandler handler)
+            throws ProcessingException, IOException {
+        InputStream input = openInput(fname);
+        process(input, createReader(input), handler);
+
+        ProgressTracker theProgress = progress;
+        if (theProgress != null) {
+            theProgress.fileFinished(fname, true);
+        }
+    }
+
+    /**
+     * Processes the records in the given split of the specified block-gzip
+     * file using the given handler.
+     */
+    protected void processSplit(String fname, BlockGzipIndex index,
+            BlockGzipIndex.Split split, RecordHandler handler)
+            throws ProcessingException, IOException {
+        InputStream input = index.open(new File(fname), split);
+        if (inflateBuffers > 0) {
+            input = new PipelinedInputStream(input, inflateBuffers,
+                    PipelinedInputStream.DEFAULT_BUFFER_SIZE);
+        }
+
+        process(input, createReader(input, split), handler);
+
+        ProgressTracker theProgress = progress;
+        if (theProgress != null) {
+            theProgress.bytesConsumed(fname, split.getCompressedEnd()
+                    - split.getCompressedStart());
+            theProgress.fileFinished(fname, false);
+        }
+    }
+
+    /**
+     * Processes the records from the given reader of the given input using
+     * the given handler, then closes the reader.
+     */
+    protected void process(InputStream input,
+            DataReader<GenericRecord> reader, RecordHandler handler)
+            throws ProcessingException, IOException {
+        try {
+            processImpl(reader, handler);
+        } finally {
+            reader.close();
+
+            if (input instanceof PipelinedInputStream) {
+                PipelinedInputStream pipelined = (PipelinedInputStream) input;
+                inflateStallNanos.addAndGet(pipelined.getProducerStallNanos());
+                decodeStallNanos.addAndGet(pipelined.getConsumerStallNanos());
+            }
+        }
+    }
+
+    /**
+     * Opens the named file, decompressing it if the name ends in ".gz"
+     * (pipelined unless inflateBuffers is zero).
+     */
+    protected InputStream openInput(String fname) throws IOException {
+        InputStream input = new FileInputStream(fname);
+
+        ProgressTracker theProgress = progress;
+        if (theProgress != null) {
+            input = theProgress.track(fname, input);
+        }
+
+        if (fname.endsWith(".gz")) {
+            input = new GZIPInputStream(input);
+
+            if (inflateBuffers > 0) {
+                input = new PipelinedInputStream(input, inflateBuffers,
+                        PipelinedInputStream.DEFAULT_BUFFER_SIZE);
+            }
+        }
+
+        return input;
+    }
+
+    /**
+     * Creates the reader used by processFiles() for the given input.
+     */
+    protected DataReader<GenericRecord> createReader(InputStream input)
+            throws ProcessingException {
+        return createReader(input, null);
+    }
+
+    /**
+     * Creates the reader used by processFiles() for the given input, which is
+     * either a whole file (if split is null) or the given split of a
+     * block-gzip file.
+     */
+    protected DataReader<GenericRecord> createReader(InputStream input,
+            BlockGzipIndex.Split split) throws ProcessingException {
+        Set<String> filterFields = FieldUsages.of(filter);
+        Set<String> handlerFields = FieldUsages.of(handler);
+        long position = (split == null) ? 0L : split.getPosition();
+
+        if (decodeThreads > 0 && split == null) {
+            return new ParallelDataReader<GenericRecord>(schema, input,
+                    decodeThreads, true);
+        }
+
+        if (projected && !decodesSinglePhase()
+                && filterNarrows(filterFields, handlerFields)) {
+            return new ProjectingDataReader(schema, input, filterFields,
+                    handlerFields, position);
+        }
+
+        if (projected) {
+            Set<String> fields = FieldUsages.union(filterFields, handlerFields);
+            if (fields != null) {
+                return new ProjectingDataReader(schema, input, fields,
+                        Collections.<String> emptySet(), position);
+            }
+        }
+
+        if (blockBuffered) {
+            return new BlockDataReader<GenericRecord>(schema, input,
+                    new GenericDatumReader<GenericRecord>(schema), position);
+        }
+
+        if (split != null) {
+            return new SequentialDataReader<GenericRecord>(schema, input,
+                    new GenericDatumReader<GenericRecord>(schema), position);
+        }
+
+        return new SequentialDataReader<GenericRecord>(schema, input,
+                new GenericDatumReader<GenericRecord>(schema));
+    }
+
+    /**
+     * Returns true if decoding the fields read by the filter before the
+     * others saves work: the filter reads some, but not all, of the fields
+     * needed. Otherwise a two-phase reader would skip every record field by
+     * field, only to decode it again in full.
+     */
+    protected static boolean filterNarrows(Set<String> filterFields,
+            Set<String> handlerFields) {
+        if (filterFields == null || filterFields.isEmpty()) {
+            return false;
+        }
+
+        return handlerFields == null
+                || !filterFields.containsAll(handlerFields);
+    }
+
+    /**
+     * Returns true if records are filtered some time after they are decoded
+     * (as when batching), so that projecting readers must decode the fields of
+     * both the filter and the handler at once.
+     */
+    protected boolean decodesSinglePhase() {
+        return batchSize > 1;
+    }
+
     /**
      * Implements processing the records in a given reader.
      */
-    protected void processImpl(SequentialDataReader<GenericRecord> reader)
+    protected void processImpl(DataReader<GenericRecord> reader)
             throws ProcessingException {
+        processImpl(reader, handler);
+    }
+
+    /**
+     * Implements processing the records in a given reader using the given
+     * handler.
+     */
+    protected void processImpl(DataReader<GenericRecord> reader,
+            RecordHandler handler) throws ProcessingException {
+        ProjectingDataReader projecting = null;
+        if (reader instanceof ProjectingDataReader) {
+            projecting = (ProjectingDataReader) reader;
+        }
+
+        if (batchSize > 1 && (projecting == null || !projecting.isTwoPhase())) {
+            processBatches(reader, handler);
+            return;
+        }
+
+        boolean reuse = reuseRecords && !RecordRetentions.retains(handler);
+        if (metrics != null) {
+            processMeasured(reader, handler, projecting, reuse);
+            return;
+        }
+
+        ProgressTracker.Counter counter = newCounter();
+        Record record = new Record(schema);
+        GenericRecord next;
+
+        try {
+            // the reader may return another record than the one given
+            while ((next = reader.next(record)) != null) {
+                if (counter != null) {
+                    counter.increment();
+                }
+                if (handler != null
+                        && (filter == null || filter.matches(next))) {
+                    if (projecting != null) {
+                        projecting.complete(next);
+                    }
+                    handler.handle(next);
+                    if (!reuse) {
+                        record = new Record(schema);
+                    }
+                }
+            }
+        } finally {
+            if (counter != null) {
+                counter.flush();
+            }
+        }
+    }
+
+    /** returns a counter of records read if tracking progress, or null */
+    protected ProgressTracker.Counter newCounter() {
+        ProgressTracker theProgress = progress;
+
+        return (theProgress == null) ? null : theProgress.newCounter();
+    }
+
+    /**
+     * Implements processImpl() when recording metrics, with the filter and
+     * handler timed.
+     */
+    protected void processMeasured(DataReader<GenericRecord> reader,
+            RecordHandler handler, ProjectingDataReader projecting,
+            boolean reuse) throws ProcessingException {
+        ReaderMetrics readerMetrics = new ReaderMetrics(metrics, reader);
+        RecordFilter theFilter = metrics.timed("filter", filter);
+        RecordHandler theHandler = metrics.timed("handler", handler);
+        ProgressTracker.Counter counter = newCounter();
         Record record = new Record(schema);
+        GenericRecord next;
 
-        while (reader.next(record) != null) {
-            if (handler != null && (filter == null || filter.matches(record))) {
-                handler.handle(record);
-                record = new Record(schema);
+        try {
+            while ((next = readerMetrics.next(reader, record)) != null) {
+                if (counter != null) {
+                    counter.increment();
+                }
+                if (theHandler != null
+                        && (theFilter == null || theFilter.matches(next))) {
+                    readerMetrics.matched();
+                    if (projecting != null) {
+                        projecting.complete(next);
+                    }
+                    theHandler.handle(next);
+                    if (!reuse) {
+                        record = new Record(schema);
+                    }
+                }
             }
+        } finally {
+            readerMetrics.flush();
+            if (counter != null) {
+                counter.flush();
+            }
+        }
+    }
+
+    /**
+     * Implements processing the records in a given reader using the given
+     * handler, a batch at a time.
+     */
+    protected void processBatches(DataReader<GenericRecord> reader,
+            RecordHandler handler) throws ProcessingException {
+        boolean reuse = reuseRecords && !RecordRetentions.retains(handler);
+        ReaderMetrics readerMetrics = null;
+        RecordFilter theFilter = filter;
+        RecordHandler theHandler = handler;
+        if (metrics != null) {
+            readerMetrics = new ReaderMetrics(metrics, reader);
+            theFilter = metrics.timed("filter", filter);
+            theHandler = metrics.timed("handler", handler);
+        }
+
+        ProgressTracker.Counter counter = newCounter();
+        GenericRecord[] records = new GenericRecord[batchSize];
+        int[] selection = new int[batchSize];
+
+        for (int i = 0; i < batchSize; i++) {
+            records[i] = new Record(schema);
         }
+
+        try {
+            int count = batchSize;
+            while (count == batchSize) {
+                count = 0;
+                while (count < batchSize) {
+                    GenericRecord next = next(reader, records[count],
+                            readerMetrics);
+                    if (next == null) {
+                        break;
+                    }
+                    records[count++] = next;
+                }
+
+                if (counter != null) {
+                    counter.add(count);
+                }
+                if (theHandler == null || count == 0) {
+                    continue;
+                }
+
+                for (int i = 0; i < count; i++) {
+                    selection[i] = i;
+                }
+
+                int selected = count;
+                if (theFilter != null) {
+                    selected = Batches.match(theFilter, records, selection,
+                            count);
+                }
+                if (readerMetrics != null) {
+                    readerMetrics.matched(selected);
+                }
+
+                Batches.handle(theHandler, records, selection, selected);
+
+                if (!reuse) {
+                    for (int i = 0; i < selected; i++) {
+                        records[selection[i]] = new Record(schema);
+                    }
+                }
+            }
+        } finally {
+            if (readerMetrics != null) {
+                readerMetrics.flush();
+            }
+            if (counter != null) {
+                counter.flush();
+            }
+        }
+    }
+
+    /**
+     * Returns the next record from the reader, through the given metrics if
+     * not null.
+     */
+    protected static <D> D next(DataReader<D> reader, D reuse,
+            ReaderMetrics readerMetrics) throws ProcessingException {
+        if (readerMetrics != null) {
+            return readerMetrics.next(reader, reuse);
+        }
+
+        return reader.next(reuse);
     }
 }
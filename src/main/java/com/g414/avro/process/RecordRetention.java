@@ -0,0 +1,34 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+/**
+ * Optional interface for handlers that declare whether they keep references
+ * to the records they are given (or to values within them, such as Utf8
+ * strings) after handle() returns. A RecordProcessor in reuse mode decodes
+ * every record into the same instance, overwriting its values in place, which
+ * is only safe when the handler does not retain records; handlers that need
+ * to keep a value should copy it first (see Values).
+ */
+public interface RecordRetention {
+    /**
+     * Returns true if this instance may keep references to records or their
+     * values after handling them.
+     */
+    public boolean retainsRecords();
+}
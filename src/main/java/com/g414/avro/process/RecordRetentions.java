@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+import java.util.Collection;
+
+/**
+ * Utility methods for working with RecordRetention declarations.
+ */
+public class RecordRetentions {
+    /**
+     * Returns whether the given handler may retain records: false if it is
+     * null, the declared value if it implements RecordRetention, and true
+     * otherwise.
+     */
+    public static boolean retains(Object instance) {
+        if (instance == null) {
+            return false;
+        }
+
+        if (instance instanceof RecordRetention) {
+            return ((RecordRetention) instance).retainsRecords();
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns whether any of the given handlers may retain records.
+     */
+    public static boolean anyRetains(Collection<?> instances) {
+        for (Object instance : instances) {
+            if (retains(instance)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericData.Record;
+
+/**
+ * A bounded, lock-free ring of pre-allocated records passed from a single
+ * producer to any number of consumers. The producer decodes into a slot in
+ * place and publishes it; a consumer claims a published slot, processes the
+ * record in place, and releases the slot back to the producer.
+ * 
+ * Each slot carries a sequence number that tells whose turn it is: the slot
+ * for sequence s is writable when its number is s, readable when it is s + 1,
+ * and becomes writable for s + capacity once released. Only the claim of a
+ * slot by competing consumers needs a compare-and-set.
+ */
+public class RecordRing {
+    /** records, one per slot */
+    protected final GenericRecord[] records;
+
+    /** sequence number of each slot */
+    protected final AtomicLongArray sequences;
+
+    /** capacity - 1, to map sequences to slots */
+    protected final int mask;
+
+    /** next sequence to be claimed by a consumer */
+    protected final AtomicLong head = new AtomicLong();
+
+    /**
+     * Constructs a new ring of records of the given schema; the capacity must
+     * be a power of two.
+     */
+    public RecordRing(Schema schema, int capacity) {
+        if (capacity < 1 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException(
+                    "capacity must be a power of two: got " + capacity);
+        }
+
+        this.records = new GenericRecord[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+
+        for (int i = 0; i < capacity; i++) {
+            records[i] = new Record(schema);
+            sequences.set(i, i);
+        }
+    }
+
+    /** returns the number of slots */
+    public int getCapacity() {
+        return records.length;
+    }
+
+    /** returns the record of the slot for the given sequence */
+    public GenericRecord get(long sequence) {
+        return records[(int) sequence & mask];
+    }
+
+    /**
+     * Returns true if the slot for the given sequence has been released and
+     * may be written by the producer.
+     */
+    public boolean isWritable(long sequence) {
+        return sequences.get((int) sequence & mask) == sequence;
+    }
+
+    /** Makes the slot for the given sequence available to consumers. */
+    public void publish(long sequence) {
+        sequences.lazySet((int) sequence & mask, sequence + 1);
+    }
+
+    /**
+     * Claims the next published slot for the calling consumer, returning its
+     * sequence, or -1 if no slot is published.
+     */
+    public long tryClaim() {
+        while (true) {
+            long position = head.get();
+            long sequence = sequences.get((int) position & mask);
+            long diff = sequence - (position + 1);
+
+            if (diff < 0) {
+                return -1;
+            }
+
+            if (diff == 0 && head.compareAndSet(position, position + 1)) {
+                return position;
+            }
+            // another consumer claimed this slot; retry
+        }
+    }
+
+    /**
+     * Replaces the record of a claimed slot, so that the consumer may keep the
+     * previous one, or of a writable slot, with the record to publish.
+     */
+    public void replace(long sequence, GenericRecord record) {
+        records[(int) sequence & mask] = record;
+    }
+
+    /** Returns a claimed slot to the producer. */
+    public void release(long sequence) {
+        sequences.lazySet((int) sequence & mask, sequence + records.length);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
+
+/**
+ * Utility methods for copying decoded values, so that they may be retained
+ * after the record they came from is reused (see RecordRetention).
+ */
+public class Values {
+    /**
+     * Returns a copy of the given value that shares no mutable state with it.
+     * Immutable values (null, numbers, booleans, Strings and enum symbols) are
+     * returned as is; strings, bytes, fixed values, arrays, maps and records
+     * are copied deeply.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T copy(T value) {
+        if (value instanceof Utf8) {
+            return (T) copy((Utf8) value);
+        }
+
+        if (value instanceof GenericRecord) {
+            return (T) copy((GenericRecord) value);
+        }
+
+        if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            ByteBuffer result = ByteBuffer.allocate(buffer.remaining());
+            result.put(buffer);
+            result.flip();
+
+            return (T) result;
+        }
+
+        if (value instanceof GenericData.Array) {
+            GenericData.Array<Object> array = (GenericData.Array<Object>) value;
+            GenericData.Array<Object> result = new GenericData.Array<Object>(
+                    array.size(), array.getSchema());
+            for (Object element : array) {
+                result.add(copy(element));
+            }
+
+            return (T) result;
+        }
+
+        if (value instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) value;
+            Map<Object, Object> result = new HashMap<Object, Object>(map.size());
+            for (Map.Entry<Object, Object> entry : map.entrySet()) {
+                result.put(copy(entry.getKey()), copy(entry.getValue()));
+            }
+
+            return (T) result;
+        }
+
+        if (value instanceof GenericData.Fixed) {
+            byte[] bytes = ((GenericData.Fixed) value).bytes();
+
+            return (T) new GenericData.Fixed(bytes.clone());
+        }
+
+        return value;
+    }
+
+    /** Returns a copy of the given string. */
+    public static Utf8 copy(Utf8 value) {
+        byte[] bytes = new byte[value.getLength()];
+        System.arraycopy(value.getBytes(), 0, bytes, 0, bytes.length);
+
+        return new Utf8(bytes);
+    }
+
+    /** Returns a deep copy of the given record. */
+    public static GenericRecord copy(GenericRecord value) {
+        Schema schema = value.getSchema();
+        GenericData.Record result = new GenericData.Record(schema);
+
+        int size = schema.getFields().size();
+        for (int i = 0; i < size; i++) {
+            result.put(i, copy(value.get(i)));
+        }
+
+        return result;
+    }
+}
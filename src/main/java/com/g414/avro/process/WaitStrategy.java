@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strategies for threads waiting on a RecordRing, trading CPU usage for
+ * latency. Each is given the number of times the caller has already waited
+ * for the same condition.
+ */
+public enum WaitStrategy {
+    /** spins without yielding: lowest latency, occupies a core */
+    BUSY_SPIN {
+        @Override
+        public void idle(int attempt) {
+        }
+    },
+
+    /** spins briefly, then yields the processor */
+    YIELD {
+        @Override
+        public void idle(int attempt) {
+            if (attempt >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+
+    /** spins and yields briefly, then sleeps for short periods */
+    PARK {
+        @Override
+        public void idle(int attempt) {
+            if (attempt >= 2 * SPIN_TRIES) {
+                LockSupport.parkNanos(PARK_NANOS);
+            } else if (attempt >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    };
+
+    /** number of attempts before yielding */
+    protected static final int SPIN_TRIES = 100;
+
+    /** duration of each sleep of PARK */
+    protected static final long PARK_NANOS = 50 * 1000;
+
+    /** Waits once; attempt counts previous waits for the same condition. */
+    public abstract void idle(int attempt);
+}
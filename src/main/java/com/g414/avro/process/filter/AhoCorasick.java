@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.filter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An Aho-Corasick automaton over bytes, which finds whether any of a set of
+ * patterns occurs in an input in time linear in the length of the input,
+ * however many patterns there are. Applied to UTF-8 encoded strings, a match
+ * of the encoded pattern is exactly a match of the pattern, since no
+ * character's encoding occurs inside another's.
+ *
+ * The transitions of the trie are held in a single open-addressing table
+ * keyed by state and byte, so memory is proportional to the total length of
+ * the patterns. Instances are immutable, and therefore thread-safe.
+ */
+public class AhoCorasick {
+    /** table key of unused slots */
+    protected static final long EMPTY = -1L;
+
+    /** keys of the transition table: state * 256 + byte, or EMPTY */
+    protected final long[] keys;
+
+    /** targets of the transition table */
+    protected final int[] targets;
+
+    /** failure transition of each state */
+    protected final int[] fail;
+
+    /** whether a pattern ends at each state, or at one of its suffixes */
+    protected final boolean[] output;
+
+    /** Constructs an automaton matching any of the given patterns. */
+    public AhoCorasick(List<byte[]> patterns) {
+        int total = 1;
+        for (byte[] pattern : patterns) {
+            total += pattern.length;
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(2 * total, 16) - 1) << 1;
+        this.keys = new long[capacity];
+        this.targets = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+
+        boolean[] terminal = new boolean[total];
+        byte[] label = new byte[total]; // byte leading to each state
+        int[] firstChild = new int[total];
+        int[] nextSibling = new int[total];
+        int states = 1;
+
+        for (byte[] pattern : patterns) {
+            int state = 0;
+            for (byte b : pattern) {
+                int next = next(state, b);
+                if (next < 0) {
+                    next = states++;
+                    put(state, b, next);
+                    label[next] = b;
+                    nextSibling[next] = firstChild[state];
+                    firstChild[state] = next;
+                }
+                state = next;
+            }
+            terminal[state] = true;
+        }
+
+        this.fail = new int[states];
+        this.output = new boolean[states];
+        output[0] = terminal[0];
+
+        // breadth-first over the trie, so failures are known for shallower
+        // states (0 terminates the child lists, as the root is no child)
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+
+        while (head < tail) {
+            int state = queue[head++];
+
+            int child = firstChild[state];
+            for (; child != 0; child = nextSibling[child]) {
+                byte b = label[child];
+                int f = 0;
+                if (state != 0) {
+                    f = fail[state];
+                    while (f != 0 && next(f, b) < 0) {
+                        f = fail[f];
+                    }
+                    int target = next(f, b);
+                    f = (target >= 0) ? target : 0;
+                }
+
+                fail[child] = f;
+                output[child] = terminal[child] || output[f];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /** returns the number of states */
+    public int getStateCount() {
+        return fail.length;
+    }
+
+    /**
+     * Returns true if any pattern occurs in bytes[0, len), whose ASCII letters
+     * are lower-cased first if fold is set.
+     */
+    public boolean matches(byte[] bytes, int len, boolean fold) {
+        if (output[0]) {
+            return true;
+        }
+
+        int state = 0;
+        for (int i = 0; i < len; i++) {
+            byte b = bytes[i];
+            if (fold && b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+
+            int next = next(state, b);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = next(state, b);
+            }
+            state = (next < 0) ? 0 : next;
+
+            if (output[state]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /** returns the target of the transition from state on b, or -1 */
+    protected int next(int state, byte b) {
+        long key = ((long) state << 8) | (b & 0xff);
+        int mask = keys.length - 1;
+
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return targets[i];
+            }
+            if (keys[i] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /** adds the transition from state on b */
+    protected void put(int state, byte b, int target) {
+        long key = ((long) state << 8) | (b & 0xff);
+        int mask = keys.length - 1;
+
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        targets[i] = target;
+    }
+
+    /** returns a well-mixed hash of a table key */
+    protected static int hash(long key) {
+        key *= 0x9e3779b97f4a7c15L;
+
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -21,6 +21,8 @@ import java.util.List;
 
 import org.apache.avro.generic.GenericRecord;
 
+import com.g414.avro.process.BatchRecordFilter;
+import com.g414.avro.process.Batches;
 import com.g414.avro.process.RecordFilter;
 
 /**
@@ -36,9 +38,21 @@ public class AndFilter extends CompoundFilterBase {
         super(filters);
     }
 
+    /**
+     * Constructs a new instance that delegates to the specified filters,
+     * reordering them by sampled cost and pass rate if adaptive.
+     */
+    public AndFilter(List<RecordFilter> filters, boolean adaptive) {
+        super(filters, adaptive, true);
+    }
+
     /** @see RecordFilter#matches(GenericRecord) */
     @Override
     public boolean matches(GenericRecord record) {
+        if (clauseOrder != null) {
+            return clauseOrder.matches(record);
+        }
+
         for (RecordFilter filter : filters) {
             if (!filter.matches(record)) {
                 return false;
@@ -48,13 +62,53 @@ public class AndFilter extends CompoundFilterBase {
         return true;
     }
 
+    /** @see BatchRecordFilter#matchBatch(GenericRecord[], int[], int) */
+    @Override
+    public int matchBatch(GenericRecord[] records, int[] selection, int count) {
+        if (clauseOrder != null) {
+            return matchAdaptive(records, selection, count);
+        }
+
+        for (RecordFilter filter : filters) {
+            if (count == 0) {
+                break;
+            }
+
+            count = Batches.match(filter, records, selection, count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Narrows the selection by each delegate in the current adaptive order,
+     * recording the cost and pass rate of each.
+     */
+    protected int matchAdaptive(GenericRecord[] records, int[] selection,
+            int count) {
+        for (int clause : clauseOrder.getOrder()) {
+            if (count == 0) {
+                break;
+            }
+
+            long start = System.nanoTime();
+            int matched = Batches.match(filters.get(clause), records,
+                    selection, count);
+            clauseOrder.record(clause, count, matched, System.nanoTime()
+                    - start);
+            count = matched;
+        }
+
+        return count;
+    }
+
     /** @see CompoundFilterBase.CompoundFilterBuilder */
     public static class AndFilterBuilder extends
             CompoundFilterBuilder<RecordFilter> {
         /** @see CompoundFilterBuilder#build() */
         @Override
         public AndFilter build() {
-            return new AndFilter(filters);
+            return new AndFilter(filters, adaptive);
         }
     }
 }
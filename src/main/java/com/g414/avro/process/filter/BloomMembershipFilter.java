@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.filter;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.g414.avro.collect.BloomFilter;
+import com.g414.avro.collect.Hashing;
+
+/**
+ * A filter that matches records whose field value may be in a BloomFilter,
+ * typically built by a BloomFilterHandler over another dataset: a semi-join
+ * whose memory use is the size of the filter. All matching records are
+ * matched, along with a fraction of others given by the false-positive rate
+ * of the filter. Null values never match. Thread-safe.
+ */
+public class BloomMembershipFilter extends FieldFilter {
+    /** the values to match */
+    protected final BloomFilter filter;
+
+    /** Creates a new instance matching the given field against the filter. */
+    public BloomMembershipFilter(String field, BloomFilter filter) {
+        super(field);
+        this.filter = filter;
+    }
+
+    /**
+     * Creates a new instance matching the given field against the filter in
+     * the given file, whose expected false-positive rate must not exceed
+     * maxFpp.
+     */
+    public static BloomMembershipFilter forFile(String field, File file,
+            double maxFpp) throws IOException {
+        BloomFilter filter = BloomFilter.read(file);
+
+        double fpp = filter.getExpectedFpp();
+        if (fpp > maxFpp) {
+            throw new IllegalArgumentException("Filter " + file
+                    + " has expected false-positive rate " + fpp
+                    + ", above " + maxFpp);
+        }
+
+        return new BloomMembershipFilter(field, filter);
+    }
+
+    /** returns the filter */
+    public BloomFilter getBloomFilter() {
+        return filter;
+    }
+
+    /** @see FieldFilter#matchesValue(Object) */
+    @Override
+    public boolean matchesValue(Object fieldValue) {
+        return fieldValue != null
+                && filter.mightContain(Hashing.hash64(fieldValue));
+    }
+
+    /** @see FieldFilter#matchesNull() */
+    @Override
+    public Boolean matchesNull() {
+        return Boolean.FALSE;
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.filter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Evaluation order of the clauses of an adaptive AndFilter or OrFilter. The
+ * pass rate and cost of each clause are sampled while filtering, and the
+ * clauses are periodically reordered to minimize the expected cost per
+ * record: a conjunction should first evaluate the clauses that are cheap and
+ * likely to fail (lowest cost / P(fail)), a disjunction those that are cheap
+ * and likely to pass (lowest cost / P(pass)). Older samples are given less
+ * weight at each reordering, so that the order follows changes in the data.
+ * Sampled records are evaluated with short-circuiting, as by matches(), so
+ * a clause may guard the ones after it; each clause is timed only on the
+ * records it is evaluated on, so its pass rate is conditional on the clauses
+ * before it. In batch evaluation, likewise, each clause is timed over the
+ * records still selected when it runs. Reordering may still move a clause
+ * before one that guards it; to keep a guard first, combine the two in a
+ * non-adaptive filter that is a single clause of the adaptive one.
+ *
+ * Thread-safe. The sampling counter is updated without synchronization, so
+ * under concurrent use records are sampled at approximately the nominal rate.
+ */
+public abstract class ClauseOrder {
+    /** one in this many records is sampled by matches() */
+    public static final int SAMPLE_INTERVAL = 16;
+
+    /** number of trials per clause between reorderings */
+    public static final int REORDER_TRIALS = 256;
+
+    /** whether the clauses are combined with AND (or else OR) */
+    protected final boolean conjunction;
+
+    /** number of times each clause was evaluated while sampling */
+    protected final double[] trials;
+
+    /** number of times each clause passed while sampling */
+    protected final double[] passes;
+
+    /** total nanoseconds spent in each clause while sampling */
+    protected final double[] nanos;
+
+    /** trials of the first clause since the last reordering */
+    protected long pending;
+
+    /** number of reorderings so far */
+    protected int reorderings;
+
+    /** current evaluation order, as indices of clauses */
+    protected volatile int[] order;
+
+    /** counter for sampling; racy by design */
+    protected int counter;
+
+    /** the arrays used by sample() in the current thread */
+    protected final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(trials.length);
+        }
+    };
+
+    /**
+     * Constructs a new instance for the given number of clauses, initially in
+     * the given order.
+     */
+    public ClauseOrder(int size, boolean conjunction) {
+        this.conjunction = conjunction;
+        this.trials = new double[size];
+        this.passes = new double[size];
+        this.nanos = new double[size];
+        this.order = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+    }
+
+    /** Evaluates the clause with the given index. */
+    protected abstract boolean evaluate(int clause, GenericRecord record);
+
+    /** returns a copy of the current evaluation order */
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    /** Evaluates the clauses in the current order, sampling periodically. */
+    public boolean matches(GenericRecord record) {
+        int[] theOrder = order;
+
+        if (++counter % SAMPLE_INTERVAL == 0) {
+            return sample(record, theOrder);
+        }
+
+        for (int clause : theOrder) {
+            if (evaluate(clause, record) != conjunction) {
+                return !conjunction;
+            }
+        }
+
+        return conjunction;
+    }
+
+    /**
+     * Evaluates the clauses in the given order, stopping at the first one
+     * that decides the result as matches() does, and records the result and
+     * cost of each clause evaluated.
+     */
+    protected boolean sample(GenericRecord record, int[] theOrder) {
+        Scratch scratch = this.scratch.get();
+        long[] costs = scratch.costs;
+        boolean[] results = scratch.results;
+
+        boolean result = conjunction;
+        int evaluated = 0;
+        while (evaluated < theOrder.length) {
+            long start = System.nanoTime();
+            boolean passed = evaluate(theOrder[evaluated], record);
+            costs[evaluated] = System.nanoTime() - start;
+            results[evaluated] = passed;
+            evaluated++;
+
+            if (passed != conjunction) {
+                result = !conjunction;
+                break;
+            }
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < evaluated; i++) {
+                int clause = theOrder[i];
+                trials[clause] += 1;
+                passes[clause] += results[i] ? 1 : 0;
+                nanos[clause] += costs[i];
+            }
+            pending += 1;
+            reorderIfDue();
+        }
+
+        return result;
+    }
+
+    /**
+     * Records the evaluation of a clause on a batch of records: of the given
+     * number of trials, the given number passed, taking the given time.
+     */
+    public synchronized void record(int clause, int trialCount,
+            int passCount, long elapsed) {
+        trials[clause] += trialCount;
+        passes[clause] += passCount;
+        nanos[clause] += elapsed;
+
+        if (clause == order[0]) {
+            pending += trialCount;
+            reorderIfDue();
+        }
+    }
+
+    /** returns the sampled pass rate of the given clause */
+    public synchronized double getPassRate(int clause) {
+        return (passes[clause] + 1) / (trials[clause] + 2);
+    }
+
+    /** returns the sampled cost in nanoseconds of the given clause */
+    public synchronized double getCost(int clause) {
+        return (trials[clause] == 0) ? 0.0 : nanos[clause] / trials[clause];
+    }
+
+    /**
+     * Returns a description of the current order and the statistics of each
+     * clause, identified by its original index.
+     */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(conjunction ? "AND" : "OR");
+        report.append(" order after ").append(reorderings).append(
+                " reorderings:");
+
+        for (int clause : order) {
+            report.append(String.format(
+                    "%n  clause %d: pass rate %.3f, cost %.1f ns, rank %.1f",
+                    clause, getPassRate(clause), getCost(clause),
+                    rank(clause)));
+        }
+
+        return report.toString();
+    }
+
+    /** returns the expected cost of a clause per record it decides */
+    protected double rank(int clause) {
+        double decisive = conjunction ? 1.0 - getPassRate(clause)
+                : getPassRate(clause);
+
+        return getCost(clause) / decisive;
+    }
+
+    /** reorders the clauses once enough trials have been recorded */
+    protected void reorderIfDue() {
+        if (pending < REORDER_TRIALS) {
+            return;
+        }
+
+        Integer[] ranked = new Integer[order.length];
+        for (int i = 0; i < ranked.length; i++) {
+            ranked[i] = order[i];
+        }
+
+        final double[] ranks = new double[order.length];
+        for (int clause = 0; clause < ranks.length; clause++) {
+            ranks[clause] = rank(clause);
+        }
+
+        Arrays.sort(ranked, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(ranks[a], ranks[b]);
+            }
+        });
+
+        int[] newOrder = new int[ranked.length];
+        for (int i = 0; i < ranked.length; i++) {
+            newOrder[i] = ranked[i];
+        }
+
+        for (int clause = 0; clause < trials.length; clause++) {
+            trials[clause] /= 2;
+            passes[clause] /= 2;
+            nanos[clause] /= 2;
+        }
+
+        pending = 0;
+        reorderings += 1;
+        order = newOrder;
+    }
+
+    /** The arrays used by sample(), reused across records. */
+    protected static class Scratch {
+        /** the cost of each clause evaluated, in evaluation order */
+        protected final long[] costs;
+
+        /** the result of each clause evaluated, in evaluation order */
+        protected final boolean[] results;
+
+        public Scratch(int size) {
+            this.costs = new long[size];
+            this.results = new boolean[size];
+        }
+    }
+}
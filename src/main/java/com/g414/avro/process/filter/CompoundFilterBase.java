@@ -20,25 +20,83 @@ package com.g414.avro.process.filter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
+import org.apache.avro.generic.GenericRecord;
+
+import com.g414.avro.process.BatchRecordFilter;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.FieldUsages;
 import com.g414.avro.process.RecordFilter;
 
 /**
  * A RecordFilter implementation that consolidates input from multiple filters.
  * Thread-safe if the underlying delegates are Thread-safe.
  */
-public abstract class CompoundFilterBase implements RecordFilter {
+public abstract class CompoundFilterBase implements BatchRecordFilter,
+        FieldUsage {
     /** collection of delegate filters */
     protected final List<RecordFilter> filters;
 
+    /** evaluation order of the delegates in adaptive mode, or null */
+    protected final ClauseOrder clauseOrder;
+
     /**
      * Construct a new instance of the compound filter with the specified
      * delegates.
      */
     public CompoundFilterBase(List<RecordFilter> filters) {
+        this(filters, false, true);
+    }
+
+    /**
+     * Construct a new instance of the compound filter with the specified
+     * delegates, which are reordered by sampled cost and pass rate if
+     * adaptive, for a conjunction or else a disjunction.
+     */
+    protected CompoundFilterBase(List<RecordFilter> filters, boolean adaptive,
+            boolean conjunction) {
         List<RecordFilter> theFilters = new ArrayList<RecordFilter>();
         theFilters.addAll(filters);
         this.filters = Collections.unmodifiableList(filters);
+
+        if (adaptive) {
+            final RecordFilter[] clauses = filters
+                    .toArray(new RecordFilter[filters.size()]);
+
+            this.clauseOrder = new ClauseOrder(clauses.length, conjunction) {
+                @Override
+                protected boolean evaluate(int clause, GenericRecord record) {
+                    return clauses[clause].matches(record);
+                }
+            };
+        } else {
+            this.clauseOrder = null;
+        }
+    }
+
+    /** returns the delegate filters */
+    public List<RecordFilter> getFilters() {
+        return filters;
+    }
+
+    /** returns true if the delegates are reordered adaptively */
+    public boolean isAdaptive() {
+        return clauseOrder != null;
+    }
+
+    /**
+     * returns the evaluation order and statistics of the delegates in adaptive
+     * mode, or null
+     */
+    public ClauseOrder getClauseOrder() {
+        return clauseOrder;
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return FieldUsages.union(filters);
     }
 
     /**
@@ -46,6 +104,7 @@ public abstract class CompoundFilterBase implements RecordFilter {
      */
     public abstract static class CompoundFilterBuilder<T extends RecordFilter> {
         protected final List<T> filters = new ArrayList<T>();
+        protected boolean adaptive;
 
         public CompoundFilterBuilder<T> add(T filter) {
             filters.add(filter);
@@ -53,6 +112,13 @@ public abstract class CompoundFilterBase implements RecordFilter {
             return this;
         }
 
+        /** @see ClauseOrder */
+        public CompoundFilterBuilder<T> setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+
+            return this;
+        }
+
         public abstract T build();
     }
 }
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.filter;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.avro.generic.GenericRecord;
+
+import com.g414.avro.process.BatchRecordFilter;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.RecordFilter;
+
+/**
+ * A filter that matches either every record or none, without examining them.
+ * Thread-safe.
+ */
+public class ConstantFilter implements BatchRecordFilter, FieldUsage {
+    /** filter that matches every record */
+    public static final ConstantFilter TRUE = new ConstantFilter(true);
+
+    /** filter that matches no record */
+    public static final ConstantFilter FALSE = new ConstantFilter(false);
+
+    /** result of every match */
+    protected final boolean value;
+
+    protected ConstantFilter(boolean value) {
+        this.value = value;
+    }
+
+    /** returns the filter that always returns the given value */
+    public static ConstantFilter of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /** returns the result of every match */
+    public boolean getValue() {
+        return value;
+    }
+
+    /** @see RecordFilter#matches(GenericRecord) */
+    @Override
+    public boolean matches(GenericRecord record) {
+        return value;
+    }
+
+    /** @see BatchRecordFilter#matchBatch(GenericRecord[], int[], int) */
+    @Override
+    public int matchBatch(GenericRecord[] records, int[] selection, int count) {
+        return value ? count : 0;
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return Collections.emptySet();
+    }
+}
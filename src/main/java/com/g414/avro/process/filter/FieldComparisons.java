@@ -17,8 +17,6 @@
  */
 package com.g414.avro.process.filter;
 
-import org.apache.avro.generic.GenericRecord;
-
 import com.g414.avro.process.RecordFilter;
 
 /**
@@ -29,10 +27,10 @@ import com.g414.avro.process.RecordFilter;
 public class FieldComparisons {
     /** Create a filter that returns equals(value). */
     public <T> RecordFilter getEQ(final String field, final T value) {
-        return new RecordFilter() {
+        return new FieldFilter(field) {
             @Override
-            public boolean matches(GenericRecord record) {
-                T other = (T) record.get(field);
+            public boolean matchesValue(Object fieldValue) {
+                T other = (T) fieldValue;
 
                 return other.equals(value);
             }
@@ -41,10 +39,10 @@ public class FieldComparisons {
 
     /** Create a filter that returns ! equals(value). */
     public <T> RecordFilter getNE(final String field, final T value) {
-        return new RecordFilter() {
+        return new FieldFilter(field) {
             @Override
-            public boolean matches(GenericRecord record) {
-                T other = (T) record.get(field);
+            public boolean matchesValue(Object fieldValue) {
+                T other = (T) fieldValue;
 
                 return !other.equals(value);
             }
@@ -54,10 +52,10 @@ public class FieldComparisons {
     /** Create a filter that returns compareTo(value) >= 0 */
     public <T extends Comparable<T>> RecordFilter getGEQ(final String field,
             final T value) {
-        return new RecordFilter() {
+        return new FieldFilter(field) {
             @Override
-            public boolean matches(GenericRecord record) {
-                T other = (T) record.get(field);
+            public boolean matchesValue(Object fieldValue) {
+                T other = (T) fieldValue;
 
                 return other.compareTo(value) >= 0;
             }
@@ -67,10 +65,10 @@ public class FieldComparisons {
     /** Create a filter that returns compareTo(value) > 0 */
     public <T extends Comparable<T>> RecordFilter getGT(final String field,
             final T value) {
-        return new RecordFilter() {
+        return new FieldFilter(field) {
             @Override
-            public boolean matches(GenericRecord record) {
-                T other = (T) record.get(field);
+            public boolean matchesValue(Object fieldValue) {
+                T other = (T) fieldValue;
 
                 return other.compareTo(value) > 0;
             }
@@ -80,10 +78,10 @@ public class FieldComparisons {
     /** Create a filter that returns compareTo(value) <= 0 */
     public <T extends Comparable<T>> RecordFilter getLEQ(final String field,
             final T value) {
-        return new RecordFilter() {
+        return new FieldFilter(field) {
             @Override
-            public boolean matches(GenericRecord record) {
-                T other = (T) record.get(field);
+            public boolean matchesValue(Object fieldValue) {
+                T other = (T) fieldValue;
 
                 return other.compareTo(value) <= 0;
             }
@@ -93,10 +91,10 @@ public class FieldComparisons {
     /** Create a filter that returns compareTo(value) < 0 */
     public <T extends Comparable<T>> RecordFilter getLT(final String field,
             final T value) {
-        return new RecordFilter() {
+        return new FieldFilter(field) {
             @Override
-            public boolean matches(GenericRecord record) {
-                T other = (T) record.get(field);
+            public boolean matchesValue(Object fieldValue) {
+                T other = (T) fieldValue;
 
                 return other.compareTo(value) < 0;
             }
@@ -105,20 +103,30 @@ public class FieldComparisons {
 
     /** Create a filter that returns == null */
     public RecordFilter getIsNull(final String field) {
-        return new RecordFilter() {
+        return new FieldFilter(field) {
+            @Override
+            public boolean matchesValue(Object fieldValue) {
+                return fieldValue == null;
+            }
+
             @Override
-            public boolean matches(GenericRecord record) {
-                return record.get(field) == null;
+            public Boolean matchesNull() {
+                return Boolean.TRUE;
             }
         };
     }
 
     /** Create a filter that returns != null */
     public RecordFilter getNotNull(final String field) {
-        return new RecordFilter() {
+        return new FieldFilter(field) {
+            @Override
+            public boolean matchesValue(Object fieldValue) {
+                return fieldValue != null;
+            }
+
             @Override
-            public boolean matches(GenericRecord record) {
-                return record.get(field) != null;
+            public Boolean matchesNull() {
+                return Boolean.FALSE;
             }
         };
     }
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.filter;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.avro.generic.GenericRecord;
+
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.RecordFilter;
+
+/**
+ * Base class for filters that examine a single field of each record.
+ * Subclasses implement matchesValue(), which lets FilterCompiler look up the
+ * field by position rather than by name.
+ */
+public abstract class FieldFilter implements RecordFilter, FieldUsage {
+    /** field to examine */
+    protected final String field;
+
+    /** Constructs a new instance that examines the specified field. */
+    public FieldFilter(String field) {
+        this.field = field;
+    }
+
+    /** returns the field examined by this filter */
+    public String getField() {
+        return field;
+    }
+
+    /** @see RecordFilter#matches(GenericRecord) */
+    @Override
+    public boolean matches(GenericRecord record) {
+        return matchesValue(record.get(field));
+    }
+
+    /** Returns true if the filter matches the given value of the field. */
+    public abstract boolean matchesValue(Object fieldValue);
+
+    /**
+     * Returns whether the filter matches a null value of the field, or null
+     * if matchesValue(null) is not defined (by default). FilterCompiler folds
+     * a filter on a field missing from the schema, which is always null,
+     * into a constant only if this is known.
+     */
+    public Boolean matchesNull() {
+        return null;
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return Collections.singleton(field);
+    }
+}
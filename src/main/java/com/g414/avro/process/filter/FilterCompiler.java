@@ -0,0 +1,344 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericRecord;
+
+import com.g414.avro.process.BatchRecordFilter;
+import com.g414.avro.process.Batches;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.FieldUsages;
+import com.g414.avro.process.RecordFilter;
+
+/**
+ * Compiles a filter tree for a given schema into an equivalent filter that is
+ * cheaper to evaluate. Compilation simplifies the tree (flattening nested
+ * AndFilters and OrFilters, removing double negation, and folding constant
+ * clauses, including FieldFilters on fields that are not in the schema, if
+ * they declare whether they match null), then replaces the compound filters
+ * with evaluators over arrays of clauses, in which each FieldFilter reads
+ * its field by position rather than by name.
+ *
+ * The compiled filter only accepts records of the given schema. Filters of
+ * other types, and adaptive AndFilters and OrFilters (so that their clause
+ * statistics stay observable), are kept as they are; the compiled filter is
+ * thread-safe if they are.
+ */
+public class FilterCompiler {
+    /** Compiles the given filter for records of the given schema. */
+    public static RecordFilter compile(RecordFilter filter, Schema schema) {
+        return emit(simplify(filter, schema), schema);
+    }
+
+    /**
+     * Returns a simplified filter equivalent to the given one, made of
+     * ConstantFilters, FieldFilters, AndFilters, OrFilters, NotFilters and
+     * filters of other types.
+     */
+    public static RecordFilter simplify(RecordFilter filter, Schema schema) {
+        if (filter instanceof FieldFilter) {
+            FieldFilter fieldFilter = (FieldFilter) filter;
+
+            Boolean matchesNull = fieldFilter.matchesNull();
+
+            if (schema.getField(fieldFilter.getField()) == null
+                    && matchesNull != null) {
+                // the field is always null, and the filter declares its result
+                return ConstantFilter.of(matchesNull.booleanValue());
+            }
+
+            return filter;
+        }
+
+        if (isNot(filter)) {
+            RecordFilter inner = simplify(((NotFilter) filter).getFilter(),
+                    schema);
+
+            if (inner instanceof ConstantFilter) {
+                return ConstantFilter.of(!((ConstantFilter) inner).getValue());
+            }
+            if (isNot(inner)) {
+                return ((NotFilter) inner).getFilter();
+            }
+
+            return new NotFilter(inner);
+        }
+
+        if (isJunction(filter)) {
+            boolean isAnd = filter.getClass() == AndFilter.class;
+            List<RecordFilter> clauses = new ArrayList<RecordFilter>();
+
+            for (RecordFilter child : ((CompoundFilterBase) filter)
+                    .getFilters()) {
+                RecordFilter clause = simplify(child, schema);
+
+                if (clause instanceof ConstantFilter) {
+                    if (((ConstantFilter) clause).getValue() != isAnd) {
+                        return clause; // FALSE in And, TRUE in Or
+                    }
+                    continue; // TRUE in And, FALSE in Or
+                }
+
+                if (isJunction(clause)
+                        && clause.getClass() == filter.getClass()) {
+                    clauses.addAll(((CompoundFilterBase) clause).getFilters());
+                } else {
+                    clauses.add(clause);
+                }
+            }
+
+            if (clauses.isEmpty()) {
+                return ConstantFilter.of(isAnd);
+            }
+            if (clauses.size() == 1) {
+                return clauses.get(0);
+            }
+
+            return isAnd ? new AndFilter(clauses) : new OrFilter(clauses);
+        }
+
+        return filter;
+    }
+
+    /** Replaces the nodes of a simplified filter with compiled evaluators. */
+    protected static RecordFilter emit(RecordFilter filter, Schema schema) {
+        if (filter instanceof FieldFilter) {
+            FieldFilter fieldFilter = (FieldFilter) filter;
+            Field field = schema.getField(fieldFilter.getField());
+
+            if (field == null) {
+                return filter;
+            }
+
+            return new PositionedFilter(fieldFilter, field.pos());
+        }
+
+        if (isNot(filter)) {
+            RecordFilter inner = ((NotFilter) filter).getFilter();
+
+            return new NotFilter(emit(inner, schema));
+        }
+
+        if (isJunction(filter)) {
+            List<RecordFilter> clauses = ((CompoundFilterBase) filter)
+                    .getFilters();
+            int size = clauses.size();
+
+            RecordFilter[] filters = new RecordFilter[size];
+            FieldFilter[] fieldFilters = new FieldFilter[size];
+            int[] positions = new int[size];
+
+            for (int i = 0; i < size; i++) {
+                RecordFilter clause = clauses.get(i);
+                Field field = null;
+
+                if (clause instanceof FieldFilter) {
+                    fieldFilters[i] = (FieldFilter) clause;
+                    field = schema.getField(fieldFilters[i].getField());
+                }
+
+                if (field != null) {
+                    positions[i] = field.pos();
+                    filters[i] = clause;
+                } else {
+                    positions[i] = -1;
+                    filters[i] = emit(clause, schema);
+                }
+            }
+
+            if (filter.getClass() == AndFilter.class) {
+                return new Conjunction(filters, fieldFilters, positions);
+            }
+
+            return new Disjunction(filters, fieldFilters, positions);
+        }
+
+        return filter;
+    }
+
+    /**
+     * returns true if the filter is a NotFilter (but not a subclass, whose
+     * semantics may differ)
+     */
+    protected static boolean isNot(RecordFilter filter) {
+        return filter != null && filter.getClass() == NotFilter.class;
+    }
+
+    /**
+     * returns true if the filter is a non-adaptive AndFilter or OrFilter
+     * (likewise)
+     */
+    protected static boolean isJunction(RecordFilter filter) {
+        if (filter == null) {
+            return false;
+        }
+
+        Class<?> type = filter.getClass();
+        if (type != AndFilter.class && type != OrFilter.class) {
+            return false;
+        }
+
+        return !((CompoundFilterBase) filter).isAdaptive();
+    }
+
+    /** A FieldFilter that reads its field by position. */
+    protected static class PositionedFilter implements RecordFilter,
+            FieldUsage {
+        protected final FieldFilter filter;
+        protected final int position;
+
+        public PositionedFilter(FieldFilter filter, int position) {
+            this.filter = filter;
+            this.position = position;
+        }
+
+        @Override
+        public boolean matches(GenericRecord record) {
+            return filter.matchesValue(record.get(position));
+        }
+
+        @Override
+        public Set<String> getFieldsRead() {
+            return filter.getFieldsRead();
+        }
+    }
+
+    /**
+     * Base class of compiled compound filters. Clause i is evaluated by
+     * fieldFilters[i] on the field at positions[i] if that position is not
+     * negative, and by filters[i] otherwise.
+     */
+    protected abstract static class Junction implements BatchRecordFilter,
+            FieldUsage {
+        protected final RecordFilter[] filters;
+        protected final FieldFilter[] fieldFilters;
+        protected final int[] positions;
+
+        public Junction(RecordFilter[] filters, FieldFilter[] fieldFilters,
+                int[] positions) {
+            this.filters = filters;
+            this.fieldFilters = fieldFilters;
+            this.positions = positions;
+        }
+
+        /** returns the result of clause i for the given record */
+        protected final boolean matches(int i, GenericRecord record) {
+            int position = positions[i];
+            if (position >= 0) {
+                return fieldFilters[i].matchesValue(record.get(position));
+            }
+
+            return filters[i].matches(record);
+        }
+
+        @Override
+        public Set<String> getFieldsRead() {
+            return FieldUsages.union(Arrays.asList(filters));
+        }
+    }
+
+    /** A compiled AndFilter. */
+    protected static class Conjunction extends Junction {
+        public Conjunction(RecordFilter[] filters, FieldFilter[] fieldFilters,
+                int[] positions) {
+            super(filters, fieldFilters, positions);
+        }
+
+        @Override
+        public boolean matches(GenericRecord record) {
+            for (int i = 0; i < positions.length; i++) {
+                if (!matches(i, record)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public int matchBatch(GenericRecord[] records, int[] selection,
+                int count) {
+            for (int i = 0; i < positions.length && count > 0; i++) {
+                count = matchBatch(i, records, selection, count);
+            }
+
+            return count;
+        }
+
+        /** narrows the selection to the records that match clause i */
+        protected int matchBatch(int i, GenericRecord[] records,
+                int[] selection, int count) {
+            int position = positions[i];
+            if (position < 0) {
+                return Batches.match(filters[i], records, selection, count);
+            }
+
+            FieldFilter fieldFilter = fieldFilters[i];
+            int selected = 0;
+            for (int j = 0; j < count; j++) {
+                int index = selection[j];
+                Object value = records[index].get(position);
+                if (fieldFilter.matchesValue(value)) {
+                    selection[selected++] = index;
+                }
+            }
+
+            return selected;
+        }
+    }
+
+    /** A compiled OrFilter. */
+    protected static class Disjunction extends Junction {
+        public Disjunction(RecordFilter[] filters, FieldFilter[] fieldFilters,
+                int[] positions) {
+            super(filters, fieldFilters, positions);
+        }
+
+        @Override
+        public boolean matches(GenericRecord record) {
+            for (int i = 0; i < positions.length; i++) {
+                if (matches(i, record)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public int matchBatch(GenericRecord[] records, int[] selection,
+                int count) {
+            int selected = 0;
+            for (int j = 0; j < count; j++) {
+                int index = selection[j];
+                if (matches(records[index])) {
+                    selection[selected++] = index;
+                }
+            }
+
+            return selected;
+        }
+    }
+}
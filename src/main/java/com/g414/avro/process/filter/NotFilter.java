@@ -17,17 +17,31 @@
  */
 package com.g414.avro.process.filter;
 
+import java.util.Set;
+
 import org.apache.avro.generic.GenericRecord;
 
+import com.g414.avro.process.BatchRecordFilter;
+import com.g414.avro.process.Batches;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.FieldUsages;
 import com.g414.avro.process.RecordFilter;
 
 /**
  * A compound filter that matches if the specified filter doesn't match.
  */
-public class NotFilter implements RecordFilter {
+public class NotFilter implements BatchRecordFilter, FieldUsage {
     /** delegate filter to be negated */
     protected final RecordFilter filter;
 
+    /** the arrays used by matchBatch() in the current thread */
+    protected final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
     /**
      * Constructs a new instance that delegates to the specified filter.
      */
@@ -35,9 +49,55 @@ public class NotFilter implements RecordFilter {
         this.filter = filter;
     }
 
+    /** returns the filter being negated */
+    public RecordFilter getFilter() {
+        return filter;
+    }
+
     /** @see RecordFilter#matches(GenericRecord) */
     @Override
     public boolean matches(GenericRecord record) {
         return !filter.matches(record);
     }
+
+    /** @see BatchRecordFilter#matchBatch(GenericRecord[], int[], int) */
+    @Override
+    public int matchBatch(GenericRecord[] records, int[] selection, int count) {
+        Scratch scratch = this.scratch.get();
+        scratch.ensureCapacity(count);
+
+        int[] work = scratch.work;
+        System.arraycopy(selection, 0, work, 0, count);
+        int n = Batches.match(filter, records, work, count);
+
+        int selected = 0;
+        for (int i = 0, j = 0; i < count; i++) {
+            if (j < n && work[j] == selection[i]) {
+                j++;
+            } else {
+                selection[selected++] = selection[i];
+            }
+        }
+
+        return selected;
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return FieldUsages.of(filter);
+    }
+
+    /** The arrays used by matchBatch(), reused across batches. */
+    protected static class Scratch {
+        /** the records passed to the delegate */
+        protected int[] work = new int[0];
+
+        /** grows the arrays for a selection of the given size */
+        protected void ensureCapacity(int count) {
+            if (work.length < count) {
+                work = new int[count];
+            }
+        }
+    }
 }
@@ -17,10 +17,13 @@
  */
 package com.g414.avro.process.filter;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.avro.generic.GenericRecord;
 
+import com.g414.avro.process.BatchRecordFilter;
+import com.g414.avro.process.Batches;
 import com.g414.avro.process.RecordFilter;
 import com.g414.avro.process.filter.CompoundFilterBase.CompoundFilterBuilder;
 
@@ -30,6 +33,14 @@ import com.g414.avro.process.filter.CompoundFilterBase.CompoundFilterBuilder;
  * delegates are thread-safe.
  */
 public class OrFilter extends CompoundFilterBase {
+    /** the arrays used by matchBatch() in the current thread */
+    protected final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
     /**
      * Constructs a new instance that delegates to the specified filters.
      */
@@ -37,9 +48,21 @@ public class OrFilter extends CompoundFilterBase {
         super(filters);
     }
 
+    /**
+     * Constructs a new instance that delegates to the specified filters,
+     * reordering them by sampled cost and pass rate if adaptive.
+     */
+    public OrFilter(List<RecordFilter> filters, boolean adaptive) {
+        super(filters, adaptive, false);
+    }
+
     /** @see RecordFilter#matches(GenericRecord) */
     @Override
     public boolean matches(GenericRecord record) {
+        if (clauseOrder != null) {
+            return clauseOrder.matches(record);
+        }
+
         for (RecordFilter filter : filters) {
             if (filter.matches(record)) {
                 return true;
@@ -49,13 +72,97 @@ public class OrFilter extends CompoundFilterBase {
         return false;
     }
 
+    /** @see BatchRecordFilter#matchBatch(GenericRecord[], int[], int) */
+    @Override
+    public int matchBatch(GenericRecord[] records, int[] selection, int count) {
+        Scratch scratch = this.scratch.get();
+        scratch.ensureCapacity(records.length, count);
+
+        boolean[] matched = scratch.matched;
+        int[] pending = scratch.pending;
+        int[] work = scratch.work;
+        System.arraycopy(selection, 0, pending, 0, count);
+        int pendingCount = count;
+        int[] order = (clauseOrder != null) ? clauseOrder.getOrder() : null;
+
+        try {
+            for (int c = 0; c < filters.size(); c++) {
+                if (pendingCount == 0) {
+                    break;
+                }
+
+                int clause = (order != null) ? order[c] : c;
+                long start = (order != null) ? System.nanoTime() : 0;
+
+                System.arraycopy(pending, 0, work, 0, pendingCount);
+                int n = Batches.match(filters.get(clause), records, work,
+                        pendingCount);
+
+                if (order != null) {
+                    clauseOrder.record(clause, pendingCount, n,
+                            System.nanoTime() - start);
+                }
+
+                for (int i = 0; i < n; i++) {
+                    matched[work[i]] = true;
+                }
+
+                int remaining = 0;
+                for (int i = 0; i < pendingCount; i++) {
+                    if (!matched[pending[i]]) {
+                        pending[remaining++] = pending[i];
+                    }
+                }
+                pendingCount = remaining;
+            }
+        } catch (RuntimeException e) {
+            Arrays.fill(matched, false);
+            throw e;
+        }
+
+        // keep the matched records, clearing their flags for the next batch
+        int selected = 0;
+        for (int i = 0; i < count; i++) {
+            int index = selection[i];
+            if (matched[index]) {
+                matched[index] = false;
+                selection[selected++] = index;
+            }
+        }
+
+        return selected;
+    }
+
+    /** The arrays used by matchBatch(), reused across batches. */
+    protected static class Scratch {
+        /** whether each record of the batch matched; all false between uses */
+        protected boolean[] matched = new boolean[0];
+
+        /** the selected records not yet matched */
+        protected int[] pending = new int[0];
+
+        /** the records passed to a delegate */
+        protected int[] work = new int[0];
+
+        /** grows the arrays for a batch of the given size and selection */
+        protected void ensureCapacity(int size, int count) {
+            if (matched.length < size) {
+                matched = new boolean[size];
+            }
+            if (pending.length < count) {
+                pending = new int[count];
+                work = new int[count];
+            }
+        }
+    }
+
     /** @see CompoundFilterBase.CompoundFilterBuilder */
     public static class OrFilterBuilder extends
             CompoundFilterBuilder<RecordFilter> {
         /** @see CompoundFilterBuilder#build() */
         @Override
         public OrFilter build() {
-            return new OrFilter(filters);
+            return new OrFilter(filters, adaptive);
         }
     }
 }
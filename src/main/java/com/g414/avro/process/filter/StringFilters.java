@@ -17,7 +17,13 @@
  */
 package com.g414.avro.process.filter;
 
-import org.apache.avro.generic.GenericRecord;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.avro.util.Utf8;
 
 import com.g414.avro.process.RecordFilter;
 
@@ -28,42 +34,58 @@ import com.g414.avro.process.RecordFilter;
 public class StringFilters {
     /** Create a new filter that returns != null and length() > 0 */
     public RecordFilter getNotEmpty(final String field) {
-        return new RecordFilter() {
+        return new FieldFilter(field) {
             @Override
-            public boolean matches(GenericRecord record) {
-                Object other = record.get(field);
+            public boolean matchesValue(Object fieldValue) {
+                Object other = fieldValue;
+
+                if (other instanceof Utf8) {
+                    return ((Utf8) other).getLength() > 0;
+                }
 
                 return (other != null) && (other.toString().length() > 0);
             }
+
+            @Override
+            public Boolean matchesNull() {
+                return Boolean.FALSE;
+            }
         };
     }
 
     /** Create a new filter that returns == null or length() > 0 */
     public RecordFilter getEmpty(final String field) {
-        return new RecordFilter() {
+        return new FieldFilter(field) {
             @Override
-            public boolean matches(GenericRecord record) {
-                Object other = record.get(field);
+            public boolean matchesValue(Object fieldValue) {
+                Object other = fieldValue;
+
+                if (other instanceof Utf8) {
+                    return ((Utf8) other).getLength() == 0;
+                }
 
                 return (other == null) || (other.toString().length() == 0);
             }
+
+            @Override
+            public Boolean matchesNull() {
+                return Boolean.TRUE;
+            }
         };
     }
 
     /** Create a new filter that returns startsWith(value) */
     public RecordFilter getStartsWith(final String field, final String value,
             final boolean ignoreCase) {
-        return new RecordFilter() {
-            private final String theValue = ignoreCase ? value.toLowerCase()
-                    : value;
-
+        return new Utf8Filter(field, value, ignoreCase) {
             @Override
-            public boolean matches(GenericRecord record) {
-                String other = record.get(field).toString();
-                if (ignoreCase) {
-                    other = other.toLowerCase();
-                }
+            protected boolean matchesBytes(byte[] bytes, int len,
+                    boolean fold) {
+                return Utf8Bytes.startsWith(bytes, len, theBytes, fold);
+            }
 
+            @Override
+            protected boolean matchesString(String other) {
                 return other.startsWith(theValue);
             }
         };
@@ -72,17 +94,15 @@ public class StringFilters {
     /** Create a new filter that returns endsWith(value) */
     public RecordFilter getEndsWith(final String field, final String value,
             final boolean ignoreCase) {
-        return new RecordFilter() {
-            private final String theValue = ignoreCase ? value.toLowerCase()
-                    : value;
-
+        return new Utf8Filter(field, value, ignoreCase) {
             @Override
-            public boolean matches(GenericRecord record) {
-                String other = record.get(field).toString();
-                if (ignoreCase) {
-                    other = other.toLowerCase();
-                }
+            protected boolean matchesBytes(byte[] bytes, int len,
+                    boolean fold) {
+                return Utf8Bytes.endsWith(bytes, len, theBytes, fold);
+            }
 
+            @Override
+            protected boolean matchesString(String other) {
                 return other.endsWith(theValue);
             }
         };
@@ -91,17 +111,15 @@ public class StringFilters {
     /** Create a new filter that returns contains(value) */
     public RecordFilter getContains(final String field, final String value,
             final boolean ignoreCase) {
-        return new RecordFilter() {
-            private final String theValue = ignoreCase ? value.toLowerCase()
-                    : value;
-
+        return new Utf8Filter(field, value, ignoreCase) {
             @Override
-            public boolean matches(GenericRecord record) {
-                String other = record.get(field).toString();
-                if (ignoreCase) {
-                    other = other.toLowerCase();
-                }
+            protected boolean matchesBytes(byte[] bytes, int len,
+                    boolean fold) {
+                return Utf8Bytes.indexOf(bytes, len, theBytes, fold) >= 0;
+            }
 
+            @Override
+            protected boolean matchesString(String other) {
                 return other.contains(theValue);
             }
         };
@@ -110,17 +128,15 @@ public class StringFilters {
     /** Create a new filter that returns compareTo(value) < 0 */
     public RecordFilter getLT(final String field, final String value,
             final boolean ignoreCase) {
-        return new RecordFilter() {
-            private final String theValue = ignoreCase ? value.toLowerCase()
-                    : value;
-
+        return new Utf8Filter(field, value, ignoreCase) {
             @Override
-            public boolean matches(GenericRecord record) {
-                String other = record.get(field).toString();
-                if (ignoreCase) {
-                    other = other.toLowerCase();
-                }
+            protected boolean matchesBytes(byte[] bytes, int len,
+                    boolean fold) {
+                return Utf8Bytes.compare(bytes, len, theBytes, fold) < 0;
+            }
 
+            @Override
+            protected boolean matchesString(String other) {
                 return other.compareTo(theValue) < 0;
             }
         };
@@ -129,17 +145,15 @@ public class StringFilters {
     /** Create a new filter that returns compareTo(value) <= 0 */
     public RecordFilter getLEQ(final String field, final String value,
             final boolean ignoreCase) {
-        return new RecordFilter() {
-            private final String theValue = ignoreCase ? value.toLowerCase()
-                    : value;
-
+        return new Utf8Filter(field, value, ignoreCase) {
             @Override
-            public boolean matches(GenericRecord record) {
-                String other = record.get(field).toString();
-                if (ignoreCase) {
-                    other = other.toLowerCase();
-                }
+            protected boolean matchesBytes(byte[] bytes, int len,
+                    boolean fold) {
+                return Utf8Bytes.compare(bytes, len, theBytes, fold) <= 0;
+            }
 
+            @Override
+            protected boolean matchesString(String other) {
                 return other.compareTo(theValue) <= 0;
             }
         };
@@ -148,17 +162,15 @@ public class StringFilters {
     /** Create a new filter that returns compareTo(value) > 0 */
     public RecordFilter getGT(final String field, final String value,
             final boolean ignoreCase) {
-        return new RecordFilter() {
-            private final String theValue = ignoreCase ? value.toLowerCase()
-                    : value;
-
+        return new Utf8Filter(field, value, ignoreCase) {
             @Override
-            public boolean matches(GenericRecord record) {
-                String other = record.get(field).toString();
-                if (ignoreCase) {
-                    other = other.toLowerCase();
-                }
+            protected boolean matchesBytes(byte[] bytes, int len,
+                    boolean fold) {
+                return Utf8Bytes.compare(bytes, len, theBytes, fold) > 0;
+            }
 
+            @Override
+            protected boolean matchesString(String other) {
                 return other.compareTo(theValue) > 0;
             }
         };
@@ -167,17 +179,15 @@ public class StringFilters {
     /** Create a new filter that returns compareTo(value) >= 0 */
     public RecordFilter getGEQ(final String field, final String value,
             final boolean ignoreCase) {
-        return new RecordFilter() {
-            private final String theValue = ignoreCase ? value.toLowerCase()
-                    : value;
-
+        return new Utf8Filter(field, value, ignoreCase) {
             @Override
-            public boolean matches(GenericRecord record) {
-                String other = record.get(field).toString();
-                if (ignoreCase) {
-                    other = other.toLowerCase();
-                }
+            protected boolean matchesBytes(byte[] bytes, int len,
+                    boolean fold) {
+                return Utf8Bytes.compare(bytes, len, theBytes, fold) >= 0;
+            }
 
+            @Override
+            protected boolean matchesString(String other) {
                 return other.compareTo(theValue) >= 0;
             }
         };
@@ -186,17 +196,15 @@ public class StringFilters {
     /** Create a new filter that returns equals(value) */
     public RecordFilter getEQ(final String field, final String value,
             final boolean ignoreCase) {
-        return new RecordFilter() {
-            private final String theValue = ignoreCase ? value.toLowerCase()
-                    : value;
-
+        return new Utf8Filter(field, value, ignoreCase) {
             @Override
-            public boolean matches(GenericRecord record) {
-                String other = record.get(field).toString();
-                if (ignoreCase) {
-                    other = other.toLowerCase();
-                }
+            protected boolean matchesBytes(byte[] bytes, int len,
+                    boolean fold) {
+                return Utf8Bytes.equals(bytes, len, theBytes, fold);
+            }
 
+            @Override
+            protected boolean matchesString(String other) {
                 return other.equals(theValue);
             }
         };
@@ -205,19 +213,173 @@ public class StringFilters {
     /** Create a new filter that returns !equals(value) */
     public RecordFilter getNE(final String field, final String value,
             final boolean ignoreCase) {
-        return new RecordFilter() {
-            private final String theValue = ignoreCase ? value.toLowerCase()
-                    : value;
+        return new Utf8Filter(field, value, ignoreCase) {
+            @Override
+            protected boolean matchesBytes(byte[] bytes, int len,
+                    boolean fold) {
+                return !Utf8Bytes.equals(bytes, len, theBytes, fold);
+            }
+
+            @Override
+            protected boolean matchesString(String other) {
+                return !other.equals(theValue);
+            }
+        };
+    }
+
+    /**
+     * Create a new filter that returns true if the value is in the given
+     * collection; the work per record does not depend on its size.
+     */
+    public RecordFilter getIn(final String field,
+            final Collection<String> values, final boolean ignoreCase) {
+        final Set<Utf8> keys = new HashSet<Utf8>();
+        final Set<String> strings = new HashSet<String>();
+
+        for (String value : values) {
+            String theValue = ignoreCase ? value.toLowerCase() : value;
+            keys.add(new Utf8(theValue));
+            strings.add(theValue);
+        }
+
+        return new FieldFilter(field) {
+            private final ThreadLocal<Utf8> folded = new ThreadLocal<Utf8>() {
+                @Override
+                protected Utf8 initialValue() {
+                    return new Utf8();
+                }
+            };
 
             @Override
-            public boolean matches(GenericRecord record) {
-                String other = record.get(field).toString();
+            public boolean matchesValue(Object fieldValue) {
+                if (fieldValue instanceof Utf8) {
+                    Utf8 utf8 = (Utf8) fieldValue;
+                    byte[] bytes = utf8.getBytes();
+                    int len = utf8.getLength();
+
+                    if (!ignoreCase) {
+                        return keys.contains(utf8);
+                    }
+                    if (Utf8Bytes.FOLDS_ASCII
+                            && Utf8Bytes.isAscii(bytes, len)) {
+                        Utf8 key = folded.get().setLength(len);
+                        byte[] keyBytes = key.getBytes();
+                        for (int i = 0; i < len; i++) {
+                            keyBytes[i] = (byte) Utf8Bytes.fold(bytes[i], true);
+                        }
+
+                        return keys.contains(key);
+                    }
+                }
+
+                String other = fieldValue.toString();
                 if (ignoreCase) {
                     other = other.toLowerCase();
                 }
 
-                return !other.equals(theValue);
+                return strings.contains(other);
             }
         };
     }
+
+    /**
+     * Create a new filter that returns true if the value contains any of the
+     * given values, using an AhoCorasick automaton; the work per record is
+     * linear in the length of the field value, whatever the number of values.
+     */
+    public RecordFilter getContainsAny(final String field,
+            final Collection<String> values, final boolean ignoreCase) {
+        List<byte[]> patterns = new ArrayList<byte[]>();
+        for (String value : values) {
+            patterns.add(Utf8Bytes.encode(ignoreCase ? value.toLowerCase()
+                    : value));
+        }
+
+        final AhoCorasick automaton = new AhoCorasick(patterns);
+
+        return new FieldFilter(field) {
+            @Override
+            public boolean matchesValue(Object fieldValue) {
+                if (fieldValue instanceof Utf8) {
+                    Utf8 utf8 = (Utf8) fieldValue;
+                    byte[] bytes = utf8.getBytes();
+                    int len = utf8.getLength();
+
+                    if (!ignoreCase) {
+                        return automaton.matches(bytes, len, false);
+                    }
+                    if (Utf8Bytes.FOLDS_ASCII
+                            && Utf8Bytes.isAscii(bytes, len)) {
+                        return automaton.matches(bytes, len, true);
+                    }
+                }
+
+                String other = fieldValue.toString();
+                if (ignoreCase) {
+                    other = other.toLowerCase();
+                }
+
+                byte[] bytes = Utf8Bytes.encode(other);
+
+                return automaton.matches(bytes, bytes.length, false);
+            }
+        };
+    }
+
+    /**
+     * Base class of the filters that compare a field against a String value.
+     * Utf8 field values are compared without decoding them, against the value
+     * encoded once; if case is ignored, this requires the field value to be
+     * ASCII (see Utf8Bytes), and other values are decoded and lower-cased.
+     */
+    protected abstract static class Utf8Filter extends FieldFilter {
+        /** the value, lower-cased if case is ignored */
+        protected final String theValue;
+
+        /** UTF-8 encoding of theValue */
+        protected final byte[] theBytes;
+
+        protected final boolean ignoreCase;
+
+        public Utf8Filter(String field, String value, boolean ignoreCase) {
+            super(field);
+            this.theValue = ignoreCase ? value.toLowerCase() : value;
+            this.theBytes = Utf8Bytes.encode(theValue);
+            this.ignoreCase = ignoreCase;
+        }
+
+        /** @see FieldFilter#matchesValue(Object) */
+        @Override
+        public boolean matchesValue(Object fieldValue) {
+            if (fieldValue instanceof Utf8) {
+                Utf8 utf8 = (Utf8) fieldValue;
+                byte[] bytes = utf8.getBytes();
+                int len = utf8.getLength();
+
+                if (!ignoreCase) {
+                    return matchesBytes(bytes, len, false);
+                }
+                if (Utf8Bytes.FOLDS_ASCII && Utf8Bytes.isAscii(bytes, len)) {
+                    return matchesBytes(bytes, len, true);
+                }
+            }
+
+            String other = fieldValue.toString();
+            if (ignoreCase) {
+                other = other.toLowerCase();
+            }
+
+            return matchesString(other);
+        }
+
+        /**
+         * Matches the UTF-8 encoded field value, whose ASCII letters are to be
+         * lower-cased if fold is set.
+         */
+        protected abstract boolean matchesBytes(byte[] bytes, int len,
+                boolean fold);
+
+        /** Matches the field value, lower-cased if case is ignored. */
+        protected abstract boolean matchesString(String other);
+    }
 }
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.filter;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Operations on UTF-8 encoded strings, as held by Utf8 values, which give the
+ * same results as the corresponding String methods on the decoded strings
+ * without decoding them. Operations taking a fold flag first lower-case the
+ * ASCII letters of the encoded string; this is only equivalent to
+ * String.toLowerCase() for ASCII strings, and only if FOLDS_ASCII is set.
+ */
+public class Utf8Bytes {
+    /**
+     * true if String.toLowerCase() maps the ASCII letters as expected in the
+     * default locale (which is not the case in Turkish, for example)
+     */
+    public static final boolean FOLDS_ASCII = "i".equals("I".toLowerCase())
+            && "abcdefghijklmnopqrstuvwxyz".equals("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+                    .toLowerCase());
+
+    /** Returns the UTF-8 encoding of the given string. */
+    public static byte[] encode(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** returns true if the first len bytes are all ASCII */
+    public static boolean isAscii(byte[] bytes, int len) {
+        for (int i = 0; i < len; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** returns the byte, lower-cased if fold is set and it is A-Z */
+    protected static int fold(byte b, boolean fold) {
+        return (fold && b >= 'A' && b <= 'Z') ? b + ('a' - 'A') : b;
+    }
+
+    /** @see String#startsWith(String) */
+    public static boolean startsWith(byte[] bytes, int len, byte[] prefix,
+            boolean fold) {
+        return len >= prefix.length
+                && regionMatches(bytes, 0, prefix, 0, fold);
+    }
+
+    /** @see String#endsWith(String) */
+    public static boolean endsWith(byte[] bytes, int len, byte[] suffix,
+            boolean fold) {
+        return len >= suffix.length
+                && regionMatches(bytes, len - suffix.length, suffix, 0,
+                        fold);
+    }
+
+    /** @see String#indexOf(String) (returns a byte offset) */
+    public static int indexOf(byte[] bytes, int len, byte[] value,
+            boolean fold) {
+        if (value.length == 0) {
+            return 0;
+        }
+
+        int first = value[0];
+        int last = len - value.length;
+
+        for (int i = 0; i <= last; i++) {
+            if (fold(bytes[i], fold) == first
+                    && regionMatches(bytes, i + 1, value, 1, fold)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * returns true if the bytes from off equal value[from, value.length), which
+     * the caller has checked to be in bounds
+     */
+    protected static boolean regionMatches(byte[] bytes, int off,
+            byte[] value, int from, boolean fold) {
+        for (int i = from; i < value.length; i++) {
+            if (fold(bytes[off + i - from], fold) != value[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** @see String#equals(Object) */
+    public static boolean equals(byte[] bytes, int len, byte[] value,
+            boolean fold) {
+        return len == value.length
+                && regionMatches(bytes, 0, value, 0, fold);
+    }
+
+    /**
+     * Compares as String.compareTo() would, returning a number with the same
+     * sign. UTF-8 byte order is code point order, which differs from the
+     * UTF-16 order of String only between supplementary characters (lead byte
+     * 0xF0 and up) and characters from U+E000 (lead bytes 0xEE and 0xEF).
+     */
+    public static int compare(byte[] bytes, int len, byte[] value,
+            boolean fold) {
+        int n = Math.min(len, value.length);
+
+        for (int i = 0; i < n; i++) {
+            int a = fold(bytes[i], fold) & 0xff;
+            int b = value[i] & 0xff;
+
+            if (a != b) {
+                if (a >= 0xee && b >= 0xee && (a >= 0xf0) != (b >= 0xf0)) {
+                    return b - a;
+                }
+
+                return a - b;
+            }
+        }
+
+        return len - value.length;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.handler;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.avro.generic.GenericRecord;
+
+import com.g414.avro.collect.BloomFilter;
+import com.g414.avro.collect.Hashing;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.MergeableHandler;
+import com.g414.avro.process.ProcessingException;
+import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
+
+/**
+ * A RecordHandler that adds the values of a field to a BloomFilter, a compact
+ * alternative to DistinctValues when the values are only needed for testing
+ * membership (see BloomMembershipFilter). Null values are not added.
+ * Thread-safe.
+ */
+public class BloomFilterHandler implements MergeableHandler, FieldUsage,
+        RecordRetention {
+    /** field to look for in input */
+    protected final String field;
+
+    /** the filter being built */
+    protected final BloomFilter filter;
+
+    /**
+     * Creates a new instance that collects the specified field into a filter
+     * sized for the given number of distinct values at the given
+     * false-positive rate.
+     */
+    public BloomFilterHandler(String field, long expectedInsertions,
+            double fpp) {
+        this(field, new BloomFilter(expectedInsertions, fpp));
+    }
+
+    /**
+     * Creates a new instance that collects the specified field into the given
+     * filter.
+     */
+    public BloomFilterHandler(String field, BloomFilter filter) {
+        this.field = field;
+        this.filter = filter;
+    }
+
+    /** @see RecordHandler#start() */
+    @Override
+    public void start() {
+    }
+
+    /** @see RecordHandler#handle(GenericRecord) */
+    @Override
+    public void handle(GenericRecord record) throws ProcessingException {
+        Object value = record.get(field);
+
+        if (value != null) {
+            filter.add(Hashing.hash64(value));
+        }
+    }
+
+    /** @see RecordHandler#finish() */
+    @Override
+    public void finish() {
+    }
+
+    /** @see MergeableHandler#merge(RecordHandler) */
+    @Override
+    public void merge(RecordHandler other) {
+        if (!(other instanceof BloomFilterHandler)) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + other.getClass().getName() + " into BloomFilterHandler");
+        }
+
+        filter.merge(((BloomFilterHandler) other).filter);
+    }
+
+    /** returns the filter, which may be saved with BloomFilter#write(File) */
+    public BloomFilter getBloomFilter() {
+        return filter;
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return Collections.singleton(field);
+    }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
+}
@@ -20,17 +20,27 @@ package com.g414.avro.process.handler;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.avro.generic.GenericRecord;
 
+import com.g414.avro.process.BatchRecordHandler;
+import com.g414.avro.process.Batches;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.FieldUsages;
+import com.g414.avro.process.MergeableHandler;
 import com.g414.avro.process.ProcessingException;
 import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
+import com.g414.avro.process.RecordRetentions;
 
 /**
  * RecordHandler instance that delegates to multiple handlers. Thread-safe if
- * the underlying delegates are thread-safe.
+ * the underlying delegates are thread-safe. Mergeable if the underlying
+ * delegates are mergeable.
  */
-public class CompoundHandler implements RecordHandler {
+public class CompoundHandler implements MergeableHandler, BatchRecordHandler,
+        FieldUsage, RecordRetention {
     /** collection of delegate handlers */
     protected final List<RecordHandler> handlers;
 
@@ -43,6 +53,11 @@ public class CompoundHandler implements RecordHandler {
         this.handlers = Collections.unmodifiableList(handlers);
     }
 
+    /** returns the delegate handlers */
+    public List<RecordHandler> getHandlers() {
+        return handlers;
+    }
+
     /** @see RecordHandler#start() */
     @Override
     public void start() {
@@ -59,6 +74,15 @@ public class CompoundHandler implements RecordHandler {
         }
     }
 
+    /** @see BatchRecordHandler#handleBatch(GenericRecord[], int[], int) */
+    @Override
+    public void handleBatch(GenericRecord[] records, int[] selection, int count)
+            throws ProcessingException {
+        for (RecordHandler handler : handlers) {
+            Batches.handle(handler, records, selection, count);
+        }
+    }
+
     /** @see RecordHandler#finish() */
     @Override
     public void finish() {
@@ -67,6 +91,37 @@ public class CompoundHandler implements RecordHandler {
         }
     }
 
+    /** @see MergeableHandler#merge(RecordHandler) */
+    @Override
+    public void merge(RecordHandler other) {
+        if (!(other instanceof CompoundHandler)) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + other.getClass().getName() + " into CompoundHandler");
+        }
+
+        List<RecordHandler> others = ((CompoundHandler) other).handlers;
+        if (others.size() != handlers.size()) {
+            throw new IllegalArgumentException(
+                    "Cannot merge CompoundHandlers of different sizes");
+        }
+
+        for (int i = 0; i < handlers.size(); i++) {
+            RecordHandler handler = handlers.get(i);
+            if (!(handler instanceof MergeableHandler)) {
+                throw new IllegalArgumentException("Cannot merge "
+                        + handler.getClass().getName());
+            }
+
+            ((MergeableHandler) handler).merge(others.get(i));
+        }
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return FieldUsages.union(handlers);
+    }
+
     /**
      * Builder class for creating CompoundHandler instances.
      */
@@ -81,4 +136,10 @@ public class CompoundHandler implements RecordHandler {
             return new CompoundHandler(handlers);
         }
     }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return RecordRetentions.anyRetains(handlers);
+    }
 }
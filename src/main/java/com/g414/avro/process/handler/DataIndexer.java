@@ -21,19 +21,23 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
+import java.util.Collections;
+import java.util.Set;
 
 import org.apache.avro.generic.GenericRecord;
 
 import com.g414.avro.file.Tell;
+import com.g414.avro.process.FieldUsage;
 import com.g414.avro.process.ProcessingException;
 import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
 
 /**
  * Indexes an Avro Input stream, recording the position of each record to the
  * specified outputstream. Not thread-safe because writing to the output stream
  * is not synchronized.
  */
-public class DataIndexer implements RecordHandler {
+public class DataIndexer implements RecordHandler, FieldUsage, RecordRetention {
     /** Tell to use as source of record positions */
     protected Tell reader;
 
@@ -84,4 +88,16 @@ public class DataIndexer implements RecordHandler {
         } catch (IOException ignored) {
         }
     }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return Collections.emptySet();
+    }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
 }
@@ -23,6 +23,7 @@ import org.apache.avro.generic.GenericRecord;
 
 import com.g414.avro.process.ProcessingException;
 import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
 
 /**
  * A trivial RecordHandler that writes all records to the specified writer as
@@ -30,7 +31,7 @@ import com.g414.avro.process.RecordHandler;
  * text field qualification, thus delimiter should be chosen wisely. Not
  * thread-safe as writing to the writer is not known to be thread-safe.
  */
-public class DelimitedTextFileWriter implements RecordHandler {
+public class DelimitedTextFileWriter implements RecordHandler, RecordRetention {
     protected final PrintWriter writer;
     protected final String delim;
 
@@ -69,4 +70,10 @@ public class DelimitedTextFileWriter implements RecordHandler {
     public void finish() {
         writer.close();
     }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
 }
@@ -17,35 +17,100 @@
  */
 package com.g414.avro.process.handler;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
 
 import org.apache.avro.generic.GenericRecord;
 
+import com.g414.avro.collect.SpillingCountMap;
+import com.g414.avro.collect.StripedCountMap;
+import com.g414.avro.collect.TypedCountMap;
+import com.g414.avro.collect.ValueCodec;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.MergeableHandler;
 import com.g414.avro.process.ProcessingException;
 import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
+import com.g414.avro.process.Values;
 
 /**
  * A RecordHandler used for collecting distinct values from a collection of
- * records. Thread-safe.
+ * records, with counts kept in a StripedCountMap. Thread-safe.
+ *
+ * In thread-local mode, each thread counts into a private map, without any
+ * contention even when a few hot values dominate; the private maps are
+ * merged into the shared one by finish() and by the methods returning
+ * results, which should therefore only be called once processing is
+ * finished.
+ *
+ * With a memory budget, values are counted in a SpillingCountMap (under a
+ * single lock), which spills its counts to temporary files once their
+ * estimated size passes the budget, and merges them when results are
+ * requested; getTopValues() then needs memory only for the values returned.
  */
-public class DistinctValues<T> implements RecordHandler {
+public class DistinctValues<T> implements MergeableHandler, FieldUsage,
+        RecordRetention {
     /** Collection of all values seen with counts */
-    protected final ConcurrentHashMap<T, AtomicInteger> values = new ConcurrentHashMap<T, AtomicInteger>();
+    protected final StripedCountMap<T> values = new StripedCountMap<T>() {
+        @Override
+        protected T copyKey(T key) {
+            // the value may be reused by the next record, so keep a copy
+            return Values.copy(key);
+        }
+    };
 
     /** field to look for in input */
     protected final String field;
 
+    /** whether each thread counts into a private map */
+    protected final boolean threadLocal;
+
+    /** the private maps of all threads, if thread-local */
+    protected final List<TypedCountMap<T>> partials = new ArrayList<TypedCountMap<T>>();
+
+    /** the private map of the current thread, if thread-local */
+    protected final ThreadLocal<TypedCountMap<T>> partial = new ThreadLocal<TypedCountMap<T>>();
+
+    /** the counts, if spilling under a memory budget */
+    protected final SpillingCountMap<T> spilling;
+
     /**
      * Creates a new instance that collects the specified field.
      */
     public DistinctValues(String field) {
+        this(field, false);
+    }
+
+    /**
+     * Creates a new instance that collects the specified field, in
+     * thread-local mode if threadLocal is set.
+     */
+    public DistinctValues(String field, boolean threadLocal) {
+        this.field = field;
+        this.threadLocal = threadLocal;
+        this.spilling = null;
+    }
+
+    /**
+     * Creates a new instance that collects the specified field, spilling its
+     * counts to temporary files, encoding values with the given codec, once
+     * their estimated size passes the given number of bytes.
+     */
+    public DistinctValues(String field, ValueCodec<T> codec,
+            long memoryBudget) {
         this.field = field;
+        this.threadLocal = false;
+        this.spilling = new SpillingCountMap<T>(codec, memoryBudget, null) {
+            @Override
+            protected T copyKey(T key) {
+                return Values.copy(key);
+            }
+        };
     }
 
     /** @see RecordHandler#start() */
@@ -59,26 +124,114 @@ public class DistinctValues<T> implements RecordHandler {
     public void handle(GenericRecord record) throws ProcessingException {
         T value = (T) record.get(field);
 
-        AtomicInteger previous = values
-                .putIfAbsent(value, new AtomicInteger(1));
-        if (previous != null) {
-            previous.incrementAndGet();
+        if (spilling != null) {
+            synchronized (spilling) {
+                try {
+                    spilling.increment(value);
+                } catch (IOException e) {
+                    throw new ProcessingException(
+                            "Exception while spilling values: "
+                                    + e.getMessage(), e);
+                }
+            }
+        } else if (threadLocal) {
+            getPartial().increment(value);
+        } else {
+            values.increment(value);
         }
     }
 
     /** @see RecordHandler#finish() */
     @Override
     public void finish() {
+        mergePartials();
+    }
+
+    /** @see MergeableHandler#merge(RecordHandler) */
+    @Override
+    public void merge(RecordHandler other) {
+        if (!(other instanceof DistinctValues)) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + other.getClass().getName() + " into DistinctValues");
+        }
+
+        @SuppressWarnings("unchecked")
+        DistinctValues<T> theOther = (DistinctValues<T>) other;
+
+        theOther.mergePartials();
+        if (spilling == null && theOther.spilling == null) {
+            values.addAll(theOther.values);
+            return;
+        }
+
+        try {
+            if (theOther.spilling == null) {
+                synchronized (spilling) {
+                    for (Map.Entry<T, Long> entry : theOther.values
+                            .getCounts().entrySet()) {
+                        spilling.add(entry.getKey(), entry.getValue());
+                    }
+                }
+            } else if (spilling == null) {
+                synchronized (theOther.spilling) {
+                    SpillingCountMap<T>.Cursor cursor = theOther.spilling
+                            .cursor();
+                    try {
+                        while (cursor.next()) {
+                            values.add(cursor.getKey(), cursor.getCount());
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            } else {
+                synchronized (spilling) {
+                    synchronized (theOther.spilling) {
+                        spilling.addAll(theOther.spilling);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
      * Returns the list of distinct values seen by this instance.
      */
     public List<T> getDistinctValues() {
-        List<T> outValues = new ArrayList<T>();
-        outValues.addAll(values.keySet());
+        mergePartials();
+
+        if (spilling != null) {
+            synchronized (spilling) {
+                try {
+                    return Collections.unmodifiableList(spilling.getKeys());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
 
-        return Collections.unmodifiableList(outValues);
+        return Collections.unmodifiableList(values.getKeys());
+    }
+
+    /**
+     * Returns the (up to) n values seen most often, most frequent first.
+     */
+    public List<T> getTopValues(int n) {
+        mergePartials();
+
+        if (spilling != null) {
+            synchronized (spilling) {
+                try {
+                    return spilling.getTopKeys(n);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        return values.getTopKeys(n);
     }
 
     /**
@@ -86,11 +239,71 @@ public class DistinctValues<T> implements RecordHandler {
      * seen during processing.
      */
     public Map<T, Integer> getValueCounts() {
+        mergePartials();
+
+        Map<T, Long> counts;
+        if (spilling != null) {
+            synchronized (spilling) {
+                try {
+                    counts = spilling.getCounts();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        } else {
+            counts = values.getCounts();
+        }
+
         Map<T, Integer> outMap = new HashMap<T, Integer>();
-        for (Map.Entry<T, AtomicInteger> entry : values.entrySet()) {
+        for (Map.Entry<T, Long> entry : counts.entrySet()) {
             outMap.put(entry.getKey(), entry.getValue().intValue());
         }
 
         return Collections.unmodifiableMap(outMap);
     }
+
+    /** Merges the private maps of all threads into the shared map. */
+    protected void mergePartials() {
+        if (!threadLocal) {
+            return;
+        }
+
+        synchronized (partials) {
+            for (TypedCountMap<T> map : partials) {
+                values.addAll(map);
+                map.clear();
+            }
+        }
+    }
+
+    /** returns the private map of the current thread */
+    protected TypedCountMap<T> getPartial() {
+        TypedCountMap<T> map = partial.get();
+        if (map == null) {
+            map = new TypedCountMap<T>() {
+                @Override
+                protected T copyKey(T key) {
+                    return Values.copy(key);
+                }
+            };
+            partial.set(map);
+            synchronized (partials) {
+                partials.add(map);
+            }
+        }
+
+        return map;
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return Collections.singleton(field);
+    }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
 }
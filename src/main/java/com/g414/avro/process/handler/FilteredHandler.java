@@ -17,23 +17,42 @@
  */
 package com.g414.avro.process.handler;
 
+import java.util.Set;
+
 import org.apache.avro.generic.GenericRecord;
 
+import com.g414.avro.process.BatchRecordHandler;
+import com.g414.avro.process.Batches;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.FieldUsages;
+import com.g414.avro.process.MergeableHandler;
 import com.g414.avro.process.ProcessingException;
 import com.g414.avro.process.RecordFilter;
 import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
+import com.g414.avro.process.RecordRetentions;
 
 /**
  * RecordHandler instance that delegates matching records to a specified
- * handler. Thread-safe if the underlying delegates are thread-safe.
+ * handler. Thread-safe if the underlying delegates are thread-safe. Mergeable
+ * if the delegate handler is mergeable.
  */
-public class FilteredHandler implements RecordHandler {
+public class FilteredHandler implements MergeableHandler, BatchRecordHandler,
+        FieldUsage, RecordRetention {
     /** filter to use */
     protected final RecordFilter filter;
 
     /** delegate handler */
     protected final RecordHandler handler;
 
+    /** the arrays used by handleBatch() in the current thread */
+    protected final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
     /**
      * Create a new CompoundHandler that filters matching records to a specified
      * handler.
@@ -57,9 +76,67 @@ public class FilteredHandler implements RecordHandler {
         }
     }
 
+    /** @see BatchRecordHandler#handleBatch(GenericRecord[], int[], int) */
+    @Override
+    public void handleBatch(GenericRecord[] records, int[] selection, int count)
+            throws ProcessingException {
+        if (filter != null) {
+            Scratch scratch = this.scratch.get();
+            scratch.ensureCapacity(count);
+
+            System.arraycopy(selection, 0, scratch.selection, 0, count);
+            selection = scratch.selection;
+            count = Batches.match(filter, records, selection, count);
+        }
+
+        Batches.handle(handler, records, selection, count);
+    }
+
     /** @see RecordHandler#finish() */
     @Override
     public void finish() {
         handler.finish();
     }
-}
\ No newline at end of file
+
+    /** @see MergeableHandler#merge(RecordHandler) */
+    @Override
+    public void merge(RecordHandler other) {
+        if (!(other instanceof FilteredHandler)) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + other.getClass().getName() + " into FilteredHandler");
+        }
+
+        if (!(handler instanceof MergeableHandler)) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + handler.getClass().getName());
+        }
+
+        ((MergeableHandler) handler).merge(((FilteredHandler) other).handler);
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return FieldUsages.union(FieldUsages.of(filter), FieldUsages
+                .of(handler));
+    }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return RecordRetentions.retains(handler);
+    }
+
+    /** The arrays used by handleBatch(), reused across batches. */
+    protected static class Scratch {
+        /** the selected records passed to the filter */
+        protected int[] selection = new int[0];
+
+        /** grows the arrays for a selection of the given size */
+        protected void ensureCapacity(int count) {
+            if (selection.length < count) {
+                selection = new int[count];
+            }
+        }
+    }
+}
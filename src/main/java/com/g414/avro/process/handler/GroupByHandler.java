@@ -0,0 +1,873 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.handler;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
+
+import com.g414.avro.collect.BytesIndexMap;
+import com.g414.avro.collect.Hashing;
+import com.g414.avro.collect.HyperLogLog;
+import com.g414.avro.collect.TDigest;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.MergeableHandler;
+import com.g414.avro.process.ProcessingException;
+import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
+import com.g414.avro.process.Values;
+
+/**
+ * A RecordHandler that groups records by the values of a tuple of fields and
+ * computes several aggregates of each group in one pass, like SQL's GROUP
+ * BY: the number of records, the sum, minimum, maximum and mean of numeric
+ * fields, and estimates of the number of distinct values (HyperLogLog) and of
+ * percentiles (TDigest) of fields.
+ *
+ * The values of the group fields of each record are encoded end to end into
+ * a reusable buffer, which is hashed once and looked up in a BytesIndexMap
+ * giving the dense id of the group; the aggregates are kept in primitive
+ * arrays indexed by that id, so that handling a record of a known group
+ * allocates nothing. Values that denote the same key group alike whatever
+ * their representation (a Utf8 and the equal String, or an int and the equal
+ * long); each group is reported with the values of its first record.
+ *
+ * Numeric aggregates skip null values; sums, minimums and maximums are Longs
+ * for integer fields and Doubles for floating-point fields, and null for
+ * groups without values. A value that is not a number fails the record with
+ * a ProcessingException.
+ *
+ * Thread-safe: each thread aggregates into a private table, without
+ * contention; the tables are merged by finish() and by the methods returning
+ * results, which should therefore only be called once processing is
+ * finished.
+ */
+public class GroupByHandler implements MergeableHandler, FieldUsage,
+        RecordRetention {
+    /** precision of the HyperLogLog sketches of distinct counts by default */
+    public static final int DEFAULT_DISTINCT_PRECISION = 10;
+
+    /** the kinds of aggregates */
+    public enum Kind {
+        COUNT, SUM, MIN, MAX, MEAN, DISTINCT_COUNT, QUANTILES
+    }
+
+    /** tags of the encoded group values */
+    protected static final byte NULL_TAG = 0;
+    protected static final byte STRING_TAG = 1;
+    protected static final byte INTEGRAL_TAG = 2;
+    protected static final byte FLOATING_TAG = 3;
+    protected static final byte BOOLEAN_TAG = 4;
+    protected static final byte BYTES_TAG = 5;
+    protected static final byte OTHER_TAG = 6;
+
+    /** fields to group by */
+    protected final String[] groupFields;
+
+    /** aggregates to compute */
+    protected final Aggregate[] aggregates;
+
+    /** the merged table */
+    protected final Table table;
+
+    /** the private tables of all threads */
+    protected final List<Table> partials = new ArrayList<Table>();
+
+    /** the private table of the current thread */
+    protected final ThreadLocal<Table> partial = new ThreadLocal<Table>();
+
+    /**
+     * Creates a new instance that computes the given aggregates of the
+     * records grouped by the given fields (no fields: all records form one
+     * group).
+     */
+    public GroupByHandler(List<String> groupFields,
+            List<Aggregate> aggregates) {
+        Set<String> names = new LinkedHashSet<String>();
+        for (Aggregate aggregate : aggregates) {
+            if (!names.add(aggregate.getName())) {
+                throw new IllegalArgumentException("duplicate aggregate: "
+                        + aggregate.getName());
+            }
+        }
+
+        this.groupFields = groupFields.toArray(new String[groupFields.size()]);
+        this.aggregates = aggregates.toArray(new Aggregate[aggregates.size()]);
+        this.table = new Table();
+    }
+
+    /** @see RecordHandler#start() */
+    @Override
+    public void start() {
+    }
+
+    /** @see RecordHandler#handle(GenericRecord) */
+    @Override
+    public void handle(GenericRecord record) throws ProcessingException {
+        Table theTable = getPartial();
+        int group = theTable.find(record);
+
+        theTable.counts[group] += 1;
+        for (int i = 0; i < aggregates.length; i++) {
+            String field = aggregates[i].field;
+            if (field != null) {
+                theTable.columns[i].add(group, record.get(field));
+            }
+        }
+    }
+
+    /** @see RecordHandler#finish() */
+    @Override
+    public void finish() {
+        mergePartials();
+    }
+
+    /** @see MergeableHandler#merge(RecordHandler) */
+    @Override
+    public void merge(RecordHandler other) {
+        if (!(other instanceof GroupByHandler)) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + other.getClass().getName() + " into GroupByHandler");
+        }
+
+        GroupByHandler theOther = (GroupByHandler) other;
+        if (!Arrays.equals(groupFields, theOther.groupFields)
+                || !getAggregateNames().equals(theOther.getAggregateNames())) {
+            throw new IllegalArgumentException(
+                    "Cannot merge different groupings or aggregates");
+        }
+
+        theOther.mergePartials();
+        synchronized (partials) {
+            table.addAll(theOther.table);
+        }
+    }
+
+    /** returns the names of the aggregates, in order */
+    public List<String> getAggregateNames() {
+        List<String> names = new ArrayList<String>();
+        for (Aggregate aggregate : aggregates) {
+            names.add(aggregate.getName());
+        }
+
+        return Collections.unmodifiableList(names);
+    }
+
+    /** returns the number of groups seen */
+    public int getGroupCount() {
+        mergePartials();
+
+        synchronized (partials) {
+            return table.groups.size();
+        }
+    }
+
+    /**
+     * Returns a map of each group (the list of the values of the group
+     * fields) to a map of the names of the aggregates (see
+     * Aggregate#getName()) to their values, in order of first appearance.
+     */
+    public Map<List<Object>, Map<String, Object>> getResults() {
+        mergePartials();
+
+        Map<List<Object>, Map<String, Object>> results = new LinkedHashMap<List<Object>, Map<String, Object>>();
+        synchronized (partials) {
+            for (int group = 0; group < table.groups.size(); group++) {
+                Map<String, Object> values = new LinkedHashMap<String, Object>();
+                for (int i = 0; i < aggregates.length; i++) {
+                    values.put(aggregates[i].getName(), table.columns[i]
+                            .getResult(group, table.counts[group]));
+                }
+                results.put(table.groups.get(group), Collections
+                        .unmodifiableMap(values));
+            }
+        }
+
+        return Collections.unmodifiableMap(results);
+    }
+
+    /** Merges the private tables of all threads into the merged table. */
+    protected void mergePartials() {
+        synchronized (partials) {
+            for (Table theTable : partials) {
+                table.addAll(theTable);
+                theTable.clear();
+            }
+        }
+    }
+
+    /** returns the private table of the current thread */
+    protected Table getPartial() {
+        Table theTable = partial.get();
+        if (theTable == null) {
+            theTable = new Table();
+            partial.set(theTable);
+            synchronized (partials) {
+                partials.add(theTable);
+            }
+        }
+
+        return theTable;
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        Set<String> fields = new LinkedHashSet<String>(Arrays
+                .asList(groupFields));
+        for (Aggregate aggregate : aggregates) {
+            if (aggregate.field != null) {
+                fields.add(aggregate.field);
+            }
+        }
+
+        return Collections.unmodifiableSet(fields);
+    }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
+
+    /**
+     * An aggregate to compute for each group; instances are created by the
+     * static methods, and may be shared by handlers.
+     */
+    public static class Aggregate {
+        /** the kind of aggregate */
+        protected final Kind kind;
+
+        /** the field aggregated, or null for COUNT */
+        protected final String field;
+
+        /** precision of the sketches, for DISTINCT_COUNT */
+        protected final int precision;
+
+        /** compression of the digests, for QUANTILES */
+        protected final double compression;
+
+        /** percentiles to report, for QUANTILES */
+        protected final List<BigDecimal> percentiles;
+
+        protected Aggregate(Kind kind, String field, int precision,
+                double compression, List<BigDecimal> percentiles) {
+            this.kind = kind;
+            this.field = field;
+            this.precision = precision;
+            this.compression = compression;
+            this.percentiles = percentiles;
+        }
+
+        /** the number of records in the group, as a Long */
+        public static Aggregate count() {
+            return new Aggregate(Kind.COUNT, null, 0, 0.0, null);
+        }
+
+        /** the sum of the values of a numeric field */
+        public static Aggregate sum(String field) {
+            return new Aggregate(Kind.SUM, field, 0, 0.0, null);
+        }
+
+        /** the minimum value of a numeric field */
+        public static Aggregate min(String field) {
+            return new Aggregate(Kind.MIN, field, 0, 0.0, null);
+        }
+
+        /** the maximum value of a numeric field */
+        public static Aggregate max(String field) {
+            return new Aggregate(Kind.MAX, field, 0, 0.0, null);
+        }
+
+        /** the mean of the values of a numeric field, as a Double */
+        public static Aggregate mean(String field) {
+            return new Aggregate(Kind.MEAN, field, 0, 0.0, null);
+        }
+
+        /**
+         * the estimated number of distinct non-null values of a field, as a
+         * Long, with sketches of the default precision
+         */
+        public static Aggregate distinctCount(String field) {
+            return distinctCount(field, DEFAULT_DISTINCT_PRECISION);
+        }
+
+        /**
+         * the estimated number of distinct non-null values of a field, as a
+         * Long, with sketches of the given precision (of 2^precision bytes
+         * per group)
+         */
+        public static Aggregate distinctCount(String field, int precision) {
+            if (precision < HyperLogLog.MIN_PRECISION
+                    || precision > HyperLogLog.MAX_PRECISION) {
+                throw new IllegalArgumentException("precision must be between "
+                        + HyperLogLog.MIN_PRECISION + " and "
+                        + HyperLogLog.MAX_PRECISION + ": got " + precision);
+            }
+
+            return new Aggregate(Kind.DISTINCT_COUNT, field, precision, 0.0,
+                    null);
+        }
+
+        /**
+         * the estimated percentiles (between 0 and 1, inclusive) of the
+         * values of a numeric field, as a map of BigDecimal percentiles to
+         * Doubles in the order given, with digests of the default compression
+         */
+        public static Aggregate quantiles(String field,
+                List<BigDecimal> percentiles) {
+            return quantiles(field, percentiles, TDigest.DEFAULT_COMPRESSION);
+        }
+
+        /**
+         * the estimated percentiles of the values of a numeric field, with
+         * digests of the given compression
+         */
+        public static Aggregate quantiles(String field,
+                List<BigDecimal> percentiles, double compression) {
+            for (BigDecimal percentile : percentiles) {
+                if (percentile.compareTo(BigDecimal.ZERO) < 0
+                        || percentile.compareTo(BigDecimal.ONE) > 0) {
+                    throw new IllegalArgumentException("percentile must be "
+                            + "between 0 and 1, inclusive: got " + percentile);
+                }
+            }
+            if (!(compression >= TDigest.MIN_COMPRESSION
+                    && compression <= TDigest.MAX_COMPRESSION)) {
+                throw new IllegalArgumentException("compression must be "
+                        + "between " + TDigest.MIN_COMPRESSION + " and "
+                        + TDigest.MAX_COMPRESSION + ": got " + compression);
+            }
+
+            return new Aggregate(Kind.QUANTILES, field, 0, compression,
+                    Collections.unmodifiableList(new ArrayList<BigDecimal>(
+                            percentiles)));
+        }
+
+        /** returns the kind of aggregate */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /** returns the field aggregated, or null for COUNT */
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * returns the name of the aggregate in results, such as "count" or
+         * "sum(field)"
+         */
+        public String getName() {
+            if (kind == Kind.COUNT) {
+                return "count";
+            }
+
+            String name = kind.name().toLowerCase() + "(" + field + ")";
+            if (kind == Kind.QUANTILES) {
+                name += percentiles;
+            }
+
+            return name;
+        }
+
+        /** returns a new, empty column of this aggregate */
+        protected Column newColumn() {
+            switch (kind) {
+            case COUNT:
+                return new CountColumn();
+            case DISTINCT_COUNT:
+                return new DistinctColumn(precision);
+            case QUANTILES:
+                return new QuantileColumn(field, compression, percentiles);
+            default:
+                return new NumericColumn(kind, field);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+
+    /**
+     * The groups seen by a thread (or merged) and their aggregates: group ids
+     * are assigned by a BytesIndexMap of the encoded group values, and index
+     * the counts, the group values and the arrays of each column.
+     */
+    protected class Table {
+        /** the ids of the encoded groups */
+        protected final BytesIndexMap index = new BytesIndexMap();
+
+        /** the values of the group fields, by id */
+        protected final List<List<Object>> groups = new ArrayList<List<Object>>();
+
+        /** the number of records, by id */
+        protected long[] counts;
+
+        /** the aggregates, in order */
+        protected Column[] columns;
+
+        /** the encoded values of the group fields of the current record */
+        protected byte[] scratch = new byte[64];
+
+        /** number of bytes used in scratch */
+        protected int length;
+
+        public Table() {
+            clear();
+        }
+
+        /** returns the id of the group of the record, adding it if needed */
+        protected int find(GenericRecord record) {
+            length = 0;
+            for (String field : groupFields) {
+                encode(record.get(field));
+            }
+
+            int size = index.size();
+            int hash = BytesIndexMap.hash(scratch, 0, length);
+            int group = index.add(scratch, 0, length, hash);
+
+            if (group == size) {
+                // the values may be reused by the next record, so keep copies
+                Object[] values = new Object[groupFields.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Values.copy(record.get(groupFields[i]));
+                }
+                addGroup(Collections.unmodifiableList(Arrays.asList(values)));
+            }
+
+            return group;
+        }
+
+        /** Adds the groups and aggregates of the given table. */
+        protected void addAll(Table other) {
+            BytesIndexMap otherIndex = other.index;
+            byte[] bytes = otherIndex.getBytes();
+
+            for (int id = 0; id < other.groups.size(); id++) {
+                int size = index.size();
+                int group = index.add(bytes, otherIndex.getOffset(id),
+                        otherIndex.getLength(id), otherIndex.getHash(id));
+
+                if (group == size) {
+                    // the values are copies, and never modified
+                    addGroup(other.groups.get(id));
+                }
+
+                counts[group] += other.counts[id];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i].merge(group, other.columns[i], id);
+                }
+            }
+        }
+
+        /** Removes all groups. */
+        protected void clear() {
+            index.clear();
+            groups.clear();
+            counts = new long[16];
+            columns = new Column[aggregates.length];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = aggregates[i].newColumn();
+                columns[i].resize(counts.length);
+            }
+        }
+
+        /** adds a group with the given values, growing the arrays if needed */
+        protected void addGroup(List<Object> values) {
+            int group = groups.size();
+            groups.add(values);
+
+            if (group == counts.length) {
+                counts = Arrays.copyOf(counts, group * 2);
+                for (Column column : columns) {
+                    column.resize(counts.length);
+                }
+            }
+        }
+
+        /** appends the encoding of a group value to scratch */
+        protected void encode(Object value) {
+            if (value == null) {
+                ensure(1);
+                scratch[length++] = NULL_TAG;
+            } else if (value instanceof Utf8) {
+                Utf8 utf8 = (Utf8) value;
+                encodeBytes(STRING_TAG, utf8.getBytes(), 0, utf8.getLength());
+            } else if (value instanceof String) {
+                Utf8 utf8 = new Utf8((String) value);
+                encodeBytes(STRING_TAG, utf8.getBytes(), 0, utf8.getLength());
+            } else if (value instanceof Long || value instanceof Integer
+                    || value instanceof Short || value instanceof Byte) {
+                encodeLong(INTEGRAL_TAG, ((Number) value).longValue());
+            } else if (value instanceof Double || value instanceof Float) {
+                double d = ((Number) value).doubleValue();
+                encodeLong(FLOATING_TAG, Double.doubleToLongBits(d));
+            } else if (value instanceof Boolean) {
+                ensure(2);
+                scratch[length++] = BOOLEAN_TAG;
+                scratch[length++] = (byte) (((Boolean) value) ? 1 : 0);
+            } else if (value instanceof ByteBuffer) {
+                ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+                int len = buffer.remaining();
+                ensure(5 + len);
+                encodeInt(BYTES_TAG, len);
+                buffer.get(scratch, length, len);
+                length += len;
+            } else if (value instanceof GenericData.Fixed) {
+                byte[] bytes = ((GenericData.Fixed) value).bytes();
+                encodeBytes(BYTES_TAG, bytes, 0, bytes.length);
+            } else {
+                Utf8 utf8 = new Utf8(value.toString());
+                encodeBytes(OTHER_TAG, utf8.getBytes(), 0, utf8.getLength());
+            }
+        }
+
+        /** appends a tag, the length and the bytes bytes[off, off + len) */
+        protected void encodeBytes(byte tag, byte[] bytes, int off, int len) {
+            ensure(5 + len);
+            encodeInt(tag, len);
+            System.arraycopy(bytes, off, scratch, length, len);
+            length += len;
+        }
+
+        /** appends a tag and a four-byte value */
+        protected void encodeInt(byte tag, int value) {
+            ensure(5);
+            scratch[length++] = tag;
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                scratch[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        /** appends a tag and an eight-byte value */
+        protected void encodeLong(byte tag, long value) {
+            ensure(9);
+            scratch[length++] = tag;
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                scratch[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        /** makes room for the given number of bytes in scratch */
+        protected void ensure(int needed) {
+            if (length + needed > scratch.length) {
+                scratch = Arrays.copyOf(scratch, Math.max(length + needed,
+                        2 * scratch.length));
+            }
+        }
+    }
+
+    /** The values of one aggregate, by group id. */
+    protected abstract static class Column {
+        /** Adds a value of the aggregated field to the given group. */
+        protected abstract void add(int group, Object value)
+                throws ProcessingException;
+
+        /** Adds the aggregate of a group of another column of the kind. */
+        protected abstract void merge(int group, Column other, int otherGroup);
+
+        /** Grows the arrays to the given number of groups. */
+        protected abstract void resize(int capacity);
+
+        /** returns the result for a group of the given number of records */
+        protected abstract Object getResult(int group, long count);
+    }
+
+    /** The COUNT aggregate, taken from the record counts of the table. */
+    protected static class CountColumn extends Column {
+        @Override
+        protected void add(int group, Object value) {
+        }
+
+        @Override
+        protected void merge(int group, Column other, int otherGroup) {
+        }
+
+        @Override
+        protected void resize(int capacity) {
+        }
+
+        @Override
+        protected Object getResult(int group, long count) {
+            return count;
+        }
+    }
+
+    /**
+     * The SUM, MIN, MAX and MEAN aggregates. Integer and floating-point
+     * values are accumulated separately, so that integer sums are exact.
+     */
+    protected static class NumericColumn extends Column {
+        protected final Kind kind;
+        protected final String field;
+
+        /** the aggregate of the integer values, by group */
+        protected long[] integral = new long[0];
+
+        /** the number of integer values, by group */
+        protected long[] integralCounts = new long[0];
+
+        /** the aggregate of the floating-point values, by group */
+        protected double[] floating = new double[0];
+
+        /** the number of floating-point values, by group */
+        protected long[] floatingCounts = new long[0];
+
+        public NumericColumn(Kind kind, String field) {
+            this.kind = kind;
+            this.field = field;
+        }
+
+        @Override
+        protected void add(int group, Object value) throws ProcessingException {
+            if (value == null) {
+                return;
+            }
+
+            if (value instanceof Long || value instanceof Integer
+                    || value instanceof Short || value instanceof Byte) {
+                addIntegral(group, ((Number) value).longValue(), 1);
+            } else if (value instanceof Number) {
+                addFloating(group, ((Number) value).doubleValue(), 1);
+            } else {
+                throw new ProcessingException("Value of field " + field
+                        + " is not a number: got "
+                        + value.getClass().getName());
+            }
+        }
+
+        @Override
+        protected void merge(int group, Column other, int otherGroup) {
+            NumericColumn theOther = (NumericColumn) other;
+
+            if (theOther.integralCounts[otherGroup] > 0) {
+                addIntegral(group, theOther.integral[otherGroup],
+                        theOther.integralCounts[otherGroup]);
+            }
+            if (theOther.floatingCounts[otherGroup] > 0) {
+                addFloating(group, theOther.floating[otherGroup],
+                        theOther.floatingCounts[otherGroup]);
+            }
+        }
+
+        /** adds the aggregate of a number of integer values */
+        protected void addIntegral(int group, long value, long count) {
+            if (integralCounts[group] == 0) {
+                integral[group] = value;
+            } else if (kind == Kind.MIN) {
+                integral[group] = Math.min(integral[group], value);
+            } else if (kind == Kind.MAX) {
+                integral[group] = Math.max(integral[group], value);
+            } else {
+                integral[group] += value;
+            }
+            integralCounts[group] += count;
+        }
+
+        /** adds the aggregate of a number of floating-point values */
+        protected void addFloating(int group, double value, long count) {
+            if (floatingCounts[group] == 0) {
+                floating[group] = value;
+            } else if (kind == Kind.MIN) {
+                floating[group] = Math.min(floating[group], value);
+            } else if (kind == Kind.MAX) {
+                floating[group] = Math.max(floating[group], value);
+            } else {
+                floating[group] += value;
+            }
+            floatingCounts[group] += count;
+        }
+
+        @Override
+        protected void resize(int capacity) {
+            integral = Arrays.copyOf(integral, capacity);
+            integralCounts = Arrays.copyOf(integralCounts, capacity);
+            floating = Arrays.copyOf(floating, capacity);
+            floatingCounts = Arrays.copyOf(floatingCounts, capacity);
+        }
+
+        @Override
+        protected Object getResult(int group, long count) {
+            long integralCount = integralCounts[group];
+            long floatingCount = floatingCounts[group];
+
+            if (integralCount == 0 && floatingCount == 0) {
+                return null;
+            }
+
+            if (kind == Kind.MEAN) {
+                return (integral[group] + floating[group])
+                        / (integralCount + floatingCount);
+            }
+            if (floatingCount == 0) {
+                return integral[group];
+            }
+            if (integralCount == 0) {
+                return floating[group];
+            }
+
+            if (kind == Kind.MIN) {
+                return Math.min((double) integral[group], floating[group]);
+            }
+            if (kind == Kind.MAX) {
+                return Math.max((double) integral[group], floating[group]);
+            }
+
+            return integral[group] + floating[group];
+        }
+    }
+
+    /** The DISTINCT_COUNT aggregate: a sketch per group, created lazily. */
+    protected static class DistinctColumn extends Column {
+        protected final int precision;
+
+        /** the sketches, by group; null if there were no values */
+        protected HyperLogLog[] sketches = new HyperLogLog[0];
+
+        public DistinctColumn(int precision) {
+            this.precision = precision;
+        }
+
+        @Override
+        protected void add(int group, Object value) {
+            if (value != null) {
+                getSketch(group).add(Hashing.hash64(value));
+            }
+        }
+
+        @Override
+        protected void merge(int group, Column other, int otherGroup) {
+            HyperLogLog sketch = ((DistinctColumn) other).sketches[otherGroup];
+            if (sketch != null) {
+                getSketch(group).merge(sketch);
+            }
+        }
+
+        /** returns the sketch of a group, creating it if needed */
+        protected HyperLogLog getSketch(int group) {
+            HyperLogLog sketch = sketches[group];
+            if (sketch == null) {
+                sketch = new HyperLogLog(precision);
+                sketches[group] = sketch;
+            }
+
+            return sketch;
+        }
+
+        @Override
+        protected void resize(int capacity) {
+            sketches = Arrays.copyOf(sketches, capacity);
+        }
+
+        @Override
+        protected Object getResult(int group, long count) {
+            HyperLogLog sketch = sketches[group];
+
+            return (sketch == null) ? 0L : sketch.cardinality();
+        }
+    }
+
+    /** The QUANTILES aggregate: a digest per group, created lazily. */
+    protected static class QuantileColumn extends Column {
+        protected final String field;
+        protected final double compression;
+        protected final List<BigDecimal> percentiles;
+
+        /** the digests, by group; null if there were no values */
+        protected TDigest[] digests = new TDigest[0];
+
+        public QuantileColumn(String field, double compression,
+                List<BigDecimal> percentiles) {
+            this.field = field;
+            this.compression = compression;
+            this.percentiles = percentiles;
+        }
+
+        @Override
+        protected void add(int group, Object value) throws ProcessingException {
+            if (value == null) {
+                return;
+            }
+            if (!(value instanceof Number)) {
+                throw new ProcessingException("Value of field " + field
+                        + " is not a number: got "
+                        + value.getClass().getName());
+            }
+
+            double d = ((Number) value).doubleValue();
+            if (!Double.isNaN(d)) {
+                getDigest(group).add(d);
+            }
+        }
+
+        @Override
+        protected void merge(int group, Column other, int otherGroup) {
+            TDigest digest = ((QuantileColumn) other).digests[otherGroup];
+            if (digest != null) {
+                getDigest(group).merge(digest);
+            }
+        }
+
+        /** returns the digest of a group, creating it if needed */
+        protected TDigest getDigest(int group) {
+            TDigest digest = digests[group];
+            if (digest == null) {
+                digest = new TDigest(compression);
+                digests[group] = digest;
+            }
+
+            return digest;
+        }
+
+        @Override
+        protected void resize(int capacity) {
+            digests = Arrays.copyOf(digests, capacity);
+        }
+
+        @Override
+        protected Object getResult(int group, long count) {
+            TDigest digest = digests[group];
+            if (digest == null) {
+                return null;
+            }
+
+            Map<BigDecimal, Double> values = new LinkedHashMap<BigDecimal, Double>();
+            for (BigDecimal percentile : percentiles) {
+                values.put(percentile, digest.quantile(percentile
+                        .doubleValue()));
+            }
+
+            return Collections.unmodifiableMap(values);
+        }
+    }
+}
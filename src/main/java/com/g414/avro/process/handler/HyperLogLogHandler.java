@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.handler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.avro.generic.GenericRecord;
+
+import com.g414.avro.collect.Hashing;
+import com.g414.avro.collect.HyperLogLog;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.MergeableHandler;
+import com.g414.avro.process.ProcessingException;
+import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
+import com.g414.avro.process.Values;
+
+/**
+ * A RecordHandler that estimates the number of distinct values of a field
+ * with a HyperLogLog sketch, a bounded-memory alternative to DistinctValues
+ * when only the count is needed. Values are hashed in place (see Hashing),
+ * so that handling a record allocates nothing. Optionally, values are
+ * counted separately for each value of a second (group) field, in a sketch
+ * per group; choose a lower precision when there are many groups. Null
+ * values are not counted. Thread-safe.
+ */
+public class HyperLogLogHandler implements MergeableHandler, FieldUsage,
+        RecordRetention {
+    /** key of the group of records whose group field is null */
+    protected static final Object NULL_GROUP = new Object();
+
+    /** field to look for in input */
+    protected final String field;
+
+    /** field to group by, or null */
+    protected final String groupField;
+
+    /** precision of the sketches */
+    protected final int precision;
+
+    /** the sketch, if not grouping */
+    protected final HyperLogLog sketch;
+
+    /** the sketches of each group, if grouping */
+    protected final ConcurrentHashMap<Object, HyperLogLog> groups = new ConcurrentHashMap<Object, HyperLogLog>();
+
+    /**
+     * Creates a new instance that counts the specified field, with sketches
+     * of the default precision.
+     */
+    public HyperLogLogHandler(String field) {
+        this(field, null, HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates a new instance that counts the specified field for each value
+     * of the given group field (if not null), with sketches of the given
+     * precision.
+     */
+    public HyperLogLogHandler(String field, String groupField, int precision) {
+        this.field = field;
+        this.groupField = groupField;
+        this.precision = precision;
+        this.sketch = (groupField == null) ? new HyperLogLog(precision) : null;
+    }
+
+    /** @see RecordHandler#start() */
+    @Override
+    public void start() {
+    }
+
+    /** @see RecordHandler#handle(GenericRecord) */
+    @Override
+    public void handle(GenericRecord record) throws ProcessingException {
+        Object value = record.get(field);
+        if (value == null) {
+            return;
+        }
+
+        long hash = Hashing.hash64(value);
+        if (groupField == null) {
+            sketch.add(hash);
+        } else {
+            getSketch(record.get(groupField), true).add(hash);
+        }
+    }
+
+    /** @see RecordHandler#finish() */
+    @Override
+    public void finish() {
+    }
+
+    /** @see MergeableHandler#merge(RecordHandler) */
+    @Override
+    public void merge(RecordHandler other) {
+        if (!(other instanceof HyperLogLogHandler)) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + other.getClass().getName() + " into HyperLogLogHandler");
+        }
+
+        HyperLogLogHandler theOther = (HyperLogLogHandler) other;
+        if ((groupField == null) != (theOther.groupField == null)) {
+            throw new IllegalArgumentException(
+                    "Cannot merge grouped and ungrouped counts");
+        }
+
+        if (groupField == null) {
+            sketch.merge(theOther.sketch);
+            return;
+        }
+
+        for (Map.Entry<Object, HyperLogLog> entry : theOther.groups
+                .entrySet()) {
+            getSketch(entry.getKey(), false).merge(entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values seen; if grouping, of
+     * all groups together.
+     */
+    public long getCardinality() {
+        return getSketch().cardinality();
+    }
+
+    /**
+     * Returns a map of each value of the group field (which may be null) to
+     * the estimated number of distinct values seen with it.
+     */
+    public Map<Object, Long> getCardinalities() {
+        Map<Object, Long> cardinalities = new HashMap<Object, Long>();
+
+        for (Map.Entry<Object, HyperLogLog> entry : groups.entrySet()) {
+            Object group = entry.getKey();
+            cardinalities.put((group == NULL_GROUP) ? null : group, entry
+                    .getValue().cardinality());
+        }
+
+        return Collections.unmodifiableMap(cardinalities);
+    }
+
+    /**
+     * Returns the sketch of all values seen, which may be saved with
+     * HyperLogLog#write(File); if grouping, a union of the group sketches.
+     */
+    public HyperLogLog getSketch() {
+        if (groupField == null) {
+            return sketch;
+        }
+
+        HyperLogLog union = new HyperLogLog(precision);
+        for (HyperLogLog groupSketch : groups.values()) {
+            union.merge(groupSketch);
+        }
+
+        return union;
+    }
+
+    /** returns the sketch of the given group, or null if none */
+    public HyperLogLog getSketch(Object group) {
+        return groups.get((group == null) ? NULL_GROUP : group);
+    }
+
+    /** returns the sketch of a group, creating it if needed */
+    protected HyperLogLog getSketch(Object group, boolean copy) {
+        Object key = (group == null) ? NULL_GROUP : group;
+
+        HyperLogLog groupSketch = groups.get(key);
+        if (groupSketch == null) {
+            // the value may be reused by the next record, so keep a copy
+            HyperLogLog created = new HyperLogLog(precision);
+            groupSketch = groups.putIfAbsent(copy ? Values.copy(key) : key,
+                    created);
+            if (groupSketch == null) {
+                groupSketch = created;
+            }
+        }
+
+        return groupSketch;
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        if (groupField == null) {
+            return Collections.singleton(field);
+        }
+
+        Set<String> fields = new TreeSet<String>();
+        fields.add(field);
+        fields.add(groupField);
+
+        return Collections.unmodifiableSet(fields);
+    }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
+}
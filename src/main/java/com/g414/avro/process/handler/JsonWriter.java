@@ -26,13 +26,14 @@ import org.codehaus.jackson.map.ObjectMapper;
 import com.g414.avro.jackson.AvroObjectMapper;
 import com.g414.avro.process.ProcessingException;
 import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
 
 /**
  * A trivial RecordHandler that writes all records to the specified writer as
  * JSON-encoded lines. Not thread-safe as writing to the writer is not known to
  * be thread-safe.
  */
-public class JsonWriter implements RecordHandler {
+public class JsonWriter implements RecordHandler, RecordRetention {
     protected final ObjectMapper mapper = AvroObjectMapper.getObjectMapper();
     protected final PrintWriter writer;
 
@@ -66,4 +67,10 @@ public class JsonWriter implements RecordHandler {
     public void finish() {
         writer.close();
     }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
 }
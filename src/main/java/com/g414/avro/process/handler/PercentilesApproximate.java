@@ -0,0 +1,218 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.handler;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.avro.generic.GenericRecord;
+
+import com.g414.avro.collect.TDigest;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.MergeableHandler;
+import com.g414.avro.process.ProcessingException;
+import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
+
+/**
+ * A RecordHandler that estimates percentiles of a numeric field in bounded
+ * memory, summarizing the values in a TDigest rather than collecting them as
+ * PercentilesExact does. Accuracy is set by the compression of the digest;
+ * errors are smallest for the extreme percentiles. Null values are skipped.
+ *
+ * Thread-safe. By default, all threads update one digest; in per-thread
+ * mode, each thread updates its own digest without contention, and the
+ * digests are merged when percentiles are requested.
+ */
+public class PercentilesApproximate implements MergeableHandler, FieldUsage,
+        RecordRetention, Percentiles<Double> {
+    /** field to examine */
+    protected final String field;
+
+    /** whether percentiles are of ascending or descending order */
+    protected final boolean isAscending;
+
+    /** compression of the digests */
+    protected final double compression;
+
+    /** whether each thread updates its own digest */
+    protected final boolean perThread;
+
+    /** the digests updated so far, one unless per-thread */
+    protected final List<TDigest> digests = new ArrayList<TDigest>();
+
+    /** the digest of the current thread, if per-thread */
+    protected final ThreadLocal<TDigest> threadDigest = new ThreadLocal<TDigest>();
+
+    /** the shared digest, if not per-thread */
+    protected final TDigest sharedDigest;
+
+    /**
+     * Constructs a new instance that examines the given field, with the
+     * default compression, updating a single digest.
+     */
+    public PercentilesApproximate(String field, boolean isAscending) {
+        this(field, isAscending, TDigest.DEFAULT_COMPRESSION, false);
+    }
+
+    /**
+     * Constructs a new instance that examines the given field, with the given
+     * compression, updating a digest per thread if perThread is set.
+     */
+    public PercentilesApproximate(String field, boolean isAscending,
+            double compression, boolean perThread) {
+        if (!(compression >= TDigest.MIN_COMPRESSION
+                && compression <= TDigest.MAX_COMPRESSION)) {
+            throw new IllegalArgumentException("compression must be between "
+                    + TDigest.MIN_COMPRESSION + " and "
+                    + TDigest.MAX_COMPRESSION + ": got " + compression);
+        }
+
+        this.field = field;
+        this.isAscending = isAscending;
+        this.compression = compression;
+        this.perThread = perThread;
+
+        if (perThread) {
+            this.sharedDigest = null;
+        } else {
+            this.sharedDigest = new TDigest(compression);
+            digests.add(sharedDigest);
+        }
+    }
+
+    /** @see RecordHandler#start() */
+    @Override
+    public void start() {
+    }
+
+    /** @see RecordHandler#handle(GenericRecord) */
+    @Override
+    public void handle(GenericRecord record) throws ProcessingException {
+        Object value = record.get(field);
+        if (value == null) {
+            return;
+        }
+        if (!(value instanceof Number)) {
+            throw new ProcessingException("Field " + field
+                    + " is not numeric: " + value.getClass().getName());
+        }
+
+        getDigest().add(((Number) value).doubleValue());
+    }
+
+    /** @see RecordHandler#finish() */
+    @Override
+    public void finish() {
+    }
+
+    /** @see MergeableHandler#merge(RecordHandler) */
+    @Override
+    public void merge(RecordHandler other) {
+        if (!(other instanceof PercentilesApproximate)) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + other.getClass().getName()
+                    + " into PercentilesApproximate");
+        }
+
+        getDigest().merge(((PercentilesApproximate) other).getMergedDigest());
+    }
+
+    /**
+     * Returns a map of BigDecimal percentiles to corresponding estimated
+     * values, NaN if no values were seen. Percentiles 0 and 1 are the exact
+     * extremes.
+     */
+    @Override
+    public Map<BigDecimal, Double> getPercentiles(
+            List<BigDecimal> percentiles) {
+        TDigest digest = getMergedDigest();
+
+        Map<BigDecimal, Double> outList;
+        outList = new LinkedHashMap<BigDecimal, Double>();
+        for (BigDecimal percentile : percentiles) {
+            if (percentile.compareTo(BigDecimal.ZERO) < 0
+                    || percentile.compareTo(BigDecimal.ONE) > 0) {
+                throw new IllegalArgumentException(
+                        "percentile must be between 0 and 1, inclusive: got "
+                                + percentile);
+            }
+
+            double q = percentile.doubleValue();
+            outList.put(percentile, digest.quantile(isAscending ? q : 1.0 - q));
+        }
+
+        return Collections.unmodifiableMap(outList);
+    }
+
+    /**
+     * Returns a digest of all values seen, which may be saved with
+     * TDigest#write(File) and merged into another instance's digest.
+     */
+    public TDigest getMergedDigest() {
+        List<TDigest> theDigests;
+        synchronized (digests) {
+            if (digests.size() == 1) {
+                return digests.get(0);
+            }
+            theDigests = new ArrayList<TDigest>(digests);
+        }
+
+        TDigest merged = new TDigest(compression);
+        for (TDigest digest : theDigests) {
+            merged.merge(digest);
+        }
+
+        return merged;
+    }
+
+    /** returns the digest to be updated by the current thread */
+    protected TDigest getDigest() {
+        if (!perThread) {
+            return sharedDigest;
+        }
+
+        TDigest digest = threadDigest.get();
+        if (digest == null) {
+            digest = new TDigest(compression);
+            threadDigest.set(digest);
+            synchronized (digests) {
+                digests.add(digest);
+            }
+        }
+
+        return digest;
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return Collections.singleton(field);
+    }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
+}
@@ -17,27 +17,42 @@
  */
 package com.g414.avro.process.handler;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.avro.generic.GenericRecord;
 
+import com.g414.avro.collect.ExternalSorter;
+import com.g414.avro.collect.ValueCodec;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.MergeableHandler;
 import com.g414.avro.process.ProcessingException;
 import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
+import com.g414.avro.process.Values;
 
 /**
  * A RecordHandler instance that can be used to compute percentiles of a given
  * field for a collection of records. Called PercentilesExact because it
- * collects all values, sorts, and returns percentiles based on sorted input. In
- * the future, there may be other implementations that use sampling to conserve
- * memory rather than collecting all values.
+ * collects all values, sorts, and returns percentiles based on sorted input.
+ * PercentilesApproximate summarizes the values in bounded memory instead.
+ *
+ * With a memory budget, values are collected in an ExternalSorter (under a
+ * single lock), which spills sorted runs to temporary files once their
+ * estimated size passes the budget; getPercentiles() then merges the runs,
+ * keeping only the values at the requested ranks in memory.
  */
-public class PercentilesExact<T extends Comparable<T>> implements RecordHandler {
+public class PercentilesExact<T extends Comparable<T>> implements
+        MergeableHandler, FieldUsage, RecordRetention, Percentiles<T> {
     /** field to examine */
     protected final String field;
 
@@ -47,6 +62,9 @@ public class PercentilesExact<T extends Comparable<T>> implements RecordHandler
     /** values collected while processing */
     protected List<T> values = Collections.synchronizedList(new ArrayList<T>());
 
+    /** values collected while processing, if spilling under a memory budget */
+    protected final ExternalSorter<T> sorter;
+
     /**
      * Construct a new instance that examines the given field and is ready to
      * return percentiles based on sorting ascending or descending.
@@ -54,6 +72,20 @@ public class PercentilesExact<T extends Comparable<T>> implements RecordHandler
     public PercentilesExact(String field, boolean isAscending) {
         this.field = field;
         this.isAscending = isAscending;
+        this.sorter = null;
+    }
+
+    /**
+     * Construct a new instance that examines the given field, spilling its
+     * values to temporary files, encoded with the given codec, once their
+     * estimated size passes the given number of bytes.
+     */
+    public PercentilesExact(String field, boolean isAscending,
+            ValueCodec<T> codec, long memoryBudget) {
+        this.field = field;
+        this.isAscending = isAscending;
+        this.sorter = new ExternalSorter<T>(getComparator(), codec,
+                memoryBudget, null);
     }
 
     /** @see RecordHandler#start() */
@@ -65,8 +97,22 @@ public class PercentilesExact<T extends Comparable<T>> implements RecordHandler
     @Override
     @SuppressWarnings("unchecked")
     public void handle(GenericRecord record) throws ProcessingException {
-        T value = (T) record.get(field);
-        values.add(value);
+        T value = (T) Values.copy(record.get(field));
+
+        if (sorter == null) {
+            values.add(value);
+            return;
+        }
+
+        synchronized (sorter) {
+            try {
+                sorter.add(value);
+            } catch (IOException e) {
+                throw new ProcessingException(
+                        "Exception while spilling values: " + e.getMessage(),
+                        e);
+            }
+        }
     }
 
     /** @see RecordHandler#finish() */
@@ -74,18 +120,72 @@ public class PercentilesExact<T extends Comparable<T>> implements RecordHandler
     public void finish() {
     }
 
+    /** @see MergeableHandler#merge(RecordHandler) */
+    @Override
+    public void merge(RecordHandler other) {
+        if (!(other instanceof PercentilesExact)) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + other.getClass().getName() + " into PercentilesExact");
+        }
+
+        @SuppressWarnings("unchecked")
+        PercentilesExact<T> theOther = (PercentilesExact<T>) other;
+
+        if (sorter == null && theOther.sorter == null) {
+            values.addAll(theOther.values);
+            return;
+        }
+
+        try {
+            if (theOther.sorter == null) {
+                synchronized (sorter) {
+                    synchronized (theOther.values) {
+                        for (T value : theOther.values) {
+                            sorter.add(value);
+                        }
+                    }
+                }
+            } else if (sorter == null) {
+                synchronized (theOther.sorter) {
+                    ExternalSorter<T>.Cursor cursor = theOther.sorter.cursor();
+                    try {
+                        while (cursor.next()) {
+                            values.add(cursor.getValue());
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            } else {
+                synchronized (sorter) {
+                    synchronized (theOther.sorter) {
+                        sorter.addAll(theOther.sorter);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Returns a map of BigDecimal percentiles to corresponding values seen in
      * input. Uses BigDecimals to avoid rounding error of desired percentiles.
      */
+    @Override
     public synchronized Map<BigDecimal, T> getPercentiles(
             List<BigDecimal> percentiles) {
-        Collections.sort(values, new Comparator<T>() {
-            public int compare(T o1, T o2) {
-                int cmp = o1.compareTo(o2);
-                return isAscending ? cmp : -cmp;
-            };
-        });
+        if (sorter != null) {
+            synchronized (sorter) {
+                try {
+                    return getSpilledPercentiles(percentiles);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        Collections.sort(values, getComparator());
 
         BigDecimal size = new BigDecimal(values.size());
 
@@ -98,10 +198,84 @@ public class PercentilesExact<T extends Comparable<T>> implements RecordHandler
                                 + percentile);
             }
 
-            int index = percentile.multiply(size).intValue();
+            int index = Math.min(percentile.multiply(size).intValue(),
+                    values.size() - 1);
             outList.put(percentile, values.get(index));
         }
 
         return Collections.unmodifiableMap(outList);
     }
+
+    /**
+     * returns the percentiles of the values of the sorter, merging its runs
+     * and keeping the values at the requested ranks (null if there are no
+     * values)
+     */
+    protected Map<BigDecimal, T> getSpilledPercentiles(
+            List<BigDecimal> percentiles) throws IOException {
+        long size = sorter.size();
+        BigDecimal bigSize = new BigDecimal(size);
+
+        long[] ranks = new long[percentiles.size()];
+        for (int i = 0; i < ranks.length; i++) {
+            BigDecimal percentile = percentiles.get(i);
+            if (percentile.compareTo(BigDecimal.ZERO) < 0
+                    || percentile.compareTo(BigDecimal.ONE) > 0) {
+                throw new IllegalArgumentException(
+                        "percentile must be between 0 and 1, inclusive: got "
+                                + percentile);
+            }
+
+            ranks[i] = Math.min(percentile.multiply(bigSize).longValue(),
+                    size - 1);
+        }
+
+        long[] sortedRanks = ranks.clone();
+        Arrays.sort(sortedRanks);
+
+        Map<Long, T> selected = new HashMap<Long, T>();
+        ExternalSorter<T>.Cursor cursor = sorter.cursor();
+        try {
+            int next = 0;
+            long rank = 0;
+            while (next < sortedRanks.length && cursor.next()) {
+                while (next < sortedRanks.length && sortedRanks[next] == rank) {
+                    selected.put(rank, cursor.getValue());
+                    next++;
+                }
+                rank++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Map<BigDecimal, T> outList = new LinkedHashMap<BigDecimal, T>();
+        for (int i = 0; i < ranks.length; i++) {
+            outList.put(percentiles.get(i), selected.get(ranks[i]));
+        }
+
+        return Collections.unmodifiableMap(outList);
+    }
+
+    /** returns the order of the percentiles */
+    protected Comparator<T> getComparator() {
+        return new Comparator<T>() {
+            public int compare(T o1, T o2) {
+                int cmp = o1.compareTo(o2);
+                return isAscending ? cmp : -cmp;
+            };
+        };
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return Collections.singleton(field);
+    }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
 }
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.handler;
+
+import java.util.Arrays;
+
+import com.g414.avro.collect.Selection;
+
+/**
+ * PercentilesExact specialized for double (and float) fields, taking 8 bytes
+ * per value. NaN values are skipped, since they are not ordered.
+ */
+public class PercentilesExactDouble extends PercentilesExactPrimitive<Double> {
+    /**
+     * Construct a new instance that examines the given field and is ready to
+     * return percentiles based on sorting ascending or descending.
+     */
+    public PercentilesExactDouble(String field, boolean isAscending) {
+        super(field, isAscending);
+    }
+
+    /** @see PercentilesExactPrimitive#newBuffer(int) */
+    @Override
+    protected Buffer newBuffer(int capacity) {
+        return new DoubleBuffer(capacity);
+    }
+
+    /** A growable array of double values. */
+    protected class DoubleBuffer extends Buffer {
+        protected double[] values;
+
+        public DoubleBuffer(int capacity) {
+            this.values = new double[capacity];
+        }
+
+        @Override
+        public void add(Number value) {
+            double x = value.doubleValue();
+            if (Double.isNaN(x)) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(values.length, size + 1));
+            }
+            values[size++] = x;
+        }
+
+        @Override
+        public void addAll(Buffer other) {
+            DoubleBuffer theOther = (DoubleBuffer) other;
+            int otherSize = theOther.size;
+
+            if (size + otherSize > values.length) {
+                values = Arrays.copyOf(values, grow(values.length, size
+                        + otherSize));
+            }
+            System.arraycopy(theOther.values, 0, values, size, otherSize);
+            size += otherSize;
+        }
+
+        @Override
+        public Double get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public void select(int[] ranks) {
+            Selection.select(values, size, ranks);
+        }
+    }
+}
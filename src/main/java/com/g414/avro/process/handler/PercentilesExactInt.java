@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.handler;
+
+import java.util.Arrays;
+
+import com.g414.avro.collect.Selection;
+
+/**
+ * PercentilesExact specialized for int (and smaller integer) fields, taking 4
+ * bytes per value.
+ */
+public class PercentilesExactInt extends PercentilesExactPrimitive<Integer> {
+    /**
+     * Construct a new instance that examines the given field and is ready to
+     * return percentiles based on sorting ascending or descending.
+     */
+    public PercentilesExactInt(String field, boolean isAscending) {
+        super(field, isAscending);
+    }
+
+    /** @see PercentilesExactPrimitive#newBuffer(int) */
+    @Override
+    protected Buffer newBuffer(int capacity) {
+        return new IntBuffer(capacity);
+    }
+
+    /** A growable array of int values. */
+    protected class IntBuffer extends Buffer {
+        protected int[] values;
+
+        public IntBuffer(int capacity) {
+            this.values = new int[capacity];
+        }
+
+        @Override
+        public void add(Number value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(values.length, size + 1));
+            }
+            values[size++] = value.intValue();
+        }
+
+        @Override
+        public void addAll(Buffer other) {
+            IntBuffer theOther = (IntBuffer) other;
+            int otherSize = theOther.size;
+
+            if (size + otherSize > values.length) {
+                values = Arrays.copyOf(values, grow(values.length, size
+                        + otherSize));
+            }
+            System.arraycopy(theOther.values, 0, values, size, otherSize);
+            size += otherSize;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public void select(int[] ranks) {
+            Selection.select(values, size, ranks);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.handler;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.avro.generic.GenericRecord;
+
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.MergeableHandler;
+import com.g414.avro.process.ProcessingException;
+import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
+
+/**
+ * Base class of the primitive specializations of PercentilesExact, which
+ * collect the values of a numeric field into growable primitive arrays, one
+ * per thread so that handling a record takes no lock, and answer percentiles
+ * by selecting the requested ranks (see Selection) rather than sorting. The
+ * rank of a percentile is as in PercentilesExact, except that percentile 1
+ * is the last value rather than out of range. Null values are skipped.
+ *
+ * Thread-safe, but getPercentiles() should only be called once processing
+ * is finished, since it reads the buffers of all threads.
+ */
+public abstract class PercentilesExactPrimitive<T> implements
+        MergeableHandler, FieldUsage, RecordRetention, Percentiles<T> {
+    /** initial capacity of a buffer */
+    protected static final int INITIAL_CAPACITY = 1024;
+
+    /** field to examine */
+    protected final String field;
+
+    /** whether percentiles are of ascending or descending order */
+    protected final boolean isAscending;
+
+    /** the buffers of all threads */
+    protected final List<Buffer> buffers = new ArrayList<Buffer>();
+
+    /** the buffer of the current thread */
+    protected final ThreadLocal<Buffer> threadBuffer = new ThreadLocal<Buffer>();
+
+    /**
+     * Construct a new instance that examines the given field and is ready to
+     * return percentiles based on sorting ascending or descending.
+     */
+    public PercentilesExactPrimitive(String field, boolean isAscending) {
+        this.field = field;
+        this.isAscending = isAscending;
+    }
+
+    /** returns a new, empty buffer of the given capacity */
+    protected abstract Buffer newBuffer(int capacity);
+
+    /** @see RecordHandler#start() */
+    @Override
+    public void start() {
+    }
+
+    /** @see RecordHandler#handle(GenericRecord) */
+    @Override
+    public void handle(GenericRecord record) throws ProcessingException {
+        Object value = record.get(field);
+        if (value == null) {
+            return;
+        }
+        if (!(value instanceof Number)) {
+            throw new ProcessingException("Field " + field
+                    + " is not numeric: " + value.getClass().getName());
+        }
+
+        getBuffer().add((Number) value);
+    }
+
+    /** @see RecordHandler#finish() */
+    @Override
+    public void finish() {
+    }
+
+    /** @see MergeableHandler#merge(RecordHandler) */
+    @Override
+    public void merge(RecordHandler other) {
+        if (other.getClass() != getClass()) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + other.getClass().getName() + " into "
+                    + getClass().getSimpleName());
+        }
+
+        @SuppressWarnings("unchecked")
+        PercentilesExactPrimitive<T> theOther = (PercentilesExactPrimitive<T>) other;
+        Buffer buffer = getBuffer();
+
+        synchronized (theOther.buffers) {
+            for (Buffer otherBuffer : theOther.buffers) {
+                buffer.addAll(otherBuffer);
+            }
+        }
+    }
+
+    /** returns the number of values collected */
+    public int getCount() {
+        int count = 0;
+
+        synchronized (buffers) {
+            for (Buffer buffer : buffers) {
+                count += buffer.size;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns a map of BigDecimal percentiles to corresponding values seen in
+     * input, or to null if no values were seen. Uses BigDecimals to avoid
+     * rounding error of desired percentiles.
+     */
+    @Override
+    public Map<BigDecimal, T> getPercentiles(List<BigDecimal> percentiles) {
+        Buffer values = getValues();
+        int size = values.size;
+        BigDecimal bigSize = new BigDecimal(size);
+
+        int[] ranks = new int[percentiles.size()];
+        for (int i = 0; i < ranks.length; i++) {
+            BigDecimal percentile = percentiles.get(i);
+            if (percentile.compareTo(BigDecimal.ZERO) < 0
+                    || percentile.compareTo(BigDecimal.ONE) > 0) {
+                throw new IllegalArgumentException(
+                        "percentile must be between 0 and 1, inclusive: got "
+                                + percentile);
+            }
+
+            int index = Math.min(percentile.multiply(bigSize).intValue(),
+                    size - 1);
+            ranks[i] = isAscending ? index : size - 1 - index;
+        }
+
+        Map<BigDecimal, T> outList = new LinkedHashMap<BigDecimal, T>();
+        if (size == 0) {
+            for (BigDecimal percentile : percentiles) {
+                outList.put(percentile, null);
+            }
+
+            return Collections.unmodifiableMap(outList);
+        }
+
+        int[] sortedRanks = ranks.clone();
+        Arrays.sort(sortedRanks);
+        values.select(sortedRanks);
+
+        for (int i = 0; i < ranks.length; i++) {
+            outList.put(percentiles.get(i), values.get(ranks[i]));
+        }
+
+        return Collections.unmodifiableMap(outList);
+    }
+
+    /**
+     * returns a buffer of all values: the only buffer if there is one, or
+     * else a new buffer with the values of all
+     */
+    protected Buffer getValues() {
+        synchronized (buffers) {
+            if (buffers.size() == 1) {
+                return buffers.get(0);
+            }
+
+            Buffer values = newBuffer(Math.max(1, getCount()));
+            for (Buffer buffer : buffers) {
+                values.addAll(buffer);
+            }
+
+            return values;
+        }
+    }
+
+    /** returns the buffer of the current thread */
+    protected Buffer getBuffer() {
+        Buffer buffer = threadBuffer.get();
+        if (buffer == null) {
+            buffer = newBuffer(INITIAL_CAPACITY);
+            threadBuffer.set(buffer);
+            synchronized (buffers) {
+                buffers.add(buffer);
+            }
+        }
+
+        return buffer;
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return Collections.singleton(field);
+    }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
+
+    /** A growable array of primitive values, used by a single thread. */
+    protected abstract class Buffer {
+        /** number of values */
+        protected int size;
+
+        /** Appends a value. */
+        public abstract void add(Number value);
+
+        /** Appends the values of another buffer of the same kind. */
+        public abstract void addAll(Buffer other);
+
+        /** returns the value at the given index */
+        public abstract T get(int index);
+
+        /** Places the values at the given sorted ranks (see Selection). */
+        public abstract void select(int[] ranks);
+
+        /** returns the capacity needed for the given number of values */
+        protected int grow(int capacity, int needed) {
+            if (needed < 0) {
+                throw new IllegalStateException("Too many values");
+            }
+
+            long newCapacity = Math.max(needed, capacity + (capacity >> 1));
+
+            return (int) Math.min(newCapacity, Integer.MAX_VALUE - 8);
+        }
+    }
+}
@@ -17,17 +17,24 @@
  */
 package com.g414.avro.process.handler;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.avro.generic.GenericRecord;
 
+import com.g414.avro.process.BatchRecordHandler;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.MergeableHandler;
 import com.g414.avro.process.ProcessingException;
 import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
 
 /**
  * RecordHandler for counting the number of records processed. Thread-safe.
  */
-public class RecordCounter implements RecordHandler {
+public class RecordCounter implements MergeableHandler, BatchRecordHandler,
+        FieldUsage, RecordRetention {
     /** the count */
     protected AtomicLong count = new AtomicLong();
 
@@ -42,13 +49,43 @@ public class RecordCounter implements RecordHandler {
         count.incrementAndGet();
     }
 
+    /** @see BatchRecordHandler#handleBatch(GenericRecord[], int[], int) */
+    @Override
+    public void handleBatch(GenericRecord[] records, int[] selection, int count)
+            throws ProcessingException {
+        this.count.addAndGet(count);
+    }
+
     /** @see RecordHandler#finish() */
     @Override
     public void finish() {
     }
 
+    /** @see MergeableHandler#merge(RecordHandler) */
+    @Override
+    public void merge(RecordHandler other) {
+        if (!(other instanceof RecordCounter)) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + other.getClass().getName() + " into RecordCounter");
+        }
+
+        count.addAndGet(((RecordCounter) other).getCount());
+    }
+
     /** returns the count */
     public long getCount() {
         return this.count.get();
     }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return Collections.emptySet();
+    }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
 }
@@ -24,12 +24,13 @@ import org.apache.avro.generic.GenericRecord;
 
 import com.g414.avro.process.ProcessingException;
 import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
 
 /**
  * A RecordHandler that writes all records to the specified writer. Not
  * thread-safe as writing to the writer is not known to be thread-safe.
  */
-public class RecordWriter implements RecordHandler {
+public class RecordWriter implements RecordHandler, RecordRetention {
     protected final DataFileWriter<GenericRecord> writer;
 
     /**
@@ -63,4 +64,10 @@ public class RecordWriter implements RecordHandler {
         } catch (IOException ignored) {
         }
     }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return false;
+    }
 }
@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.metrics;
+
+import java.io.PrintStream;
+
+/**
+ * A MetricsReporter that prints the metrics to a PrintStream. Thread-safe.
+ */
+public class PrintStreamReporter implements MetricsReporter {
+    /** destination stream */
+    protected final PrintStream out;
+
+    /** Creates a new instance that prints to the given stream. */
+    public PrintStreamReporter(PrintStream out) {
+        this.out = out;
+    }
+
+    /** @see MetricsReporter#report(ProcessingMetrics) */
+    @Override
+    public void report(ProcessingMetrics metrics) {
+        out.println(metrics);
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.g414.avro.process.RecordFilter;
+import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.handler.CompoundHandler;
+
+/**
+ * Metrics of record processing: the number of records read and matched, the
+ * number of bytes read, and named timers (see TimeHistogram) of the time
+ * spent decoding, filtering and handling. A RecordProcessor given an instance
+ * (see RecordProcessor#setMetrics()) records the timers "decode", "filter"
+ * and "handler", and one timer per delegate of a CompoundHandler; other
+ * filters and handlers may be timed by wrapping them with timed().
+ *
+ * To keep overhead low, only one in sampleInterval calls is timed; counts are
+ * exact. Metrics may be published as MBeans with register(), and reported
+ * periodically with a ScheduledReporter. Thread-safe.
+ */
+public class ProcessingMetrics implements ProcessingMetricsMBean {
+    /** JMX domain used by register(String) */
+    public static final String DOMAIN = "com.g414.avro";
+
+    /** number of records read */
+    protected final AtomicLong recordsRead = new AtomicLong();
+
+    /** number of records that matched the filter */
+    protected final AtomicLong recordsMatched = new AtomicLong();
+
+    /** number of bytes of (uncompressed) input read */
+    protected final AtomicLong bytesRead = new AtomicLong();
+
+    /** timers by name, sorted for reporting */
+    protected final ConcurrentSkipListMap<String, TimeHistogram> timers = new ConcurrentSkipListMap<String, TimeHistogram>();
+
+    /** MBeans registered by this instance, by name */
+    protected final Map<ObjectName, Object> registered = new ConcurrentHashMap<ObjectName, Object>();
+
+    /** one in this many calls is timed */
+    protected final int sampleInterval;
+
+    /** name under which this instance is registered, or null */
+    protected volatile String name;
+
+    /** Creates a new instance that times every call. */
+    public ProcessingMetrics() {
+        this(1);
+    }
+
+    /** Creates a new instance that times one in sampleInterval calls. */
+    public ProcessingMetrics(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException(
+                    "sampleInterval must be positive: got " + sampleInterval);
+        }
+
+        this.sampleInterval = sampleInterval;
+    }
+
+    /** @see ProcessingMetricsMBean#getSampleInterval() */
+    @Override
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /** returns the number of records read */
+    @Override
+    public long getRecordsRead() {
+        return recordsRead.get();
+    }
+
+    /** returns the number of records that matched the filter */
+    @Override
+    public long getRecordsMatched() {
+        return recordsMatched.get();
+    }
+
+    /** returns the number of bytes of (uncompressed) input read */
+    @Override
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /** returns the names of the timers */
+    @Override
+    public String[] getTimerNames() {
+        return timers.keySet().toArray(new String[0]);
+    }
+
+    /** Adds to the number of records read. */
+    public void addRecordsRead(long count) {
+        recordsRead.addAndGet(count);
+    }
+
+    /** Adds to the number of records matched. */
+    public void addRecordsMatched(long count) {
+        recordsMatched.addAndGet(count);
+    }
+
+    /** Adds to the number of bytes read. */
+    public void addBytesRead(long count) {
+        bytesRead.addAndGet(count);
+    }
+
+    /** returns the timer of the given name, creating it if needed */
+    public TimeHistogram getTimer(String timerName) {
+        TimeHistogram timer = timers.get(timerName);
+        if (timer == null) {
+            TimeHistogram created = new TimeHistogram();
+            timer = timers.putIfAbsent(timerName, created);
+            if (timer == null) {
+                timer = created;
+                registerTimer(timerName, timer);
+            }
+        }
+
+        return timer;
+    }
+
+    /** returns the timers by name */
+    public Map<String, TimeHistogram> getTimers() {
+        return timers;
+    }
+
+    /**
+     * Returns a filter that records the time spent in the given filter (if
+     * not null) in the named timer.
+     */
+    public RecordFilter timed(String timerName, RecordFilter filter) {
+        if (filter == null) {
+            return null;
+        }
+
+        return new TimedFilter(filter, getTimer(timerName), sampleInterval);
+    }
+
+    /**
+     * Returns a handler that records the time spent in the given handler (if
+     * not null) in the named timer. The delegates of a CompoundHandler are
+     * also timed, as timerName.index.ClassName.
+     */
+    public RecordHandler timed(String timerName, RecordHandler handler) {
+        if (handler == null) {
+            return null;
+        }
+
+        if (handler.getClass() == CompoundHandler.class) {
+            List<RecordHandler> delegates = new ArrayList<RecordHandler>();
+            int i = 0;
+            for (RecordHandler delegate : ((CompoundHandler) handler)
+                    .getHandlers()) {
+                delegates.add(timed(timerName + "." + i++ + "."
+                        + delegate.getClass().getSimpleName(), delegate));
+            }
+
+            handler = new CompoundHandler(delegates);
+        }
+
+        return new TimedHandler(handler, getTimer(timerName), sampleInterval);
+    }
+
+    /**
+     * Registers this instance, and its timers, with the platform MBean server
+     * under the given name in the domain DOMAIN.
+     */
+    public void register(String theName) throws JMException {
+        this.name = theName;
+
+        register(new ObjectName(DOMAIN + ":type=ProcessingMetrics,name="
+                + ObjectName.quote(theName)), this);
+
+        for (Map.Entry<String, TimeHistogram> entry : timers.entrySet()) {
+            registerTimer(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** Unregisters the MBeans registered by this instance. */
+    public void unregister() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (ObjectName objectName : registered.keySet()) {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            registered.remove(objectName);
+        }
+
+        this.name = null;
+    }
+
+    /** registers a timer if this instance is registered */
+    protected void registerTimer(String timerName, TimeHistogram timer) {
+        String theName = name;
+        if (theName == null) {
+            return;
+        }
+
+        try {
+            register(new ObjectName(DOMAIN + ":type=ProcessingMetrics,name="
+                    + ObjectName.quote(theName) + ",timer="
+                    + ObjectName.quote(timerName)), timer);
+        } catch (JMException e) {
+            // timers are still available through getTimers()
+        }
+    }
+
+    /** registers an MBean with the platform server, once */
+    protected void register(ObjectName objectName, Object mbean)
+            throws JMException {
+        if (registered.containsKey(objectName)) {
+            return;
+        }
+
+        ManagementFactory.getPlatformMBeanServer().registerMBean(mbean,
+                objectName);
+        registered.put(objectName, mbean);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append("records read=").append(getRecordsRead());
+        out.append(" matched=").append(getRecordsMatched());
+        out.append(" bytes read=").append(getBytesRead());
+
+        for (Map.Entry<String, TimeHistogram> entry : timers.entrySet()) {
+            out.append(String.format("%n  %s: %s", entry.getKey(), entry
+                    .getValue()));
+        }
+
+        return out.toString();
+    }
+}
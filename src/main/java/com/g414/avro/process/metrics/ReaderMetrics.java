@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.metrics;
+
+import com.g414.avro.file.DataReader;
+import com.g414.avro.file.InputPosition;
+import com.g414.avro.process.ProcessingException;
+
+/**
+ * Counts the records read from one reader, and the records matched among
+ * them, timing one in sampleInterval reads in the "decode" timer of a
+ * ProcessingMetrics. Counts are added to the ProcessingMetrics on each timed
+ * read and on flush(), so that the metrics stay current without contention
+ * on every record. Not thread-safe; used by the thread reading the reader.
+ */
+public class ReaderMetrics {
+    /** metrics to update */
+    protected final ProcessingMetrics metrics;
+
+    /** the reader, for its position if it is an InputPosition */
+    protected final DataReader<?> reader;
+
+    /** the "decode" timer */
+    protected final TimeHistogram decode;
+
+    /** records read since the last flush */
+    protected long read;
+
+    /** records matched since the last flush */
+    protected long matched;
+
+    /** input position at the last flush */
+    protected long position;
+
+    /** Creates a new instance for the given reader. */
+    public ReaderMetrics(ProcessingMetrics metrics, DataReader<?> reader) {
+        this.metrics = metrics;
+        this.reader = reader;
+        this.decode = metrics.getTimer("decode");
+        this.position = tell();
+    }
+
+    /** Reads the next record from the reader, timing it if sampled. */
+    public <D> D next(DataReader<D> theReader, D reuse)
+            throws ProcessingException {
+        if ((read + 1) % metrics.getSampleInterval() != 0) {
+            D result = theReader.next(reuse);
+            if (result != null) {
+                read++;
+            }
+
+            return result;
+        }
+
+        long start = System.nanoTime();
+        D result = theReader.next(reuse);
+        decode.record(System.nanoTime() - start);
+
+        if (result != null) {
+            read++;
+        }
+        flush();
+
+        return result;
+    }
+
+    /** Counts a matched record. */
+    public void matched() {
+        matched++;
+    }
+
+    /** Counts the given number of matched records. */
+    public void matched(int count) {
+        matched += count;
+    }
+
+    /** Adds the counts since the last flush to the metrics. */
+    public void flush() {
+        long now = tell();
+
+        metrics.addRecordsRead(read);
+        metrics.addRecordsMatched(matched);
+        metrics.addBytesRead(now - position);
+
+        read = 0;
+        matched = 0;
+        position = now;
+    }
+
+    /** returns the input position of the reader, or 0 if unknown */
+    protected long tell() {
+        if (reader instanceof InputPosition) {
+            return ((InputPosition) reader).tell();
+        }
+
+        return 0L;
+    }
+}
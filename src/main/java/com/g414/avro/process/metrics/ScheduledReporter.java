@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.metrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports ProcessingMetrics to a MetricsReporter at a fixed period, in a
+ * daemon thread, until stopped.
+ */
+public class ScheduledReporter {
+    /** metrics to report */
+    protected final ProcessingMetrics metrics;
+
+    /** destination of reports */
+    protected final MetricsReporter reporter;
+
+    /** executor running the reports, or null if not started */
+    protected ScheduledExecutorService executor;
+
+    /** Creates a new instance reporting the given metrics. */
+    public ScheduledReporter(ProcessingMetrics metrics,
+            MetricsReporter reporter) {
+        this.metrics = metrics;
+        this.reporter = reporter;
+    }
+
+    /** Starts reporting at the given period. */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (executor != null) {
+            throw new IllegalStateException("Already started");
+        }
+
+        executor = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "ScheduledReporter");
+                        thread.setDaemon(true);
+
+                        return thread;
+                    }
+                });
+
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                reporter.report(metrics);
+            }
+        }, period, period, unit);
+    }
+
+    /** Stops reporting, then reports one last time. */
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+
+        reporter.report(metrics);
+    }
+}
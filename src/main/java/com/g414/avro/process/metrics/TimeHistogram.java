@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, in buckets of powers of two, so
+ * that percentiles are estimated to within a factor of two. Thread-safe and
+ * lock-free.
+ */
+public class TimeHistogram implements TimeHistogramMBean {
+    /** number of buckets; bucket i holds durations in [2^(i-1), 2^i) */
+    protected static final int BUCKETS = 64;
+
+    /** count of durations per bucket */
+    protected final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /** number of durations recorded */
+    protected final AtomicLong count = new AtomicLong();
+
+    /** sum of durations recorded */
+    protected final AtomicLong totalNanos = new AtomicLong();
+
+    /** longest duration recorded */
+    protected final AtomicLong maxNanos = new AtomicLong();
+
+    /** Records a duration. */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /** returns the number of durations recorded */
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    /** returns the sum of durations recorded */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /** returns the mean duration, or 0 if none were recorded */
+    @Override
+    public double getMeanNanos() {
+        long theCount = count.get();
+
+        return (theCount == 0) ? 0.0 : (double) totalNanos.get() / theCount;
+    }
+
+    /** returns the longest duration recorded */
+    @Override
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /** @see TimeHistogramMBean#getMedianNanos() */
+    @Override
+    public long getMedianNanos() {
+        return getPercentileNanos(0.5);
+    }
+
+    /** @see TimeHistogramMBean#getPercentile99Nanos() */
+    @Override
+    public long getPercentile99Nanos() {
+        return getPercentileNanos(0.99);
+    }
+
+    /**
+     * Returns an estimate of the given quantile (between 0 and 1) of the
+     * durations recorded: the upper bound of the bucket holding it, or 0 if
+     * none were recorded.
+     */
+    public long getPercentileNanos(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                long upper = (i == 0) ? 0 : (1L << i) - 1;
+
+                return Math.min(upper, maxNanos.get());
+            }
+        }
+
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fns p50<=%dns p99<=%dns "
+                + "max=%dns", getCount(), getMeanNanos(), getMedianNanos(),
+                getPercentile99Nanos(), getMaxNanos());
+    }
+}
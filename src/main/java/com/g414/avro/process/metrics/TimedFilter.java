@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.metrics;
+
+import java.util.Set;
+
+import org.apache.avro.generic.GenericRecord;
+
+import com.g414.avro.process.BatchRecordFilter;
+import com.g414.avro.process.Batches;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.FieldUsages;
+import com.g414.avro.process.RecordFilter;
+
+/**
+ * A filter that records the time spent in its delegate in a TimeHistogram,
+ * for one in sampleInterval calls (per record, including within batches).
+ * Thread-safe if the delegate is; under concurrent use, calls are sampled at
+ * approximately the nominal rate.
+ */
+public class TimedFilter implements BatchRecordFilter, FieldUsage {
+    /** the delegate */
+    protected final RecordFilter filter;
+
+    /** histogram of times per record */
+    protected final TimeHistogram timer;
+
+    /** one in this many calls is timed */
+    protected final int sampleInterval;
+
+    /** counter for sampling; racy by design */
+    protected int calls;
+
+    /** Creates a new instance timing the given filter. */
+    public TimedFilter(RecordFilter filter, TimeHistogram timer,
+            int sampleInterval) {
+        this.filter = filter;
+        this.timer = timer;
+        this.sampleInterval = sampleInterval;
+    }
+
+    /** @see RecordFilter#matches(GenericRecord) */
+    @Override
+    public boolean matches(GenericRecord record) {
+        if (++calls % sampleInterval != 0) {
+            return filter.matches(record);
+        }
+
+        long start = System.nanoTime();
+        try {
+            return filter.matches(record);
+        } finally {
+            timer.record(System.nanoTime() - start);
+        }
+    }
+
+    /** @see BatchRecordFilter#matchBatch(GenericRecord[], int[], int) */
+    @Override
+    public int matchBatch(GenericRecord[] records, int[] selection, int count) {
+        if (++calls % sampleInterval != 0 || count == 0) {
+            return Batches.match(filter, records, selection, count);
+        }
+
+        long start = System.nanoTime();
+        try {
+            return Batches.match(filter, records, selection, count);
+        } finally {
+            timer.record((System.nanoTime() - start) / count);
+        }
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return FieldUsages.of(filter);
+    }
+}
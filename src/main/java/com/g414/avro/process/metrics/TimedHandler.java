@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.g414.avro.process.metrics;
+
+import java.util.Set;
+
+import org.apache.avro.generic.GenericRecord;
+
+import com.g414.avro.process.BatchRecordHandler;
+import com.g414.avro.process.Batches;
+import com.g414.avro.process.FieldUsage;
+import com.g414.avro.process.FieldUsages;
+import com.g414.avro.process.MergeableHandler;
+import com.g414.avro.process.ProcessingException;
+import com.g414.avro.process.RecordHandler;
+import com.g414.avro.process.RecordRetention;
+import com.g414.avro.process.RecordRetentions;
+
+/**
+ * A handler that records the time spent handling records in its delegate in
+ * a TimeHistogram, for one in sampleInterval calls (per record, including
+ * within batches). Thread-safe if the delegate is; under concurrent use,
+ * calls are sampled at approximately the nominal rate.
+ */
+public class TimedHandler implements MergeableHandler, BatchRecordHandler,
+        FieldUsage, RecordRetention {
+    /** the delegate */
+    protected final RecordHandler handler;
+
+    /** histogram of times per record */
+    protected final TimeHistogram timer;
+
+    /** one in this many calls is timed */
+    protected final int sampleInterval;
+
+    /** counter for sampling; racy by design */
+    protected int calls;
+
+    /** Creates a new instance timing the given handler. */
+    public TimedHandler(RecordHandler handler, TimeHistogram timer,
+            int sampleInterval) {
+        this.handler = handler;
+        this.timer = timer;
+        this.sampleInterval = sampleInterval;
+    }
+
+    /** returns the delegate */
+    public RecordHandler getHandler() {
+        return handler;
+    }
+
+    /** @see RecordHandler#start() */
+    @Override
+    public void start() {
+        handler.start();
+    }
+
+    /** @see RecordHandler#handle(GenericRecord) */
+    @Override
+    public void handle(GenericRecord record) throws ProcessingException {
+        if (++calls % sampleInterval != 0) {
+            handler.handle(record);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            handler.handle(record);
+        } finally {
+            timer.record(System.nanoTime() - start);
+        }
+    }
+
+    /** @see BatchRecordHandler#handleBatch(GenericRecord[], int[], int) */
+    @Override
+    public void handleBatch(GenericRecord[] records, int[] selection, int count)
+            throws ProcessingException {
+        if (++calls % sampleInterval != 0 || count == 0) {
+            Batches.handle(handler, records, selection, count);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            Batches.handle(handler, records, selection, count);
+        } finally {
+            timer.record((System.nanoTime() - start) / count);
+        }
+    }
+
+    /** @see RecordHandler#finish() */
+    @Override
+    public void finish() {
+        handler.finish();
+    }
+
+    /** @see MergeableHandler#merge(RecordHandler) */
+    @Override
+    public void merge(RecordHandler other) {
+        if (!(handler instanceof MergeableHandler)) {
+            throw new IllegalArgumentException("Cannot merge "
+                    + handler.getClass().getName());
+        }
+
+        if (other instanceof TimedHandler) {
+            other = ((TimedHandler) other).handler;
+        }
+
+        ((MergeableHandler) handler).merge(other);
+    }
+
+    /** @see FieldUsage#getFieldsRead() */
+    @Override
+    public Set<String> getFieldsRead() {
+        return FieldUsages.of(handler);
+    }
+
+    /** @see RecordRetention#retainsRecords() */
+    @Override
+    public boolean retainsRecords() {
+        return RecordRetentions.retains(handler);
+    }
+}